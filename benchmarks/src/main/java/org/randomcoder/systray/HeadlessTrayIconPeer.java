@@ -0,0 +1,188 @@
+package org.randomcoder.systray;
+
+import java.awt.*;
+import java.awt.event.*;
+
+import org.randomcoder.systray.TrayIconWrapper.MessageType;
+import org.randomcoder.systray.peer.TrayIconPeer;
+
+/**
+ * Tray icon peer that keeps its state in memory and never touches the native
+ * tray, so that the wrapper layers can be benchmarked without a display.
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+public class HeadlessTrayIconPeer implements TrayIconPeer
+{
+	private static final Dimension SIZE = new Dimension(16, 16);
+	
+	private volatile Image image;
+	private volatile String tooltip;
+	private volatile PopupMenu popup;
+	private volatile boolean autosize;
+	private volatile String actionCommand;
+	private volatile int messageCount;
+	
+	private ActionListener actionListener;
+	private MouseListener mouseListener;
+	private MouseMotionListener mouseMotionListener;
+	
+	public HeadlessTrayIconPeer(Image image)
+	{
+		this(image, null, null);
+	}
+	
+	public HeadlessTrayIconPeer(Image image, String tooltip, PopupMenu popup)
+	{
+		if (image == null)
+			throw new IllegalArgumentException("creating TrayIcon with null Image");
+		
+		this.image = image;
+		this.tooltip = tooltip;
+		this.popup = popup;
+	}
+	
+	public Object getNativePeer()
+	{
+		return this;
+	}
+
+	public void setImage(Image image)
+	{
+		if (image == null)
+			throw new NullPointerException("setting null Image");
+		
+		this.image = image;
+	}
+
+	public Image getImage()
+	{
+		return image;
+	}
+
+	public void setPopupMenu(PopupMenu popup)
+	{
+		this.popup = popup;
+	}
+
+	public PopupMenu getPopupMenu()
+	{
+		return popup;
+	}
+
+	public void setToolTip(String tooltip)
+	{
+		this.tooltip = tooltip;
+	}
+
+	public String getToolTip()
+	{
+		return tooltip;
+	}
+
+	public void setImageAutoSize(boolean autosize)
+	{
+		this.autosize = autosize;
+	}
+
+	public boolean isImageAutoSize()
+	{
+		return autosize;
+	}
+
+	public synchronized void addMouseListener(MouseListener listener)
+	{
+		mouseListener = AWTEventMulticaster.add(mouseListener, listener);
+	}
+
+	public synchronized void removeMouseListener(MouseListener listener)
+	{
+		mouseListener = AWTEventMulticaster.remove(mouseListener, listener);
+	}
+
+	public synchronized MouseListener[] getMouseListeners()
+	{
+		return AWTEventMulticaster.getListeners(mouseListener, MouseListener.class);
+	}
+
+	public synchronized void addMouseMotionListener(MouseMotionListener listener)
+	{
+		mouseMotionListener = AWTEventMulticaster.add(mouseMotionListener, listener);
+	}
+
+	public synchronized void removeMouseMotionListener(MouseMotionListener listener)
+	{
+		mouseMotionListener = AWTEventMulticaster.remove(mouseMotionListener, listener);
+	}
+
+	public synchronized MouseMotionListener[] getMouseMotionListeners()
+	{
+		return AWTEventMulticaster.getListeners(mouseMotionListener, MouseMotionListener.class);
+	}
+
+	public String getActionCommand()
+	{
+		return actionCommand;
+	}
+
+	public void setActionCommand(String command)
+	{
+		this.actionCommand = command;
+	}
+
+	public synchronized void addActionListener(ActionListener listener)
+	{
+		actionListener = AWTEventMulticaster.add(actionListener, listener);
+	}
+
+	public synchronized void removeActionListener(ActionListener listener)
+	{
+		actionListener = AWTEventMulticaster.remove(actionListener, listener);
+	}
+
+	public synchronized ActionListener[] getActionListeners()
+	{
+		return AWTEventMulticaster.getListeners(actionListener, ActionListener.class);
+	}
+
+	public void displayMessage(String caption, String text, MessageType messageType)
+	{
+		if (caption == null && text == null)
+			throw new NullPointerException("displaying the message with both caption and text being null");
+		
+		messageCount++;
+	}
+	
+	public int getMessageCount()
+	{
+		return messageCount;
+	}
+
+	public Dimension getSize()
+	{
+		return new Dimension(SIZE);
+	}
+}
@@ -0,0 +1,90 @@
+package org.randomcoder.systray;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.lang.reflect.Constructor;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.randomcoder.systray.peer.*;
+
+/**
+ * Compares resolving tray icon peers through per-call reflection (as
+ * <code>TrayIconWrapper</code> used to do) against the cached peer factory.
+ * 
+ * <p>
+ * The <code>*Lookup</code> benchmarks measure only peer resolution and run
+ * anywhere. The <code>*Create</code> benchmarks construct a native
+ * <code>TrayIcon</code> as well and therefore require a desktop session with
+ * system tray support.
+ * </p>
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PeerFactoryBenchmark
+{
+	private static final String PEER_CLASS_NAME = TrayIconPeer.class.getName() + "Impl";
+	
+	private Image image;
+	
+	@Setup
+	public void setUp()
+	{
+		image = new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB);
+	}
+	
+	@Benchmark
+	public Constructor<?> reflectiveLookup() throws Exception
+	{
+		Class<?> peerClass = Class.forName(PEER_CLASS_NAME);
+		Class.forName("java.awt.TrayIcon");
+		return peerClass.getConstructor(Image.class);
+	}
+	
+	@Benchmark
+	public TrayIconPeerFactory cachedLookup()
+	{
+		return TrayIconWrapper.getPeerFactory();
+	}
+	
+	@Benchmark
+	public Object reflectiveCreate() throws Exception
+	{
+		return reflectiveLookup().newInstance(image);
+	}
+	
+	@Benchmark
+	public TrayIconPeer cachedCreate()
+	{
+		return TrayIconWrapper.getPeerFactory().createTrayIcon(image);
+	}
+}
@@ -0,0 +1,85 @@
+package org.randomcoder.systray;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures application startup with eager and deferred tray initialization.
+ * Each measurement runs once in a fresh JVM, so it includes loading AWT and
+ * the peer provider.
+ * 
+ * <p>
+ * <code>eager</code> and <code>deferred</code> measure how long the calling
+ * thread is blocked before it has a configured tray icon;
+ * <code>deferredReady</code> measures how long it takes for the tray to be
+ * ready when initialized in the background. Run with
+ * <code>-Dorg.randomcoder.systray.peer.provider=memory</code> to exclude the
+ * native tray.
+ * </p>
+ * 
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+@State(Scope.Benchmark)
+public class StartupBenchmark
+{
+	@Benchmark
+	public TrayIconWrapper eager()
+	{
+		SystemTrayWrapper.isSupported();
+		return createIcon();
+	}
+	
+	@Benchmark
+	public TrayIconWrapper deferred()
+	{
+		SystemTrayWrapper.initializeInBackground();
+		return createIcon();
+	}
+	
+	@Benchmark
+	public SystemTrayWrapper deferredReady()
+	{
+		SystemTrayWrapper.initializeInBackground();
+		createIcon();
+		return SystemTrayWrapper.initializeInBackground().join();
+	}
+	
+	private static TrayIconWrapper createIcon()
+	{
+		TrayIconWrapper icon = new TrayIconWrapper(new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB));
+		icon.setToolTip("Startup");
+		icon.setActionCommand("open");
+		return icon;
+	}
+}
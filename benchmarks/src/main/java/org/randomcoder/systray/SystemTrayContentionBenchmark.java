@@ -0,0 +1,86 @@
+package org.randomcoder.systray;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.randomcoder.systray.peer.SystemTrayPeer;
+
+/**
+ * Measures <code>SystemTrayWrapper.isSupported()</code> and
+ * <code>SystemTrayWrapper.getSystemTray()</code> under contention from many
+ * threads, against the previous reflective and class-monitor based
+ * implementations.
+ * 
+ * <p>
+ * The <code>*GetSystemTray</code> benchmarks require a desktop session with
+ * system tray support.
+ * </p>
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(32)
+@State(Scope.Benchmark)
+public class SystemTrayContentionBenchmark
+{
+	private static final String PEER_CLASS_NAME = SystemTrayPeer.class.getName() + "Impl";
+	
+	private static final Object monitor = new Object();
+	
+	@Benchmark
+	public boolean isSupported()
+	{
+		return SystemTrayWrapper.isSupported();
+	}
+	
+	@Benchmark
+	public boolean reflectiveIsSupported() throws Exception
+	{
+		Class<?> peerClass = Class.forName(PEER_CLASS_NAME);
+		Method method = peerClass.getMethod("isSupported");
+		return ((Boolean) method.invoke(null)).booleanValue();
+	}
+	
+	@Benchmark
+	public SystemTrayWrapper getSystemTray()
+	{
+		return SystemTrayWrapper.getSystemTray();
+	}
+	
+	@Benchmark
+	public SystemTrayWrapper synchronizedGetSystemTray()
+	{
+		synchronized (monitor)
+		{
+			return SystemTrayWrapper.getSystemTray();
+		}
+	}
+}
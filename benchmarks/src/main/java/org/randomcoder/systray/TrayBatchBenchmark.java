@@ -0,0 +1,106 @@
+package org.randomcoder.systray;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compares registering and unregistering a set of tray icons one call at a
+ * time, with and without a dispatch to the event dispatch thread per call,
+ * against the bulk <code>addAll</code> and <code>removeAll</code> operations.
+ * 
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class TrayBatchBenchmark
+{
+	@Param({ "1", "12", "48" })
+	private int iconCount;
+	
+	private SystemTrayWrapper tray;
+	private List<TrayIconWrapper> icons;
+	
+	@Setup
+	public void setUp()
+	{
+		Image image = new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB);
+		
+		tray = new SystemTrayWrapper(new HeadlessSystemTrayPeer());
+		icons = new ArrayList<TrayIconWrapper>(iconCount);
+		
+		for (int i = 0; i < iconCount; i++)
+			icons.add(new TrayIconWrapper(new HeadlessTrayIconPeer(image)));
+	}
+	
+	@Benchmark
+	public void loopAddRemove() throws AWTException
+	{
+		for (TrayIconWrapper icon : icons)
+			tray.add(icon);
+		
+		for (TrayIconWrapper icon : icons)
+			tray.remove(icon);
+	}
+	
+	@Benchmark
+	public void dispatchedLoopAddRemove() throws Exception
+	{
+		for (final TrayIconWrapper icon : icons)
+		{
+			EventQueue.invokeAndWait(() ->
+			{
+				try
+				{
+					tray.add(icon);
+				}
+				catch (AWTException e)
+				{
+					throw new IllegalStateException(e);
+				}
+			});
+		}
+		
+		for (final TrayIconWrapper icon : icons)
+			EventQueue.invokeAndWait(() -> tray.remove(icon));
+	}
+	
+	@Benchmark
+	public void batchAddRemove() throws AWTException
+	{
+		tray.addAll(icons);
+		tray.removeAll(icons);
+	}
+}
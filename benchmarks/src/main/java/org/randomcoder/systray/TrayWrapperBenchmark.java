@@ -0,0 +1,148 @@
+package org.randomcoder.systray;
+
+import java.awt.*;
+import java.awt.event.*;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.randomcoder.systray.TrayIconWrapper.MessageType;
+
+/**
+ * Measures the cost of the <code>SystemTrayWrapper</code>,
+ * <code>TrayIconWrapper</code> and peer indirection on top of a headless
+ * stand-in peer, so that only the library's own overhead is reported.
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class TrayWrapperBenchmark
+{
+	private static final int ICON_COUNT = 16;
+	
+	private final ActionListener actionListener = new ActionListener()
+	{
+		public void actionPerformed(ActionEvent e)
+		{
+		}
+	};
+	
+	private final MouseListener mouseListener = new MouseAdapter()
+	{
+	};
+	
+	private SystemTrayWrapper tray;
+	private TrayIconWrapper icon;
+	private Image[] images;
+	private String[] tooltips;
+	private int counter;
+	
+	@Setup
+	public void setUp() throws AWTException
+	{
+		images = new Image[] {
+			new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB),
+			new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB)
+		};
+		
+		tooltips = new String[] { "Idle", "Busy" };
+		
+		tray = new SystemTrayWrapper(new HeadlessSystemTrayPeer());
+		
+		for (int i = 0; i < ICON_COUNT; i++)
+			tray.add(new TrayIconWrapper(new HeadlessTrayIconPeer(images[0])));
+		
+		icon = tray.getTrayIcons()[0];
+	}
+	
+	@Benchmark
+	public TrayIconWrapper createIcon()
+	{
+		return new TrayIconWrapper(new HeadlessTrayIconPeer(images[0]));
+	}
+	
+	@Benchmark
+	public void setImage()
+	{
+		icon.setImage(images[counter++ & 1]);
+	}
+	
+	@Benchmark
+	public void setToolTip()
+	{
+		icon.setToolTip(tooltips[counter++ & 1]);
+	}
+	
+	@Benchmark
+	public void setSameToolTip()
+	{
+		icon.setToolTip(tooltips[0]);
+	}
+	
+	@Benchmark
+	public String getToolTip()
+	{
+		return icon.getToolTip();
+	}
+	
+	@Benchmark
+	public TrayIconWrapper[] getTrayIcons()
+	{
+		return tray.getTrayIcons();
+	}
+	
+	@Benchmark
+	public List<TrayIconWrapper> getTrayIconSnapshot()
+	{
+		return tray.getTrayIconSnapshot();
+	}
+	
+	@Benchmark
+	public void addRemoveActionListener()
+	{
+		icon.addActionListener(actionListener);
+		icon.removeActionListener(actionListener);
+	}
+	
+	@Benchmark
+	public void addRemoveMouseListener()
+	{
+		icon.addMouseListener(mouseListener);
+		icon.removeMouseListener(mouseListener);
+	}
+	
+	@Benchmark
+	public void displayMessage()
+	{
+		icon.displayMessage("Build", "Build finished", MessageType.INFO);
+	}
+}
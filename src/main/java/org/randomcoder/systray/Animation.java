@@ -0,0 +1,157 @@
+package org.randomcoder.systray;
+
+import java.awt.Image;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Immutable sequence of tray icon frames, each shown for its own duration.
+ * Played by {@link TrayIconWrapper#animate(Animation)}.
+ * 
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+public final class Animation
+{
+	private final Image[] frames;
+	private final long[] durationNanos;
+	private final boolean loop;
+
+	/**
+	 * Creates a new animation.
+	 * 
+	 * @param frames
+	 *            frame images, which should not be modified while the
+	 *            animation may be playing
+	 * @param durations
+	 *            time each frame is shown for
+	 * @param unit
+	 *            unit of <code>durations</code>
+	 * @param loop
+	 *            <code>true</code> to repeat the animation until stopped,
+	 *            <code>false</code> to stop on the last frame
+	 * @throws IllegalArgumentException
+	 *             if there are no frames, the number of durations does not
+	 *             match the number of frames, or any duration is not positive
+	 * @throws NullPointerException
+	 *             if any frame is <code>null</code>
+	 */
+	public Animation(Image[] frames, long[] durations, TimeUnit unit, boolean loop)
+	{
+		if (frames.length == 0)
+			throw new IllegalArgumentException("Animation has no frames");
+
+		if (frames.length != durations.length)
+			throw new IllegalArgumentException("Expected " + frames.length + " durations, got " + durations.length);
+
+		this.frames = frames.clone();
+		this.durationNanos = new long[durations.length];
+		this.loop = loop;
+
+		for (int i = 0; i < frames.length; i++)
+		{
+			if (this.frames[i] == null)
+				throw new NullPointerException("Frame " + i + " is null");
+
+			if (durations[i] <= 0)
+				throw new IllegalArgumentException("Frame " + i + " has a non-positive duration");
+
+			durationNanos[i] = unit.toNanos(durations[i]);
+		}
+	}
+
+	/**
+	 * Creates an animation whose frames are all shown for the same time.
+	 * 
+	 * @param frameDuration
+	 *            time each frame is shown for
+	 * @param unit
+	 *            unit of <code>frameDuration</code>
+	 * @param loop
+	 *            <code>true</code> to repeat the animation until stopped
+	 * @param frames
+	 *            frame images
+	 * @return new animation
+	 */
+	public static Animation uniform(long frameDuration, TimeUnit unit, boolean loop, Image... frames)
+	{
+		long[] durations = new long[frames.length];
+		for (int i = 0; i < durations.length; i++)
+			durations[i] = frameDuration;
+
+		return new Animation(frames, durations, unit, loop);
+	}
+
+	/**
+	 * Returns the number of frames.
+	 * 
+	 * @return frame count
+	 */
+	public int getFrameCount()
+	{
+		return frames.length;
+	}
+
+	/**
+	 * Returns a frame image.
+	 * 
+	 * @param index
+	 *            frame index
+	 * @return frame image
+	 */
+	public Image getFrame(int index)
+	{
+		return frames[index];
+	}
+
+	/**
+	 * Returns the time a frame is shown for.
+	 * 
+	 * @param index
+	 *            frame index
+	 * @param unit
+	 *            unit to return the duration in
+	 * @return frame duration
+	 */
+	public long getDuration(int index, TimeUnit unit)
+	{
+		return unit.convert(durationNanos[index], TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Returns whether the animation repeats.
+	 * 
+	 * @return <code>true</code> if the animation repeats until stopped
+	 */
+	public boolean isLoop()
+	{
+		return loop;
+	}
+
+	long getDurationNanos(int index)
+	{
+		return durationNanos[index];
+	}
+}
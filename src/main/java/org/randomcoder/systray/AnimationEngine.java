@@ -0,0 +1,359 @@
+package org.randomcoder.systray;
+
+import java.awt.*;
+import java.beans.*;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Plays tray icon animations. A single engine, driven by the shared tray
+ * scheduler thread, advances every running animation; each tick wakes up only
+ * when the next frame of some animation is due, and all frames changed by a
+ * tick are applied to their icons in one task on the event dispatch thread.
+ * </p>
+ * 
+ * <p>
+ * Animations of icons which are not in the system tray are paused, and resume
+ * from the frame they were on once the icon is added. The engine holds icons
+ * weakly, so the animation of an icon which has been discarded is dropped
+ * without calling {@link TrayIconWrapper#stopAnimation()}. When nothing is
+ * running, or nothing running is visible, the engine does not tick at all.
+ * </p>
+ * 
+ * <p>
+ * If the scheduler or the event dispatch thread falls behind, frames are
+ * skipped rather than played late, and counted as dropped.
+ * </p>
+ * 
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+public final class AnimationEngine
+{
+	private static final String TRAY_ICONS_PROPERTY = "trayIcons";
+
+	/**
+	 * Frames due this soon after a tick are shown by that tick, so that
+	 * animations with nearly aligned frames share ticks and batches.
+	 */
+	private static final long TICK_SLACK_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+
+	/**
+	 * Playbacks keyed by icon. Icons are held weakly, so that a paused
+	 * animation of an icon which is no longer used does not keep the icon or
+	 * its frames reachable; icons use identity equality.
+	 */
+	private final Map<TrayIconWrapper, Playback> playbacks = new WeakHashMap<TrayIconWrapper, Playback>();
+
+	private final AtomicLong tickCount = new AtomicLong();
+	private final AtomicLong shownCount = new AtomicLong();
+	private final AtomicLong droppedCount = new AtomicLong();
+
+	// guarded by this
+	private ScheduledFuture<?> tickFuture;
+	private long tickDeadline;
+	private boolean applyPending;
+	private SystemTrayWrapper tray;
+
+	private final Runnable tickTask = new Runnable()
+	{
+		public void run()
+		{
+			tick();
+		}
+	};
+
+	private final Runnable applyTask = new Runnable()
+	{
+		public void run()
+		{
+			apply();
+		}
+	};
+
+	private final PropertyChangeListener trayIconsListener = new PropertyChangeListener()
+	{
+		public void propertyChange(PropertyChangeEvent evt)
+		{
+			// an icon may have become visible
+			schedule(System.nanoTime());
+		}
+	};
+
+	private AnimationEngine()
+	{
+	}
+
+	/**
+	 * Returns the shared animation engine.
+	 * 
+	 * @return animation engine
+	 */
+	public static AnimationEngine getInstance()
+	{
+		return Holder.INSTANCE;
+	}
+
+	/**
+	 * Returns the number of ticks which have run.
+	 * 
+	 * @return tick count
+	 */
+	public long getTickCount()
+	{
+		return tickCount.get();
+	}
+
+	/**
+	 * Returns the number of frames applied to icons.
+	 * 
+	 * @return number of frames shown
+	 */
+	public long getShownFrameCount()
+	{
+		return shownCount.get();
+	}
+
+	/**
+	 * Returns the number of frames which were skipped because the engine or
+	 * the event dispatch thread fell behind.
+	 * 
+	 * @return number of dropped frames
+	 */
+	public long getDroppedFrameCount()
+	{
+		return droppedCount.get();
+	}
+
+	/**
+	 * Returns the number of animations which are playing or paused.
+	 * 
+	 * @return number of animations
+	 */
+	public synchronized int getAnimationCount()
+	{
+		return playbacks.size();
+	}
+
+	void start(TrayIconWrapper icon, Animation animation)
+	{
+		long now = System.nanoTime();
+
+		synchronized (this)
+		{
+			if (tray == null && SystemTrayWrapper.isSupported())
+			{
+				tray = SystemTrayWrapper.getSystemTray();
+				tray.addInternalPropertyChangeListener(TRAY_ICONS_PROPERTY, trayIconsListener);
+			}
+
+			playbacks.put(icon, new Playback(animation, now));
+		}
+
+		schedule(now);
+	}
+
+	synchronized void stop(TrayIconWrapper icon)
+	{
+		playbacks.remove(icon);
+	}
+
+	synchronized Animation getAnimation(TrayIconWrapper icon)
+	{
+		Playback playback = playbacks.get(icon);
+		return (playback == null) ? null : playback.animation;
+	}
+
+	/**
+	 * Ensures a tick runs no later than the given time.
+	 */
+	private synchronized void schedule(long deadline)
+	{
+		if (tickFuture != null)
+		{
+			if (tickDeadline <= deadline)
+				return;
+
+			tickFuture.cancel(false);
+		}
+
+		tickDeadline = deadline;
+		tickFuture = TrayScheduler.schedule(tickTask, deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+	}
+
+	private void tick()
+	{
+		tickCount.incrementAndGet();
+
+		List<TrayIconWrapper> visible = getVisibleIcons();
+		long now = System.nanoTime();
+
+		synchronized (this)
+		{
+			tickFuture = null;
+
+			long next = Long.MAX_VALUE;
+			boolean changed = false;
+
+			for (Iterator<Map.Entry<TrayIconWrapper, Playback>> it = playbacks.entrySet().iterator(); it.hasNext();)
+			{
+				Map.Entry<TrayIconWrapper, Playback> entry = it.next();
+				Playback playback = entry.getValue();
+
+				if (!visible.contains(entry.getKey()))
+				{
+					playback.paused = true;
+					continue;
+				}
+
+				if (playback.paused)
+					playback.resume(now);
+
+				if (playback.advance(now + TICK_SLACK_NANOS, droppedCount))
+					changed = true;
+				else if (playback.finished)
+					it.remove();
+
+				if (!playback.finished)
+					next = Math.min(next, playback.deadline);
+			}
+
+			if (changed && !applyPending)
+			{
+				applyPending = true;
+				EventQueue.invokeLater(applyTask);
+			}
+
+			if (next != Long.MAX_VALUE)
+				schedule(next);
+		}
+	}
+
+	private void apply()
+	{
+		List<TrayIconWrapper> icons = new ArrayList<TrayIconWrapper>();
+		List<Image> frames = new ArrayList<Image>();
+
+		synchronized (this)
+		{
+			applyPending = false;
+
+			for (Iterator<Map.Entry<TrayIconWrapper, Playback>> it = playbacks.entrySet().iterator(); it.hasNext();)
+			{
+				Map.Entry<TrayIconWrapper, Playback> entry = it.next();
+				Playback playback = entry.getValue();
+
+				if (playback.dirty)
+				{
+					playback.dirty = false;
+					icons.add(entry.getKey());
+					frames.add(playback.animation.getFrame(playback.index));
+				}
+
+				if (playback.finished)
+					it.remove();
+			}
+		}
+
+		for (int i = 0; i < icons.size(); i++)
+			icons.get(i).setImage(frames.get(i));
+
+		shownCount.addAndGet(icons.size());
+	}
+
+	private List<TrayIconWrapper> getVisibleIcons()
+	{
+		SystemTrayWrapper t;
+		synchronized (this)
+		{
+			t = tray;
+		}
+
+		return (t == null) ? Collections.<TrayIconWrapper> emptyList() : t.getTrayIconSnapshot();
+	}
+
+	/**
+	 * Playback state of one animation; guarded by the engine.
+	 */
+	private static final class Playback
+	{
+		final Animation animation;
+
+		int index;
+		long deadline;
+		boolean dirty = true;
+		boolean paused;
+		boolean finished;
+
+		Playback(Animation animation, long now)
+		{
+			this.animation = animation;
+			this.deadline = now + animation.getDurationNanos(0);
+		}
+
+		void resume(long now)
+		{
+			paused = false;
+			dirty = true;
+			deadline = now + animation.getDurationNanos(index);
+		}
+
+		/**
+		 * Moves to the frame due at the given time.
+		 * 
+		 * @return <code>true</code> if a frame is waiting to be shown
+		 */
+		boolean advance(long now, AtomicLong droppedCount)
+		{
+			while (!finished && now >= deadline)
+			{
+				if (index == animation.getFrameCount() - 1 && !animation.isLoop())
+				{
+					finished = true;
+					break;
+				}
+
+				// the frame being replaced never reached the icon
+				if (dirty)
+					droppedCount.incrementAndGet();
+
+				index = (index + 1) % animation.getFrameCount();
+				deadline += animation.getDurationNanos(index);
+				dirty = true;
+			}
+
+			return dirty;
+		}
+	}
+
+	private static final class Holder
+	{
+		static final AnimationEngine INSTANCE = new AnimationEngine();
+	}
+}
@@ -0,0 +1,452 @@
+package org.randomcoder.systray;
+
+import java.awt.*;
+import java.awt.event.*;
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.List;
+
+import org.randomcoder.systray.TrayIconWrapper.MessageType;
+import org.randomcoder.systray.peer.*;
+
+/**
+ * Tray icon peer used while the tray is being initialized in the
+ * background. Calls are recorded, and replayed onto a real peer once the
+ * peer factory is available; from then on every call is delegated to the
+ * real peer. Messages are an exception: a tray icon ignores messages until
+ * it has been added to the tray, so they stay queued until
+ * {@link #flushMessages()} is called after the icon has been added.
+ * 
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+final class DeferredTrayIconPeer implements TrayIconPeer
+{
+	private volatile TrayIconPeer delegate;
+
+	private WeakReference<TrayIconWrapper> owner;
+
+	// recorded state, guarded by this until the peer is resolved
+	private Image image;
+	private String tooltip;
+	private PopupMenu popup;
+	private boolean autosize;
+	private String actionCommand;
+
+	private ActionListener actionListener;
+	private MouseListener mouseListener;
+	private MouseMotionListener mouseMotionListener;
+
+	// messages queued until the icon is added, guarded by this
+	private final List<Message> messages = new ArrayList<Message>();
+
+	private volatile boolean added;
+
+	DeferredTrayIconPeer(Image image, String tooltip, PopupMenu popup)
+	{
+		if (image == null)
+			throw new IllegalArgumentException("creating TrayIcon with null Image");
+
+		this.image = image;
+		this.tooltip = tooltip;
+		this.popup = popup;
+	}
+
+	/**
+	 * Sets the wrapper to register the real peer with once it exists.
+	 */
+	synchronized void setOwner(TrayIconWrapper trayIcon)
+	{
+		owner = new WeakReference<TrayIconWrapper>(trayIcon);
+
+		if (delegate != null)
+			TrayIconWrapper.register(trayIcon, delegate);
+	}
+
+	boolean isResolved()
+	{
+		return delegate != null;
+	}
+
+	/**
+	 * Returns the real peer, creating it with the tray icon peer factory if
+	 * it does not exist yet.
+	 * 
+	 * @return real peer
+	 * @throws UnsupportedOperationException
+	 *             if the system tray isn't supported by the current platform
+	 */
+	TrayIconPeer resolve()
+	{
+		TrayIconPeer result = delegate;
+		return (result != null) ? result : resolve(TrayIconWrapper.getPeerFactory());
+	}
+
+	/**
+	 * Creates the real peer, replaying all recorded calls other than messages
+	 * onto it.
+	 * 
+	 * @param factory
+	 *            peer factory
+	 * @return real peer
+	 */
+	synchronized TrayIconPeer resolve(TrayIconPeerFactory factory)
+	{
+		if (delegate != null)
+			return delegate;
+
+		TrayIconPeer peer = factory.createTrayIcon(image, tooltip, popup);
+
+		if (autosize)
+			peer.setImageAutoSize(true);
+
+		if (actionCommand != null)
+			peer.setActionCommand(actionCommand);
+
+		for (ActionListener listener : AWTEventMulticaster.getListeners(actionListener, ActionListener.class))
+			peer.addActionListener(listener);
+
+		for (MouseListener listener : AWTEventMulticaster.getListeners(mouseListener, MouseListener.class))
+			peer.addMouseListener(listener);
+
+		for (MouseMotionListener listener :
+				AWTEventMulticaster.getListeners(mouseMotionListener, MouseMotionListener.class))
+			peer.addMouseMotionListener(listener);
+
+		TrayIconWrapper trayIcon = (owner == null) ? null : owner.get();
+		if (trayIcon != null)
+			TrayIconWrapper.register(trayIcon, peer);
+
+		delegate = peer;
+
+		// release recorded state
+		image = null;
+		popup = null;
+		actionListener = null;
+		mouseListener = null;
+		mouseMotionListener = null;
+
+		return peer;
+	}
+
+	/**
+	 * Displays the messages queued so far, and displays later messages
+	 * directly. Called once the real peer has been added to the tray.
+	 */
+	synchronized void flushMessages()
+	{
+		if (added)
+			return;
+
+		// messages racing with this flush wait for the lock, so stay in order
+		TrayIconPeer peer = resolve();
+		for (Message message : messages)
+			peer.displayMessage(message.caption, message.text, message.type);
+
+		messages.clear();
+		added = true;
+	}
+
+	public Object getNativePeer()
+	{
+		return resolve().getNativePeer();
+	}
+
+	public void setImage(Image image)
+	{
+		if (delegate == null)
+		{
+			synchronized (this)
+			{
+				if (delegate == null)
+				{
+					if (image == null)
+						throw new NullPointerException("setting null Image");
+
+					this.image = image;
+					return;
+				}
+			}
+		}
+
+		delegate.setImage(image);
+	}
+
+	public synchronized Image getImage()
+	{
+		return (delegate == null) ? image : delegate.getImage();
+	}
+
+	public void setPopupMenu(PopupMenu popup)
+	{
+		if (delegate == null)
+		{
+			synchronized (this)
+			{
+				if (delegate == null)
+				{
+					this.popup = popup;
+					return;
+				}
+			}
+		}
+
+		delegate.setPopupMenu(popup);
+	}
+
+	public synchronized PopupMenu getPopupMenu()
+	{
+		return (delegate == null) ? popup : delegate.getPopupMenu();
+	}
+
+	public void setToolTip(String tooltip)
+	{
+		if (delegate == null)
+		{
+			synchronized (this)
+			{
+				if (delegate == null)
+				{
+					this.tooltip = tooltip;
+					return;
+				}
+			}
+		}
+
+		delegate.setToolTip(tooltip);
+	}
+
+	public synchronized String getToolTip()
+	{
+		return (delegate == null) ? tooltip : delegate.getToolTip();
+	}
+
+	public void setImageAutoSize(boolean autosize)
+	{
+		if (delegate == null)
+		{
+			synchronized (this)
+			{
+				if (delegate == null)
+				{
+					this.autosize = autosize;
+					return;
+				}
+			}
+		}
+
+		delegate.setImageAutoSize(autosize);
+	}
+
+	public synchronized boolean isImageAutoSize()
+	{
+		return (delegate == null) ? autosize : delegate.isImageAutoSize();
+	}
+
+	public void addMouseListener(MouseListener listener)
+	{
+		if (delegate == null)
+		{
+			synchronized (this)
+			{
+				if (delegate == null)
+				{
+					mouseListener = AWTEventMulticaster.add(mouseListener, listener);
+					return;
+				}
+			}
+		}
+
+		delegate.addMouseListener(listener);
+	}
+
+	public void removeMouseListener(MouseListener listener)
+	{
+		if (delegate == null)
+		{
+			synchronized (this)
+			{
+				if (delegate == null)
+				{
+					mouseListener = AWTEventMulticaster.remove(mouseListener, listener);
+					return;
+				}
+			}
+		}
+
+		delegate.removeMouseListener(listener);
+	}
+
+	public synchronized MouseListener[] getMouseListeners()
+	{
+		return (delegate == null)
+			? AWTEventMulticaster.getListeners(mouseListener, MouseListener.class)
+			: delegate.getMouseListeners();
+	}
+
+	public void addMouseMotionListener(MouseMotionListener listener)
+	{
+		if (delegate == null)
+		{
+			synchronized (this)
+			{
+				if (delegate == null)
+				{
+					mouseMotionListener = AWTEventMulticaster.add(mouseMotionListener, listener);
+					return;
+				}
+			}
+		}
+
+		delegate.addMouseMotionListener(listener);
+	}
+
+	public void removeMouseMotionListener(MouseMotionListener listener)
+	{
+		if (delegate == null)
+		{
+			synchronized (this)
+			{
+				if (delegate == null)
+				{
+					mouseMotionListener = AWTEventMulticaster.remove(mouseMotionListener, listener);
+					return;
+				}
+			}
+		}
+
+		delegate.removeMouseMotionListener(listener);
+	}
+
+	public synchronized MouseMotionListener[] getMouseMotionListeners()
+	{
+		return (delegate == null)
+			? AWTEventMulticaster.getListeners(mouseMotionListener, MouseMotionListener.class)
+			: delegate.getMouseMotionListeners();
+	}
+
+	public synchronized String getActionCommand()
+	{
+		return (delegate == null) ? actionCommand : delegate.getActionCommand();
+	}
+
+	public void setActionCommand(String command)
+	{
+		if (delegate == null)
+		{
+			synchronized (this)
+			{
+				if (delegate == null)
+				{
+					this.actionCommand = command;
+					return;
+				}
+			}
+		}
+
+		delegate.setActionCommand(command);
+	}
+
+	public void addActionListener(ActionListener listener)
+	{
+		if (delegate == null)
+		{
+			synchronized (this)
+			{
+				if (delegate == null)
+				{
+					actionListener = AWTEventMulticaster.add(actionListener, listener);
+					return;
+				}
+			}
+		}
+
+		delegate.addActionListener(listener);
+	}
+
+	public void removeActionListener(ActionListener listener)
+	{
+		if (delegate == null)
+		{
+			synchronized (this)
+			{
+				if (delegate == null)
+				{
+					actionListener = AWTEventMulticaster.remove(actionListener, listener);
+					return;
+				}
+			}
+		}
+
+		delegate.removeActionListener(listener);
+	}
+
+	public synchronized ActionListener[] getActionListeners()
+	{
+		return (delegate == null)
+			? AWTEventMulticaster.getListeners(actionListener, ActionListener.class)
+			: delegate.getActionListeners();
+	}
+
+	public void displayMessage(String caption, String text, MessageType messageType)
+	{
+		if (!added)
+		{
+			synchronized (this)
+			{
+				if (!added)
+				{
+					if (caption == null && text == null)
+						throw new NullPointerException("displaying the message with both caption and text being null");
+
+					messages.add(new Message(caption, text, messageType));
+					return;
+				}
+			}
+		}
+
+		delegate.displayMessage(caption, text, messageType);
+	}
+
+	public Dimension getSize()
+	{
+		return resolve().getSize();
+	}
+
+	private static final class Message
+	{
+		final String caption;
+		final String text;
+		final MessageType type;
+
+		Message(String caption, String text, MessageType type)
+		{
+			this.caption = caption;
+			this.text = text;
+			this.type = type;
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package org.randomcoder.systray;
+
+import java.awt.event.*;
+import java.util.EventListener;
+
+/**
+ * Listener registered with the peer in place of an application listener
+ * while a {@link ListenerDispatcher} is in use. Each event is handed to the
+ * icon's current dispatcher, or delivered directly if dispatching has since
+ * been turned off.
+ * 
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+final class DispatchingListener implements ActionListener, MouseListener, MouseMotionListener
+{
+	private final TrayIconWrapper owner;
+	private final EventListener target;
+
+	// number of times this proxy is registered; guarded by the owner's proxy map
+	int registrations;
+
+	DispatchingListener(TrayIconWrapper owner, EventListener target)
+	{
+		this.owner = owner;
+		this.target = target;
+	}
+
+	EventListener getTarget()
+	{
+		return target;
+	}
+
+	public void actionPerformed(ActionEvent e)
+	{
+		dispatch(() -> ((ActionListener) target).actionPerformed(e));
+	}
+
+	public void mouseClicked(MouseEvent e)
+	{
+		dispatch(() -> ((MouseListener) target).mouseClicked(e));
+	}
+
+	public void mousePressed(MouseEvent e)
+	{
+		dispatch(() -> ((MouseListener) target).mousePressed(e));
+	}
+
+	public void mouseReleased(MouseEvent e)
+	{
+		dispatch(() -> ((MouseListener) target).mouseReleased(e));
+	}
+
+	public void mouseEntered(MouseEvent e)
+	{
+		dispatch(() -> ((MouseListener) target).mouseEntered(e));
+	}
+
+	public void mouseExited(MouseEvent e)
+	{
+		dispatch(() -> ((MouseListener) target).mouseExited(e));
+	}
+
+	public void mouseDragged(MouseEvent e)
+	{
+		dispatch(() -> ((MouseMotionListener) target).mouseDragged(e));
+	}
+
+	public void mouseMoved(MouseEvent e)
+	{
+		dispatch(() -> ((MouseMotionListener) target).mouseMoved(e));
+	}
+
+	private void dispatch(Runnable callback)
+	{
+		ListenerDispatcher dispatcher = owner.getListenerDispatcher();
+
+		if (dispatcher == null)
+			callback.run();
+		else
+			dispatcher.dispatch(target, callback);
+	}
+}
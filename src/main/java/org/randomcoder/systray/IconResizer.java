@@ -0,0 +1,203 @@
+package org.randomcoder.systray;
+
+import java.awt.*;
+import java.beans.*;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Re-renders icons when the tray icon size changes. Bursts of size changes,
+ * such as those caused by attaching a monitor, are debounced; once the size
+ * has settled, every icon with an {@link IconRenderer} is rendered in
+ * parallel off the event dispatch thread, and the new images are applied
+ * together in a single pass on that thread, bypassing any batched updates.
+ * An icon is also rendered when its renderer is registered, in the same way.
+ * Results superseded by a later size change are discarded.
+ * 
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+final class IconResizer
+{
+	private static final String TRAY_ICON_SIZE_PROPERTY = "trayIconSize";
+
+	/**
+	 * Time the size must be stable for before icons are rendered.
+	 */
+	static final long DEBOUNCE_MILLIS = 250L;
+
+	private final SystemTrayWrapper tray;
+
+	private final Executor renderExecutor = ForkJoinPool.commonPool();
+
+	// guarded by itself
+	private final Map<TrayIconWrapper, Boolean> icons = new WeakHashMap<TrayIconWrapper, Boolean>();
+
+	// incremented by every size change, so that stale work can be dropped
+	private final AtomicLong generation = new AtomicLong();
+
+	private boolean listening;
+
+	private final PropertyChangeListener sizeListener = new PropertyChangeListener()
+	{
+		public void propertyChange(PropertyChangeEvent evt)
+		{
+			sizeChanged();
+		}
+	};
+
+	IconResizer(SystemTrayWrapper tray)
+	{
+		this.tray = tray;
+	}
+
+	/**
+	 * Registers an icon and renders it for the current size.
+	 */
+	void register(TrayIconWrapper icon)
+	{
+		synchronized (icons)
+		{
+			icons.put(icon, Boolean.TRUE);
+
+			if (!listening)
+			{
+				tray.addInternalPropertyChangeListener(TRAY_ICON_SIZE_PROPERTY, sizeListener);
+				listening = true;
+			}
+		}
+
+		// read before the size, so that a racing size change drops the result
+		render(generation.get(), Collections.singletonList(icon));
+	}
+
+	void unregister(TrayIconWrapper icon)
+	{
+		synchronized (icons)
+		{
+			icons.remove(icon);
+		}
+	}
+
+	private void sizeChanged()
+	{
+		final long current = generation.incrementAndGet();
+
+		TrayScheduler.schedule(new Runnable()
+		{
+			public void run()
+			{
+				renderAll(current);
+			}
+		}, DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	private void renderAll(long current)
+	{
+		// a later change has rescheduled rendering
+		if (generation.get() != current)
+			return;
+
+		List<TrayIconWrapper> targets;
+		synchronized (icons)
+		{
+			targets = new ArrayList<TrayIconWrapper>(icons.keySet());
+		}
+
+		render(current, targets);
+	}
+
+	/**
+	 * Renders icons for the current size on the render executor, then applies
+	 * the images on the event dispatch thread unless the size has changed.
+	 */
+	private void render(final long current, List<TrayIconWrapper> targets)
+	{
+		final Dimension size = tray.getTrayIconSize();
+
+		final List<Rendering> renderings = new ArrayList<Rendering>(targets.size());
+		for (TrayIconWrapper icon : targets)
+		{
+			final IconRenderer renderer = icon.getIconRenderer();
+			if (renderer == null)
+				continue;
+
+			CompletableFuture<Image> image = CompletableFuture.supplyAsync(
+					() -> renderer.render(new Dimension(size)), renderExecutor);
+
+			renderings.add(new Rendering(icon, renderer, image));
+		}
+
+		if (renderings.isEmpty())
+			return;
+
+		CompletableFuture<?>[] images = new CompletableFuture<?>[renderings.size()];
+		for (int i = 0; i < images.length; i++)
+			images[i] = renderings.get(i).image;
+
+		CompletableFuture.allOf(images).whenComplete((result, failure) ->
+		{
+			if (generation.get() == current)
+				EventQueue.invokeLater(() -> apply(current, renderings));
+		});
+	}
+
+	private void apply(long current, List<Rendering> renderings)
+	{
+		if (generation.get() != current)
+			return;
+
+		for (Rendering rendering : renderings)
+		{
+			// skip icons whose renderer has been replaced since
+			if (rendering.icon.getIconRenderer() != rendering.renderer)
+				continue;
+
+			if (rendering.image.isCompletedExceptionally())
+				continue;
+
+			Image image = rendering.image.join();
+			if (image != null)
+				rendering.icon.applyImage(image);
+		}
+	}
+
+	private static final class Rendering
+	{
+		final TrayIconWrapper icon;
+		final IconRenderer renderer;
+		final CompletableFuture<Image> image;
+
+		Rendering(TrayIconWrapper icon, IconRenderer renderer, CompletableFuture<Image> image)
+		{
+			this.icon = icon;
+			this.renderer = renderer;
+			this.image = image;
+		}
+	}
+}
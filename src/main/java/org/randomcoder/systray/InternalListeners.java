@@ -0,0 +1,74 @@
+package org.randomcoder.systray;
+
+import java.beans.PropertyChangeListener;
+
+/**
+ * Lets the other packages of this library register tray listeners of their
+ * own, which are hidden from applications in the same way as those of this
+ * package. It is not intended for use outside this library.
+ * 
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+public final class InternalListeners
+{
+	private InternalListeners()
+	{
+	}
+
+	/**
+	 * Adds a listener on behalf of this library.
+	 * 
+	 * @param tray
+	 *            tray to listen to
+	 * @param propertyName
+	 *            the specified property
+	 * @param listener
+	 *            the property change listener to be added
+	 */
+	public static void addPropertyChangeListener(
+			SystemTrayWrapper tray, String propertyName, PropertyChangeListener listener)
+	{
+		tray.addInternalPropertyChangeListener(propertyName, listener);
+	}
+
+	/**
+	 * Removes a listener added by
+	 * {@link #addPropertyChangeListener(SystemTrayWrapper, String, PropertyChangeListener)}.
+	 * 
+	 * @param tray
+	 *            tray being listened to
+	 * @param propertyName
+	 *            the specified property
+	 * @param listener
+	 *            the property change listener to be removed
+	 */
+	public static void removePropertyChangeListener(
+			SystemTrayWrapper tray, String propertyName, PropertyChangeListener listener)
+	{
+		tray.removeInternalPropertyChangeListener(propertyName, listener);
+	}
+}
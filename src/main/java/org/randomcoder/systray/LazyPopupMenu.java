@@ -0,0 +1,101 @@
+package org.randomcoder.systray;
+
+import java.awt.PopupMenu;
+import java.awt.event.*;
+import java.util.function.Supplier;
+
+/**
+ * Builds a tray icon's popup menu on demand. Registered with the peer as a
+ * mouse listener, so that a stale menu is rebuilt when a button is pressed,
+ * before the platform shows the popup. The built menu is kept until it is
+ * invalidated.
+ * 
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+final class LazyPopupMenu extends MouseAdapter
+{
+	private final TrayIconWrapper owner;
+	private final Supplier<? extends PopupMenu> supplier;
+
+	private volatile boolean valid;
+
+	private PopupMenu menu;
+
+	LazyPopupMenu(TrayIconWrapper owner, Supplier<? extends PopupMenu> supplier)
+	{
+		this.owner = owner;
+		this.supplier = supplier;
+	}
+
+	Supplier<? extends PopupMenu> getSupplier()
+	{
+		return supplier;
+	}
+
+	/**
+	 * Marks the built menu as stale. It stays in place until it is rebuilt.
+	 */
+	void invalidate()
+	{
+		valid = false;
+	}
+
+	/**
+	 * Returns the menu, building and installing it first if it is stale.
+	 * 
+	 * @return popup menu
+	 */
+	synchronized PopupMenu get()
+	{
+		if (!valid)
+		{
+			// mark valid first, so an invalidation while building is not lost
+			valid = true;
+
+			try
+			{
+				menu = supplier.get();
+			}
+			catch (RuntimeException | Error e)
+			{
+				valid = false;
+				throw e;
+			}
+
+			owner.installPopupMenu(this, menu);
+		}
+
+		return menu;
+	}
+
+	@Override
+	public void mousePressed(MouseEvent e)
+	{
+		if (!valid)
+			get();
+	}
+}
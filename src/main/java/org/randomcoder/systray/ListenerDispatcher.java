@@ -0,0 +1,311 @@
+package org.randomcoder.systray;
+
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.randomcoder.systray.peer.metrics.LatencyHistogram;
+
+/**
+ * <p>
+ * Runs tray icon listener callbacks away from the AWT event dispatch thread,
+ * so that a slow listener cannot freeze the tray or the rest of the user
+ * interface. See {@link TrayIconWrapper#setListenerDispatcher(ListenerDispatcher)}.
+ * </p>
+ * 
+ * <p>
+ * Each listener has its own queue, whose callbacks run one at a time, in the
+ * order in which events arrived, on a thread supplied by an executor; the
+ * queues of different listeners are drained independently, so a listener
+ * which blocks, for example on a network call, delays only its own events.
+ * By default, each drain runs on a new virtual thread if the JVM supports
+ * them, and on a pooled daemon thread otherwise. The number of callbacks
+ * waiting across all listeners is bounded; when it is reached, new events
+ * are dropped and counted rather than blocking the event dispatch thread.
+ * </p>
+ * 
+ * <p>
+ * Since listeners no longer run on the event dispatch thread, they must hand
+ * any work which touches AWT or Swing components back to it, and consuming an
+ * event has no effect.
+ * </p>
+ * 
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+public final class ListenerDispatcher
+{
+	private final Executor executor;
+	private final int capacity;
+
+	// callbacks waiting to run, across all lanes
+	private final AtomicInteger depth = new AtomicInteger();
+
+	// one serial lane per listener; listeners are held weakly
+	private final Map<EventListener, Lane> lanes =
+		Collections.synchronizedMap(new WeakHashMap<EventListener, Lane>());
+
+	private final AtomicLong droppedCount = new AtomicLong();
+	private final AtomicLong rejectedCount = new AtomicLong();
+
+	private final LatencyHistogram executionTimes = new LatencyHistogram();
+
+	/**
+	 * Creates a new dispatcher using the default executor.
+	 * 
+	 * @param capacity
+	 *            maximum number of queued callbacks, across all listeners
+	 * @throws IllegalArgumentException
+	 *             if <code>capacity</code> is not positive
+	 */
+	public ListenerDispatcher(int capacity)
+	{
+		this(getDefaultExecutor(), capacity);
+	}
+
+	/**
+	 * Creates a new dispatcher.
+	 * 
+	 * @param executor
+	 *            executor used to run the callbacks
+	 * @param capacity
+	 *            maximum number of queued callbacks, across all listeners
+	 * @throws IllegalArgumentException
+	 *             if <code>capacity</code> is not positive
+	 */
+	public ListenerDispatcher(Executor executor, int capacity)
+	{
+		if (executor == null)
+			throw new NullPointerException("executor");
+
+		if (capacity <= 0)
+			throw new IllegalArgumentException("Capacity must be positive");
+
+		this.executor = executor;
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Returns the executor used when none is given: a virtual thread per task
+	 * executor if the JVM supports virtual threads, otherwise a shared cached
+	 * pool of daemon threads.
+	 * 
+	 * @return default executor
+	 */
+	public static Executor getDefaultExecutor()
+	{
+		return DefaultExecutorHolder.EXECUTOR;
+	}
+
+	/**
+	 * Queues a listener callback behind the listener's earlier callbacks.
+	 * 
+	 * @param listener
+	 *            listener the callback belongs to
+	 * @param callback
+	 *            callback to run
+	 * @return <code>true</code> if the callback was queued,
+	 *         <code>false</code> if it was dropped because the queue is full
+	 */
+	boolean dispatch(EventListener listener, Runnable callback)
+	{
+		if (depth.incrementAndGet() > capacity)
+		{
+			depth.decrementAndGet();
+			droppedCount.incrementAndGet();
+			return false;
+		}
+
+		Lane lane;
+		synchronized (lanes)
+		{
+			lane = lanes.get(listener);
+			if (lane == null)
+			{
+				lane = new Lane();
+				lanes.put(listener, lane);
+			}
+		}
+
+		lane.queue.add(callback);
+		lane.scheduleDrain();
+		return true;
+	}
+
+	/**
+	 * Returns the maximum number of queued callbacks, across all listeners.
+	 * 
+	 * @return queue capacity
+	 */
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	/**
+	 * Returns the number of callbacks waiting to run, across all listeners.
+	 * 
+	 * @return queue depth
+	 */
+	public int getDepth()
+	{
+		return depth.get();
+	}
+
+	/**
+	 * Returns the number of callbacks which were dropped because the queue was
+	 * full.
+	 * 
+	 * @return number of dropped callbacks
+	 */
+	public long getDroppedCount()
+	{
+		return droppedCount.get();
+	}
+
+	/**
+	 * Returns the number of times the executor rejected a request to drain
+	 * a listener's queue. Rejected drains are retried with the listener's
+	 * next event.
+	 * 
+	 * @return number of rejected drains
+	 */
+	public long getRejectedCount()
+	{
+		return rejectedCount.get();
+	}
+
+	/**
+	 * Returns the execution times of callbacks which have run. Callbacks
+	 * which threw an exception are counted as errors.
+	 * 
+	 * @return live histogram of listener execution times
+	 */
+	public LatencyHistogram getExecutionTimes()
+	{
+		return executionTimes;
+	}
+
+
+	private void run(Runnable callback)
+	{
+		long start = System.nanoTime();
+		boolean failed = true;
+		try
+		{
+			callback.run();
+			failed = false;
+		}
+		catch (RuntimeException e)
+		{
+			// a failing listener must not stop delivery to the others
+			Thread thread = Thread.currentThread();
+			thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+		}
+		finally
+		{
+			executionTimes.record(System.nanoTime() - start, failed);
+		}
+	}
+
+	/**
+	 * Serial queue of one listener's callbacks.
+	 */
+	private final class Lane implements Runnable
+	{
+		final Queue<Runnable> queue = new ConcurrentLinkedQueue<Runnable>();
+
+		private final AtomicBoolean draining = new AtomicBoolean();
+
+		void scheduleDrain()
+		{
+			if (!draining.compareAndSet(false, true))
+				return;
+
+			try
+			{
+				executor.execute(this);
+			}
+			catch (RejectedExecutionException e)
+			{
+				rejectedCount.incrementAndGet();
+				draining.set(false);
+			}
+		}
+
+		public void run()
+		{
+			try
+			{
+				Runnable callback;
+				while ((callback = queue.poll()) != null)
+				{
+					depth.decrementAndGet();
+					ListenerDispatcher.this.run(callback);
+				}
+			}
+			finally
+			{
+				draining.set(false);
+			}
+
+			// pick up callbacks queued after the last poll
+			if (!queue.isEmpty())
+				scheduleDrain();
+		}
+	}
+
+	private static final class DefaultExecutorHolder
+	{
+		static final Executor EXECUTOR = createExecutor();
+
+		private static Executor createExecutor()
+		{
+			try
+			{
+				Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+				return (Executor) method.invoke(null);
+			}
+			catch (Exception e)
+			{
+				// no virtual threads on this JVM
+			}
+
+			return Executors.newCachedThreadPool(new ThreadFactory()
+			{
+				private final AtomicInteger count = new AtomicInteger();
+
+				public Thread newThread(Runnable r)
+				{
+					Thread thread = new Thread(r, "TrayListenerDispatcher-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+	}
+}
@@ -0,0 +1,213 @@
+package org.randomcoder.systray;
+
+import java.awt.EventQueue;
+import java.awt.event.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.*;
+
+/**
+ * <p>
+ * Mouse-motion listener which delivers at most one event per interval to
+ * another listener. The first event after a quiet interval is delivered
+ * immediately; events arriving within the interval replace one another, and
+ * only the latest is delivered once the interval has passed, on the event
+ * dispatch thread. Created by
+ * {@link TrayIconWrapper#addMouseMotionListener(MouseMotionListener, long, TimeUnit)}.
+ * </p>
+ * 
+ * <p>
+ * Events are passed on as received rather than copied, and the tasks used to
+ * deliver them are created once, so coalescing allocates nothing beyond the
+ * scheduler's own bookkeeping for a trailing delivery.
+ * </p>
+ * 
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+public final class MouseMotionCoalescer implements MouseMotionListener
+{
+	private final MouseMotionListener target;
+
+	private final AtomicReference<MouseEvent> pending = new AtomicReference<MouseEvent>();
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+
+	private final AtomicLong receivedCount = new AtomicLong();
+	private final AtomicLong deliveredCount = new AtomicLong();
+	private final AtomicLong droppedCount = new AtomicLong();
+
+	private volatile long intervalNanos;
+	private volatile long lastDeliveryNanos;
+	private volatile boolean closed;
+
+	private final Runnable flushTask = new Runnable()
+	{
+		public void run()
+		{
+			flush();
+		}
+	};
+
+	private final Runnable dispatchTask = new Runnable()
+	{
+		public void run()
+		{
+			EventQueue.invokeLater(flushTask);
+		}
+	};
+
+	MouseMotionCoalescer(MouseMotionListener target, long interval, TimeUnit unit)
+	{
+		this.target = target;
+		setInterval(interval, unit);
+		this.lastDeliveryNanos = System.nanoTime() - intervalNanos;
+	}
+
+	MouseMotionListener getTarget()
+	{
+		return target;
+	}
+
+	/**
+	 * Changes the minimum time between delivered events.
+	 * 
+	 * @param interval
+	 *            minimum time between delivered events
+	 * @param unit
+	 *            unit of <code>interval</code>
+	 * @throws IllegalArgumentException
+	 *             if <code>interval</code> is not positive
+	 */
+	public void setInterval(long interval, TimeUnit unit)
+	{
+		if (interval <= 0)
+			throw new IllegalArgumentException("Interval must be positive");
+
+		intervalNanos = unit.toNanos(interval);
+	}
+
+	/**
+	 * Returns the minimum time between delivered events.
+	 * 
+	 * @param unit
+	 *            unit to return the interval in
+	 * @return interval
+	 */
+	public long getInterval(TimeUnit unit)
+	{
+		return unit.convert(intervalNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Returns the number of events received from the tray icon.
+	 * 
+	 * @return number of received events
+	 */
+	public long getReceivedCount()
+	{
+		return receivedCount.get();
+	}
+
+	/**
+	 * Returns the number of events delivered to the listener.
+	 * 
+	 * @return number of delivered events
+	 */
+	public long getDeliveredCount()
+	{
+		return deliveredCount.get();
+	}
+
+	/**
+	 * Returns the number of events which were replaced by a later event
+	 * before they could be delivered.
+	 * 
+	 * @return number of dropped events
+	 */
+	public long getDroppedCount()
+	{
+		return droppedCount.get();
+	}
+
+	public void mouseMoved(MouseEvent e)
+	{
+		offer(e);
+	}
+
+	public void mouseDragged(MouseEvent e)
+	{
+		offer(e);
+	}
+
+	/**
+	 * Stops delivering events; any pending event is discarded.
+	 */
+	void close()
+	{
+		closed = true;
+
+		if (pending.getAndSet(null) != null)
+			droppedCount.incrementAndGet();
+	}
+
+	private void offer(MouseEvent e)
+	{
+		if (closed)
+			return;
+
+		receivedCount.incrementAndGet();
+
+		if (pending.getAndSet(e) != null)
+			droppedCount.incrementAndGet();
+
+		if (!scheduled.compareAndSet(false, true))
+			return;
+
+		long delay = lastDeliveryNanos + intervalNanos - System.nanoTime();
+
+		if (delay <= 0L)
+			flush();
+		else
+			TrayScheduler.schedule(dispatchTask, delay, TimeUnit.NANOSECONDS);
+	}
+
+	private void flush()
+	{
+		// clear first, so that events racing with this flush schedule another
+		scheduled.set(false);
+
+		MouseEvent e = pending.getAndSet(null);
+		if (e == null || closed)
+			return;
+
+		lastDeliveryNanos = System.nanoTime();
+		deliveredCount.incrementAndGet();
+
+		if (e.getID() == MouseEvent.MOUSE_DRAGGED)
+			target.mouseDragged(e);
+		else
+			target.mouseMoved(e);
+	}
+}
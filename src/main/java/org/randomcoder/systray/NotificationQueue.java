@@ -0,0 +1,502 @@
+package org.randomcoder.systray;
+
+import java.awt.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.randomcoder.systray.TrayIconWrapper.MessageType;
+
+/**
+ * <p>
+ * Bounded, rate-limited queue of popup messages for a single tray icon.
+ * Messages are displayed in priority order (<code>ERROR</code>, then
+ * <code>WARNING</code>, <code>INFO</code> and <code>NONE</code>), oldest
+ * first within each priority, and no more than a configured number of
+ * messages are displayed per period.
+ * </p>
+ * 
+ * <p>
+ * A message with the same caption and text as one which is still queued is
+ * collapsed into it, keeping the higher of the two message types. When the
+ * queue is full, the oldest message of the lowest priority is dropped
+ * (unless the new message has an even lower priority, in which case it is
+ * dropped instead). Dropped messages are summarized in a single digest
+ * message, which is displayed once the queue has drained.
+ * </p>
+ * 
+ * <p>
+ * Instances are obtained from
+ * {@link TrayIconWrapper#enableNotificationQueue(int, int, long, TimeUnit)}.
+ * </p>
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+public final class NotificationQueue
+{
+	private static final int PRIORITIES = 4;
+
+	private static final MessageType[] TYPES_BY_PRIORITY = {
+		MessageType.ERROR, MessageType.WARNING, MessageType.INFO, MessageType.NONE
+	};
+
+	private final Sink sink;
+	private final int capacity;
+	private final int maxMessages;
+	private final long periodNanos;
+
+	private final ArrayDeque<Entry>[] queues;
+	private final Map<Key, Entry> index = new HashMap<Key, Entry>();
+
+	// display times of the last maxMessages messages, as a ring
+	private final long[] sendTimes;
+	private int sendIndex;
+	private long sendCount;
+
+	private final int[] overflow = new int[PRIORITIES];
+	private int overflowCount;
+
+	private int depth;
+	private boolean scheduled;
+	private boolean closed;
+
+	private long offeredCount;
+	private long collapsedCount;
+	private long droppedCount;
+	private long displayedCount;
+	private long digestCount;
+
+	private final Runnable dispatchTask = new Runnable()
+	{
+		public void run()
+		{
+			dispatch();
+		}
+	};
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	NotificationQueue(Sink sink, int capacity, int maxMessages, long period, TimeUnit unit)
+	{
+		if (capacity <= 0)
+			throw new IllegalArgumentException("Capacity must be positive");
+
+		if (maxMessages <= 0)
+			throw new IllegalArgumentException("Maximum messages must be positive");
+
+		if (period <= 0)
+			throw new IllegalArgumentException("Period must be positive");
+
+		this.sink = sink;
+		this.capacity = capacity;
+		this.maxMessages = maxMessages;
+		this.periodNanos = unit.toNanos(period);
+		this.sendTimes = new long[maxMessages];
+
+		queues = new ArrayDeque[PRIORITIES];
+		for (int i = 0; i < PRIORITIES; i++)
+			queues[i] = new ArrayDeque<Entry>();
+	}
+
+	/**
+	 * Queues a message for display.
+	 * 
+	 * @param caption
+	 *            the caption displayed above the text, usually in bold; may be
+	 *            <code>null</code>
+	 * @param text
+	 *            the text displayed for the particular message; may be
+	 *            <code>null</code>
+	 * @param messageType
+	 *            an enum indicating the message type
+	 * @throws NullPointerException
+	 *             if both <code>caption</code> and <code>text</code> are
+	 *             <code>null</code>
+	 */
+	public void offer(String caption, String text, MessageType messageType)
+	{
+		if (caption == null && text == null)
+			throw new NullPointerException("displaying the message with both caption and text being null");
+
+		if (messageType == null)
+			messageType = MessageType.NONE;
+
+		synchronized (this)
+		{
+			if (closed)
+				return;
+
+			offeredCount++;
+
+			Key key = new Key(caption, text);
+			Entry existing = index.get(key);
+
+			if (existing != null)
+			{
+				collapsedCount++;
+
+				// upgrade the queued message if the new one is more important
+				int priority = priority(messageType);
+				if (priority < priority(existing.type))
+				{
+					queues[priority(existing.type)].remove(existing);
+					existing.type = messageType;
+					queues[priority].addLast(existing);
+				}
+
+				return;
+			}
+
+			if (depth >= capacity && !evictFor(messageType))
+			{
+				drop(messageType);
+				return;
+			}
+
+			Entry entry = new Entry(key, messageType);
+			index.put(key, entry);
+			queues[priority(messageType)].addLast(entry);
+			depth++;
+
+			scheduleDispatch(0L);
+		}
+	}
+
+	/**
+	 * Discards all queued messages and pending digest counts, without
+	 * displaying them.
+	 */
+	public synchronized void clear()
+	{
+		for (ArrayDeque<Entry> queue : queues)
+			queue.clear();
+
+		index.clear();
+		Arrays.fill(overflow, 0);
+		overflowCount = 0;
+		depth = 0;
+	}
+
+	/**
+	 * Returns the maximum number of queued messages.
+	 * 
+	 * @return capacity
+	 */
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	/**
+	 * Returns the number of messages currently queued.
+	 * 
+	 * @return queue depth
+	 */
+	public synchronized int getDepth()
+	{
+		return depth;
+	}
+
+	/**
+	 * Returns the number of messages offered to this queue.
+	 * 
+	 * @return offered count
+	 */
+	public synchronized long getOfferedCount()
+	{
+		return offeredCount;
+	}
+
+	/**
+	 * Returns the number of messages collapsed into an identical queued
+	 * message.
+	 * 
+	 * @return collapsed count
+	 */
+	public synchronized long getCollapsedCount()
+	{
+		return collapsedCount;
+	}
+
+	/**
+	 * Returns the number of messages dropped because the queue was full.
+	 * 
+	 * @return dropped count
+	 */
+	public synchronized long getDroppedCount()
+	{
+		return droppedCount;
+	}
+
+	/**
+	 * Returns the number of messages displayed, including digests.
+	 * 
+	 * @return displayed count
+	 */
+	public synchronized long getDisplayedCount()
+	{
+		return displayedCount;
+	}
+
+	/**
+	 * Returns the number of digest messages displayed.
+	 * 
+	 * @return digest count
+	 */
+	public synchronized long getDigestCount()
+	{
+		return digestCount;
+	}
+
+	/**
+	 * Stops this queue; queued messages are discarded and further offers are
+	 * ignored.
+	 */
+	synchronized void close()
+	{
+		closed = true;
+		clear();
+	}
+
+	/**
+	 * Makes room for a message of the given type by dropping the oldest
+	 * queued message of the lowest priority, provided that priority is no
+	 * higher than the new message's.
+	 * 
+	 * @return <code>true</code> if room was made
+	 */
+	private boolean evictFor(MessageType messageType)
+	{
+		for (int i = PRIORITIES - 1; i >= priority(messageType); i--)
+		{
+			Entry victim = queues[i].pollFirst();
+			if (victim != null)
+			{
+				index.remove(victim.key);
+				depth--;
+				drop(victim.type);
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private void drop(MessageType messageType)
+	{
+		droppedCount++;
+		overflow[priority(messageType)]++;
+		overflowCount++;
+		scheduleDispatch(0L);
+	}
+
+	private void scheduleDispatch(long delayNanos)
+	{
+		if (scheduled)
+			return;
+
+		scheduled = true;
+		TrayScheduler.schedule(dispatchTask, delayNanos, TimeUnit.NANOSECONDS);
+	}
+
+	private void dispatch()
+	{
+		final String caption;
+		final String text;
+		final MessageType type;
+
+		synchronized (this)
+		{
+			scheduled = false;
+
+			if (depth == 0 && overflowCount == 0)
+				return;
+
+			long now = System.nanoTime();
+			long delay = slotDelay(now);
+
+			if (delay > 0)
+			{
+				scheduleDispatch(delay);
+				return;
+			}
+
+			Entry entry = poll();
+			if (entry != null)
+			{
+				caption = entry.key.caption;
+				text = entry.key.text;
+				type = entry.type;
+			}
+			else
+			{
+				// queue has drained; summarize whatever was dropped
+				int highest = 0;
+				while (overflow[highest] == 0)
+					highest++;
+
+				caption = overflowCount + ((overflowCount == 1) ? " more notification" : " more notifications");
+				text = describeOverflow();
+				type = TYPES_BY_PRIORITY[highest];
+
+				Arrays.fill(overflow, 0);
+				overflowCount = 0;
+				digestCount++;
+			}
+
+			sendTimes[sendIndex] = now;
+			sendIndex = (sendIndex + 1) % maxMessages;
+			sendCount++;
+			displayedCount++;
+
+			if (depth > 0 || overflowCount > 0)
+				scheduleDispatch(slotDelay(now));
+		}
+
+		EventQueue.invokeLater(new Runnable()
+		{
+			public void run()
+			{
+				sink.displayMessage(caption, text, type);
+			}
+		});
+	}
+
+	private Entry poll()
+	{
+		for (ArrayDeque<Entry> queue : queues)
+		{
+			Entry entry = queue.pollFirst();
+			if (entry != null)
+			{
+				index.remove(entry.key);
+				depth--;
+				return entry;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns how long to wait before the next message may be displayed.
+	 */
+	private long slotDelay(long now)
+	{
+		if (sendCount < maxMessages)
+			return 0L;
+
+		// sendIndex points at the oldest display time in the window
+		return Math.max(0L, sendTimes[sendIndex] + periodNanos - now);
+	}
+
+	private String describeOverflow()
+	{
+		StringBuilder buf = new StringBuilder();
+
+		String[] labels = { "error", "warning", "information", "other" };
+		for (int i = 0; i < PRIORITIES; i++)
+		{
+			if (overflow[i] == 0)
+				continue;
+
+			if (buf.length() > 0)
+				buf.append(", ");
+
+			buf.append(overflow[i]).append(' ').append(labels[i]);
+		}
+
+		return buf.append(" notifications were suppressed").toString();
+	}
+
+	private static int priority(MessageType messageType)
+	{
+		switch (messageType)
+		{
+			case ERROR:
+				return 0;
+			case WARNING:
+				return 1;
+			case INFO:
+				return 2;
+			default:
+				return 3;
+		}
+	}
+
+	/**
+	 * Receives messages for display, on the event dispatch thread.
+	 */
+	static interface Sink
+	{
+		void displayMessage(String caption, String text, MessageType messageType);
+	}
+
+	private static final class Key
+	{
+		final String caption;
+		final String text;
+		final int hash;
+
+		Key(String caption, String text)
+		{
+			this.caption = caption;
+			this.text = text;
+			this.hash = 31 * ((caption == null) ? 0 : caption.hashCode()) + ((text == null) ? 0 : text.hashCode());
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (!(obj instanceof Key))
+				return false;
+
+			Key other = (Key) obj;
+			return hash == other.hash && equal(caption, other.caption) && equal(text, other.text);
+		}
+
+		private static boolean equal(String a, String b)
+		{
+			return (a == null) ? (b == null) : a.equals(b);
+		}
+	}
+
+	private static final class Entry
+	{
+		final Key key;
+		MessageType type;
+
+		Entry(Key key, MessageType type)
+		{
+			this.key = key;
+			this.type = type;
+		}
+	}
+}
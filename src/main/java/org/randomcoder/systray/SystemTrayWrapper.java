@@ -2,8 +2,12 @@ package org.randomcoder.systray;
 
 import java.awt.*;
 import java.awt.event.ActionListener;
-import java.beans.PropertyChangeListener;
-import java.lang.reflect.*;
+import java.beans.*;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 import org.randomcoder.systray.peer.*;
 
@@ -38,16 +42,40 @@ import org.randomcoder.systray.peer.*;
  */
 public class SystemTrayWrapper
 {	
-	private static final String PEER_CLASS_NAME = SystemTrayPeer.class.getName() + "Impl";
-	private static final String TRAY_ICON_PEER_CLASS_NAME = TrayIconPeer.class.getName() + "Impl";
+	private static volatile SystemTrayWrapper instance;
 	
-	private static SystemTrayWrapper instance;
+	private static volatile Boolean supported;
+	
+	private static final String TRAY_ICONS_PROPERTY = "trayIcons";
 	
 	private final SystemTrayPeer peer;
 	
-	private SystemTrayWrapper(SystemTrayPeer peer)
+	// listeners registered by this library, by property; guarded by itself
+	private final Map<String, Set<PropertyChangeListener>> internalListeners =
+		new HashMap<String, Set<PropertyChangeListener>>();
+	
+	private final AtomicInteger trayIconsVersion = new AtomicInteger();
+	
+	private volatile TrayIconSnapshot snapshot;
+	
+	private volatile TrayIconRegistry registry;
+	
+	private volatile IconResizer iconResizer;
+	
+	private final PropertyChangeListener trayIconsListener = new PropertyChangeListener()
+	{
+		public void propertyChange(PropertyChangeEvent evt)
+		{
+			invalidateSnapshot();
+		}
+	};
+	
+	SystemTrayWrapper(SystemTrayPeer peer)
 	{
 		this.peer = peer;
+		
+		// icons may be removed natively (e.g. when the tray goes away)
+		addInternalPropertyChangeListener(TRAY_ICONS_PROPERTY, trayIconsListener);
 	}
 	
 	/**
@@ -80,65 +108,32 @@ public class SystemTrayWrapper
 	 * @see SecurityManager#checkPermission(java.security.Permission)
 	 * @see AWTPermission
 	 */
-	@SuppressWarnings("unchecked")
-	public static synchronized SystemTrayWrapper getSystemTray()
-	{		
-		if (instance != null)
-			return instance;
+	public static SystemTrayWrapper getSystemTray()
+	{
+		// fast path, no locking once the instance exists
+		SystemTrayWrapper result = instance;
+		if (result != null)
+			return result;
 		
-		// try to load peer
-		try
+		synchronized (SystemTrayWrapper.class)
 		{
-			// load peer class
-			Class peerClass = Class.forName(PEER_CLASS_NAME);
-			
-			// load getSystemTray method
-			Method method = peerClass.getMethod("getSystemTray");
-			
-			// invoke underlying method, getting native SystemTray
-			Object nativePeer = method.invoke(null);
-			
-			// load SystemTray class
-			Class systemTray = Class.forName("java.awt.SystemTray");
-			
-			// create a new peer
-			Constructor constructor = peerClass.getConstructor(systemTray);
-			SystemTrayPeer peer = (SystemTrayPeer) constructor.newInstance(nativePeer);
-			
-			// create a new instance of this class
-			instance = new SystemTrayWrapper(peer);
+			if (instance == null)
+				instance = createSystemTray();
 			
 			return instance;
 		}
-		catch (ClassNotFoundException e)
-		{
-			throw new UnsupportedOperationException("System tray unavailable on this platform", e);
-		}
-		catch (NoSuchMethodException e)
-		{
-			throw new UnsupportedOperationException("System tray unavailable on this platform", e);
-		}
-		catch (NoClassDefFoundError e)
-		{
-			throw new UnsupportedOperationException("System tray unavailable on this platform", e);
-		}
-		catch (IllegalAccessException e)
+	}
+	
+	private static SystemTrayWrapper createSystemTray()
+	{
+		try
 		{
-			throw new UnsupportedOperationException("System tray unavailable on this platform", e);
+			return new SystemTrayWrapper(PeerProviders.getProvider().getSystemTray());
 		}
-		catch (InstantiationException e)
+		catch (LinkageError e)
 		{
 			throw new UnsupportedOperationException("System tray unavailable on this platform", e);
 		}
-		catch (InvocationTargetException e)
-		{
-			Throwable target = e.getTargetException();
-			
-			if (target instanceof RuntimeException)
-				throw (RuntimeException) target;
-			
-			throw new UnsupportedOperationException("System tray unavailable on this platform", target);
-		}
 	}
 	
 	/**
@@ -168,54 +163,116 @@ public class SystemTrayWrapper
 	 * user from accessing one or the other.
 	 * </p>
 	 * 
+	 * <p>
+	 * The answer is determined once and cached. Use
+	 * {@link #reprobeSupported()} to query the platform again, for example
+	 * after the desktop's tray area has been started or stopped.
+	 * </p>
+	 * 
 	 * @return <code>false</code> if no system tray access is supported; this
 	 *         method returns <code>true</code> if the minimal system tray
 	 *         access is supported but does not guarantee that all system tray
 	 *         functionality is supported for the current platform
 	 * @see #getSystemTray()
+	 * @see #reprobeSupported()
 	 */
-	@SuppressWarnings("unchecked")
 	public static boolean isSupported()
 	{
-		// try to load peer
+		Boolean result = supported;
+		if (result != null)
+			return result.booleanValue();
+		
+		return reprobeSupported();
+	}
+	
+	/**
+	 * Queries the platform for system tray support, bypassing and then
+	 * replacing the answer cached by {@link #isSupported()}.
+	 * 
+	 * @return <code>false</code> if no system tray access is supported,
+	 *         <code>true</code> if the minimal system tray access is supported
+	 * @see #isSupported()
+	 */
+	public static boolean reprobeSupported()
+	{
+		boolean result = probeSupported();
+		supported = Boolean.valueOf(result);
+		return result;
+	}
+	
+	/**
+	 * <p>
+	 * Starts initializing AWT and the system tray on a background thread, so
+	 * that the calling thread, and applications which may never show an icon,
+	 * do not pay for it. Calling this again returns the same future.
+	 * </p>
+	 * 
+	 * <p>
+	 * Tray icons may be created and configured while initialization is in
+	 * progress; their calls are recorded and replayed onto the real icons
+	 * once initialization has finished, except for messages, which are
+	 * displayed once the icon has been added to the tray. Only adding an icon
+	 * to the tray waits for initialization, so icons are best added from the
+	 * returned future:
+	 * </p>
+	 * 
+	 * <pre>
+	 * SystemTrayWrapper.initializeInBackground().thenCompose(tray -&gt; tray.addAsync(icon));
+	 * </pre>
+	 * 
+	 * <p>
+	 * If the system tray is not supported, the future completes exceptionally
+	 * with an <code>UnsupportedOperationException</code>, and icons created in
+	 * the meantime throw it when they are added.
+	 * </p>
+	 * 
+	 * @return future completed with the system tray once it is ready
+	 * @see #getSystemTray()
+	 */
+	public static CompletableFuture<SystemTrayWrapper> initializeInBackground()
+	{
+		return TrayInitializer.start();
+	}
+	
+	/**
+	 * Sets the executor used by the asynchronous operations of
+	 * <code>SystemTrayWrapper</code> and <code>TrayIconWrapper</code>, such
+	 * as {@link #addAsync(TrayIconWrapper)} and
+	 * {@link TrayIconWrapper#setImageAsync(Image)}. By default, work is handed
+	 * to the AWT event dispatch thread.
+	 * 
+	 * @param executor
+	 *            executor to use, or <code>null</code> to restore the default
+	 * @see #getAsyncExecutor()
+	 */
+	public static void setAsyncExecutor(Executor executor)
+	{
+		TrayExecutor.set(executor);
+	}
+	
+	/**
+	 * Returns the executor used by asynchronous tray operations.
+	 * 
+	 * @return executor
+	 * @see #setAsyncExecutor(Executor)
+	 */
+	public static Executor getAsyncExecutor()
+	{
+		return TrayExecutor.get();
+	}
+	
+	private static boolean probeSupported()
+	{
 		try
 		{
-			// load peer class
-			Class peerClass = Class.forName(PEER_CLASS_NAME);
-			
-			// load isSupported method
-			Method method = peerClass.getMethod("isSupported");
-			
-			// invoke underlying method			
-			return ((Boolean) method.invoke(null)).booleanValue();
-		}
-		catch (NoClassDefFoundError e)
-		{
-			return false;
-		}
-		catch (ClassNotFoundException e)
-		{
-			return false;
-		}
-		catch (NoSuchMethodException e)
-		{
-			return false;
-		}
-		catch (IllegalAccessException e)
-		{
-			return false;
+			return PeerProviders.getProvider().isSupported();
 		}
-		catch (InvocationTargetException e)
+		catch (LinkageError e)
 		{
-			Throwable target = e.getTargetException();
-			
-			if (target instanceof RuntimeException)
-				throw (RuntimeException) target;
-
 			return false;
 		}
 	}
-
+	
 	/**
 	 * <p>
 	 * Adds a <code>TrayIcon</code> to the <code>SystemTray</code>. The
@@ -247,6 +304,8 @@ public class SystemTrayWrapper
 	public void add(TrayIconWrapper trayIcon) throws AWTException
 	{
 		peer.add(trayIcon.getNativePeer());
+		invalidateSnapshot();
+		trayIcon.flushDeferredMessages();
 	}
 
 	/**
@@ -277,6 +336,167 @@ public class SystemTrayWrapper
 			return;
 		
 		peer.remove(trayIcon.getNativePeer());
+		invalidateSnapshot();
+	}
+	
+	/**
+	 * <p>
+	 * Adds several <code>TrayIcon</code>s to the <code>SystemTray</code> as a
+	 * single task on the event dispatch thread. This method waits for the task
+	 * to complete.
+	 * </p>
+	 * 
+	 * <p>
+	 * A failure to add one icon does not prevent the remaining icons from being
+	 * added; instead, all failures are reported together once the batch is
+	 * complete.
+	 * </p>
+	 * 
+	 * @param trayIcons
+	 *            the <code>TrayIcon</code>s to be added
+	 * @throws TrayIconBatchException
+	 *             if any icon could not be added, for any of the reasons given
+	 *             by {@link #add(TrayIconWrapper)}
+	 * @see #add(TrayIconWrapper)
+	 * @see #removeAll(Collection)
+	 * @see #replaceAll(Collection)
+	 */
+	public void addAll(Collection<? extends TrayIconWrapper> trayIcons) throws TrayIconBatchException
+	{
+		applyBatch("added", true, trayIcons, peer::addAll);
+	}
+	
+	/**
+	 * <p>
+	 * Removes several <code>TrayIcon</code>s from the <code>SystemTray</code>
+	 * as a single task on the event dispatch thread. This method waits for the
+	 * task to complete.
+	 * </p>
+	 * 
+	 * <p>
+	 * Icons which are <code>null</code> or were not added to the system tray
+	 * are ignored.
+	 * </p>
+	 * 
+	 * @param trayIcons
+	 *            the <code>TrayIcon</code>s to be removed
+	 * @throws TrayIconBatchException
+	 *             if any icon could not be removed
+	 * @see #remove(TrayIconWrapper)
+	 * @see #addAll(Collection)
+	 */
+	public void removeAll(Collection<? extends TrayIconWrapper> trayIcons) throws TrayIconBatchException
+	{
+		applyBatch("removed", false, trayIcons, peer::removeAll);
+	}
+	
+	/**
+	 * <p>
+	 * Replaces the contents of the <code>SystemTray</code> with the given
+	 * <code>TrayIcon</code>s as a single task on the event dispatch thread.
+	 * This method waits for the task to complete.
+	 * </p>
+	 * 
+	 * <p>
+	 * Icons which are already in the tray and are also given are left in
+	 * place, so they do not flicker; all other icons are removed, and the
+	 * remaining given icons are added. As with {@link #addAll(Collection)},
+	 * failures are reported together once the batch is complete.
+	 * </p>
+	 * 
+	 * @param trayIcons
+	 *            the <code>TrayIcon</code>s the tray should contain
+	 * @throws TrayIconBatchException
+	 *             if any icon could not be added
+	 * @see #addAll(Collection)
+	 * @see #removeAll(Collection)
+	 */
+	public void replaceAll(Collection<? extends TrayIconWrapper> trayIcons) throws TrayIconBatchException
+	{
+		applyBatch("added", true, trayIcons, peer::replaceAll);
+	}
+	
+	private void applyBatch(
+			String operation, boolean adding, Collection<? extends TrayIconWrapper> trayIcons,
+			final Function<TrayIconPeer[], Exception[]> batch)
+		throws TrayIconBatchException
+	{
+		TrayIconWrapper[] icons = trayIcons.toArray(new TrayIconWrapper[trayIcons.size()]);
+		
+		final TrayIconPeer[] peers = new TrayIconPeer[icons.length];
+		for (int i = 0; i < icons.length; i++)
+			peers[i] = (icons[i] == null) ? null : icons[i].getNativePeer();
+		
+		Exception[] failures = TrayExecutor.invokeAndWait(() ->
+		{
+			try
+			{
+				return batch.apply(peers);
+			}
+			finally
+			{
+				invalidateSnapshot();
+			}
+		});
+		
+		Map<TrayIconWrapper, Exception> failed = null;
+		for (int i = 0; i < failures.length; i++)
+		{
+			if (failures[i] == null)
+			{
+				if (adding && icons[i] != null)
+					icons[i].flushDeferredMessages();
+				
+				continue;
+			}
+			
+			if (failed == null)
+				failed = new LinkedHashMap<TrayIconWrapper, Exception>();
+			
+			failed.put(icons[i], failures[i]);
+		}
+		
+		if (failed != null)
+			throw new TrayIconBatchException(operation, icons.length, failed);
+	}
+	
+	/**
+	 * Adds a <code>TrayIcon</code> to the <code>SystemTray</code> without
+	 * blocking the calling thread. The work is performed by the tray executor
+	 * (by default, the AWT event dispatch thread).
+	 * 
+	 * @param trayIcon
+	 *            the <code>TrayIcon</code> to be added
+	 * @return a future which completes once the icon has been added, or
+	 *         completes exceptionally with any exception thrown by
+	 *         {@link #add(TrayIconWrapper)}
+	 * @see #add(TrayIconWrapper)
+	 * @see #setAsyncExecutor(Executor)
+	 */
+	public CompletableFuture<Void> addAsync(final TrayIconWrapper trayIcon)
+	{
+		return TrayExecutor.call(() ->
+		{
+			add(trayIcon);
+			return null;
+		});
+	}
+	
+	/**
+	 * Removes the specified <code>TrayIcon</code> from the
+	 * <code>SystemTray</code> without blocking the calling thread. The work is
+	 * performed by the tray executor (by default, the AWT event dispatch
+	 * thread).
+	 * 
+	 * @param trayIcon
+	 *            the <code>TrayIcon</code> to be removed
+	 * @return a future which completes once the icon has been removed
+	 * @see #remove(TrayIconWrapper)
+	 * @see #setAsyncExecutor(Executor)
+	 */
+	public CompletableFuture<Void> removeAsync(final TrayIconWrapper trayIcon)
+	{
+		return TrayExecutor.run(() -> remove(trayIcon));
 	}
 	
 	/**
@@ -295,9 +515,15 @@ public class SystemTrayWrapper
 	 * {@link #remove(TrayIconWrapper)} method.
 	 * </p>
 	 * 
+	 * <p>
+	 * The same <code>TrayIconWrapper</code> instance is returned for a given
+	 * tray icon on every call, for as long as the wrapper is referenced.
+	 * </p>
+	 * 
 	 * @return an array of all tray icons added to this tray, or an empty array
 	 *         if none has been added
 	 * @see #add(TrayIconWrapper)
+	 * @see #getTrayIconSnapshot()
 	 * @see TrayIconWrapper
 	 */
 	public TrayIconWrapper[] getTrayIcons()
@@ -307,11 +533,86 @@ public class SystemTrayWrapper
 		TrayIconWrapper[] icons = new TrayIconWrapper[iconPeers.length];
 				
 		for (int i = 0; i < iconPeers.length; i++)
-			icons[i] = new TrayIconWrapper(iconPeers[i]);
+			icons[i] = TrayIconWrapper.forPeer(iconPeers[i]);
 		
 		return icons;
 	}
 	
+	/**
+	 * <p>
+	 * Returns an unmodifiable view of all icons added to the tray by this
+	 * application. Unlike {@link #getTrayIcons()}, the returned list is cached
+	 * and shared between callers until the set of tray icons changes, so
+	 * polling this method does not allocate.
+	 * </p>
+	 * 
+	 * @return an unmodifiable list of all tray icons added to this tray
+	 * @see #getTrayIcons()
+	 */
+	public List<TrayIconWrapper> getTrayIconSnapshot()
+	{
+		int version = trayIconsVersion.get();
+		
+		TrayIconSnapshot current = snapshot;
+		if (current != null && current.version == version)
+			return current.icons;
+		
+		// if a change races with this rebuild, the version check above
+		// will reject the result on the next call
+		List<TrayIconWrapper> icons = Collections.unmodifiableList(Arrays.asList(getTrayIcons()));
+		snapshot = new TrayIconSnapshot(version, icons);
+		
+		return icons;
+	}
+	
+	/**
+	 * Returns the registry which maps application keys to the icons shown for
+	 * them. Icons registered there are added to this tray.
+	 * 
+	 * @return tray icon registry
+	 * @see TrayIconRegistry
+	 */
+	public TrayIconRegistry getRegistry()
+	{
+		TrayIconRegistry result = registry;
+		if (result != null)
+			return result;
+		
+		synchronized (this)
+		{
+			if (registry == null)
+				registry = new TrayIconRegistry(this);
+			
+			return registry;
+		}
+	}
+	
+	/**
+	 * Returns the handler which re-renders icons when the tray icon size
+	 * changes.
+	 * 
+	 * @return icon resizer
+	 */
+	IconResizer getIconResizer()
+	{
+		IconResizer result = iconResizer;
+		if (result != null)
+			return result;
+		
+		synchronized (this)
+		{
+			if (iconResizer == null)
+				iconResizer = new IconResizer(this);
+			
+			return iconResizer;
+		}
+	}
+	
+	private void invalidateSnapshot()
+	{
+		trayIconsVersion.incrementAndGet();
+	}
+	
 	/**
 	 * <p>
 	 * Returns the size, in pixels, of the space that a tray icon will occupy in
@@ -339,6 +640,7 @@ public class SystemTrayWrapper
 	 * 
 	 * <ul>
 	 * <li><code>trayIcons</code></li>
+	 * <li><code>trayIconSize</code></li>
 	 * </ul>
 	 * 
 	 * <p>
@@ -351,6 +653,12 @@ public class SystemTrayWrapper
 	 * </p>
 	 * 
 	 * <p>
+	 * The size of tray icons, as returned by {@link #getTrayIconSize()}. This
+	 * property is changed when the platform starts using a different icon
+	 * size, for example after the display configuration has changed.
+	 * </p>
+	 * 
+	 * <p>
 	 * The <code>listener</code> listens to property changes only in this
 	 * context.
 	 * </p>
@@ -408,7 +716,9 @@ public class SystemTrayWrapper
 	 * named property.
 	 * </p>
 	 * 
-	 * Only the listeners in this context are returned.
+	 * Only the listeners in this context are returned. Listeners which this
+	 * library registers for its own use, for example to follow the tray icon
+	 * size, are never returned.
 	 * 
 	 * @param propertyName
 	 *            the specified property
@@ -421,6 +731,89 @@ public class SystemTrayWrapper
 	 */
 	public PropertyChangeListener[] getPropertyChangeListeners(String propertyName)
 	{
-		return peer.getPropertyChangeListeners(propertyName);
+		PropertyChangeListener[] listeners = peer.getPropertyChangeListeners(propertyName);
+		
+		// hide our own listeners from callers
+		List<PropertyChangeListener> result = new ArrayList<PropertyChangeListener>(listeners.length);
+		synchronized (internalListeners)
+		{
+			Set<PropertyChangeListener> internal = internalListeners.get(propertyName);
+			for (PropertyChangeListener listener : listeners)
+			{
+				PropertyChangeListener target = (listener instanceof PropertyChangeListenerProxy)
+					? ((PropertyChangeListenerProxy) listener).getListener() : listener;
+				
+				if (internal == null || !internal.contains(target))
+					result.add(listener);
+			}
+		}
+		
+		return (result.size() == listeners.length)
+			? listeners : result.toArray(new PropertyChangeListener[result.size()]);
+	}
+	
+	/**
+	 * Adds a listener on behalf of this library. Such listeners are never
+	 * returned by {@link #getPropertyChangeListeners(String)}.
+	 * 
+	 * @param propertyName
+	 *            the specified property
+	 * @param listener
+	 *            the property change listener to be added
+	 */
+	void addInternalPropertyChangeListener(String propertyName, PropertyChangeListener listener)
+	{
+		if (propertyName == null || listener == null)
+			return;
+		
+		// hidden before it can be seen
+		synchronized (internalListeners)
+		{
+			Set<PropertyChangeListener> internal = internalListeners.get(propertyName);
+			if (internal == null)
+			{
+				internal = Collections.newSetFromMap(new IdentityHashMap<PropertyChangeListener, Boolean>());
+				internalListeners.put(propertyName, internal);
+			}
+			internal.add(listener);
+		}
+		
+		peer.addPropertyChangeListener(propertyName, listener);
+	}
+	
+	/**
+	 * Removes a listener added by
+	 * {@link #addInternalPropertyChangeListener(String, PropertyChangeListener)}.
+	 * 
+	 * @param propertyName
+	 *            the specified property
+	 * @param listener
+	 *            the property change listener to be removed
+	 */
+	void removeInternalPropertyChangeListener(String propertyName, PropertyChangeListener listener)
+	{
+		if (propertyName == null || listener == null)
+			return;
+		
+		peer.removePropertyChangeListener(propertyName, listener);
+		
+		synchronized (internalListeners)
+		{
+			Set<PropertyChangeListener> internal = internalListeners.get(propertyName);
+			if (internal != null && internal.remove(listener) && internal.isEmpty())
+				internalListeners.remove(propertyName);
+		}
+	}
+	
+	private static final class TrayIconSnapshot
+	{
+		final int version;
+		final List<TrayIconWrapper> icons;
+		
+		TrayIconSnapshot(int version, List<TrayIconWrapper> icons)
+		{
+			this.version = version;
+			this.icons = icons;
+		}
 	}
 }
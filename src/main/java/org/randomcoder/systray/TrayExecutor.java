@@ -0,0 +1,150 @@
+package org.randomcoder.systray;
+
+import java.awt.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Holds the executor used by the asynchronous tray operations. By default,
+ * work is handed to the AWT event dispatch thread.
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+final class TrayExecutor
+{
+	static final Executor EVENT_DISPATCH_THREAD = new Executor()
+	{
+		public void execute(Runnable command)
+		{
+			EventQueue.invokeLater(command);
+		}
+	};
+
+	private static volatile Executor executor = EVENT_DISPATCH_THREAD;
+
+	private TrayExecutor()
+	{
+	}
+
+	static Executor get()
+	{
+		return executor;
+	}
+
+	static void set(Executor executor)
+	{
+		TrayExecutor.executor = (executor == null) ? EVENT_DISPATCH_THREAD : executor;
+	}
+
+	/**
+	 * Runs a task on the event dispatch thread and waits for its result,
+	 * regardless of the configured tray executor. If called on the event
+	 * dispatch thread, the task is run directly. Interrupts while waiting are
+	 * deferred until the task has completed.
+	 *
+	 * @param task
+	 *            task to run
+	 * @return result of the task
+	 */
+	static <T> T invokeAndWait(Supplier<T> task)
+	{
+		if (EventQueue.isDispatchThread())
+			return task.get();
+
+		FutureTask<T> future = new FutureTask<T>(task::get);
+		EventQueue.invokeLater(future);
+
+		boolean interrupted = false;
+		try
+		{
+			while (true)
+			{
+				try
+				{
+					return future.get();
+				}
+				catch (InterruptedException e)
+				{
+					interrupted = true;
+				}
+				catch (ExecutionException e)
+				{
+					Throwable cause = e.getCause();
+					if (cause instanceof RuntimeException)
+						throw (RuntimeException) cause;
+					if (cause instanceof Error)
+						throw (Error) cause;
+					throw new IllegalStateException(cause);
+				}
+			}
+		}
+		finally
+		{
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Runs a task on the tray executor.
+	 *
+	 * @param task
+	 *            task to run
+	 * @return future completed when the task has run, or completed
+	 *         exceptionally with whatever the task threw
+	 */
+	static CompletableFuture<Void> run(Runnable task)
+	{
+		return CompletableFuture.runAsync(task, executor);
+	}
+
+	/**
+	 * Runs a task which may throw a checked exception on the tray executor.
+	 *
+	 * @param task
+	 *            task to run
+	 * @return future completed with the task's result, or completed
+	 *         exceptionally with whatever the task threw
+	 */
+	static <T> CompletableFuture<T> call(Callable<T> task)
+	{
+		return CompletableFuture.supplyAsync(() ->
+		{
+			try
+			{
+				return task.call();
+			}
+			catch (RuntimeException e)
+			{
+				throw e;
+			}
+			catch (Exception e)
+			{
+				throw new CompletionException(e);
+			}
+		}, executor);
+	}
+}
@@ -0,0 +1,83 @@
+package org.randomcoder.systray;
+
+import java.awt.AWTException;
+import java.util.*;
+
+/**
+ * Signals that one or more tray icons in a bulk operation, such as
+ * {@link SystemTrayWrapper#addAll(Collection)}, could not be processed. The
+ * remaining icons in the batch were processed normally.
+ * 
+ * <p>
+ * Each failure is also attached as a suppressed exception, so that it appears
+ * in the stack trace.
+ * </p>
+ * 
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+public class TrayIconBatchException extends AWTException
+{
+	private static final long serialVersionUID = -1904617357392048371L;
+
+	private final int batchSize;
+
+	private final transient Map<TrayIconWrapper, Exception> failures;
+
+	TrayIconBatchException(String operation, int batchSize, Map<TrayIconWrapper, Exception> failures)
+	{
+		super(failures.size() + " of " + batchSize + " tray icons could not be " + operation);
+
+		this.batchSize = batchSize;
+		this.failures = Collections.unmodifiableMap(failures);
+
+		for (Exception failure : failures.values())
+			addSuppressed(failure);
+	}
+
+	/**
+	 * Returns the number of icons in the failed operation.
+	 * 
+	 * @return batch size
+	 */
+	public int getBatchSize()
+	{
+		return batchSize;
+	}
+
+	/**
+	 * Returns the icons which could not be processed, in batch order, mapped to
+	 * the exception raised for each. A <code>null</code> key stands for a
+	 * <code>null</code> element in the batch.
+	 * 
+	 * @return unmodifiable map of failures, or an empty map if this exception
+	 *         has been deserialized
+	 */
+	public Map<TrayIconWrapper, Exception> getFailures()
+	{
+		return (failures == null) ? Collections.<TrayIconWrapper, Exception> emptyMap() : failures;
+	}
+}
@@ -0,0 +1,524 @@
+package org.randomcoder.systray;
+
+import java.awt.AWTException;
+import java.beans.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * <p>
+ * Maps application keys, such as subsystem ids, to the tray icons shown for
+ * them, so that components can find their icon in constant time instead of
+ * scanning {@link SystemTrayWrapper#getTrayIcons()}. Obtained from
+ * {@link SystemTrayWrapper#getRegistry()}.
+ * </p>
+ * 
+ * <p>
+ * Registering an icon adds it to the system tray, and unregistering it
+ * removes it. Each operation is atomic with respect to its key: concurrent
+ * callers of {@link #computeIfAbsent(Object, Function)} for the same key
+ * create and add a single icon, and {@link #replace(Object, TrayIconWrapper)}
+ * swaps icons without another thread seeing the key unmapped. Icons removed
+ * from the tray by other means, including by the platform, are dropped from
+ * the registry shortly afterwards.
+ * </p>
+ * 
+ * <p>
+ * Icons are added to and removed from the tray outside of any lock, so tray
+ * listeners may use the registry, even for the key being updated; only
+ * updates of that key from the thread updating it are refused.
+ * </p>
+ * 
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+public final class TrayIconRegistry
+{
+	private static final String TRAY_ICONS_PROPERTY = "trayIcons";
+
+	private final SystemTrayWrapper tray;
+
+	private final ConcurrentMap<Object, Slot> icons = new ConcurrentHashMap<Object, Slot>();
+
+	private final Set<Object> keys = new AbstractSet<Object>()
+	{
+		@Override
+		public Iterator<Object> iterator()
+		{
+			return registeredKeys().iterator();
+		}
+
+		@Override
+		public int size()
+		{
+			return TrayIconRegistry.this.size();
+		}
+
+		@Override
+		public boolean contains(Object key)
+		{
+			return containsKey(key);
+		}
+	};
+
+	private final AtomicBoolean purgeScheduled = new AtomicBoolean();
+
+	private final Runnable purgeTask = new Runnable()
+	{
+		public void run()
+		{
+			purgeScheduled.set(false);
+			purge();
+		}
+	};
+
+	private final PropertyChangeListener trayIconsListener = new PropertyChangeListener()
+	{
+		public void propertyChange(PropertyChangeEvent evt)
+		{
+			// never purge synchronously, as the change may come from within
+			// an update of the registry
+			if (purgeScheduled.compareAndSet(false, true))
+				TrayScheduler.schedule(purgeTask, 0L, TimeUnit.MILLISECONDS);
+		}
+	};
+
+	TrayIconRegistry(SystemTrayWrapper tray)
+	{
+		this.tray = tray;
+		tray.addInternalPropertyChangeListener(TRAY_ICONS_PROPERTY, trayIconsListener);
+	}
+
+	/**
+	 * Returns the icon registered for a key. While the key is being updated,
+	 * this is the icon registered before the update.
+	 * 
+	 * @param key
+	 *            application key
+	 * @return icon, or <code>null</code> if none is registered
+	 */
+	public TrayIconWrapper get(Object key)
+	{
+		Slot slot = icons.get(key);
+		return (slot == null) ? null : slot.icon;
+	}
+
+	/**
+	 * Determines whether an icon is registered for a key.
+	 * 
+	 * @param key
+	 *            application key
+	 * @return <code>true</code> if an icon is registered
+	 */
+	public boolean containsKey(Object key)
+	{
+		return get(key) != null;
+	}
+
+	/**
+	 * Returns the registered keys.
+	 * 
+	 * @return unmodifiable view of the keys
+	 */
+	public Set<Object> keySet()
+	{
+		return keys;
+	}
+
+	/**
+	 * Returns the number of registered icons.
+	 * 
+	 * @return icon count
+	 */
+	public int size()
+	{
+		int size = 0;
+		for (Slot slot : icons.values())
+		{
+			if (slot.icon != null)
+				size++;
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the icon registered for a key, creating, adding and registering
+	 * one if there is none. The factory is called at most once per missing
+	 * key, however many threads ask for it.
+	 * 
+	 * @param key
+	 *            application key
+	 * @param factory
+	 *            creates the icon for the key; should be short, as other
+	 *            updates of the same key wait for it
+	 * @return registered icon, or <code>null</code> if the factory returned
+	 *         <code>null</code>
+	 * @throws AWTException
+	 *             if the new icon could not be added to the tray, in which
+	 *             case nothing is registered
+	 * @throws IllegalStateException
+	 *             if the calling thread is already updating the key, for
+	 *             example from a listener notified by that update
+	 */
+	public TrayIconWrapper computeIfAbsent(Object key, Function<Object, ? extends TrayIconWrapper> factory)
+			throws AWTException
+	{
+		Slot reservation = Slot.reserve(null);
+
+		for (;;)
+		{
+			Slot current = icons.get(key);
+			if (current != null)
+			{
+				if (!current.isUpdating())
+					return current.icon;
+
+				current.await();
+				continue;
+			}
+
+			if (icons.putIfAbsent(key, reservation) == null)
+				break;
+		}
+
+		Slot result = null;
+		try
+		{
+			TrayIconWrapper icon = factory.apply(key);
+			if (icon != null)
+			{
+				tray.add(icon);
+				result = Slot.registered(icon);
+			}
+
+			return icon;
+		}
+		finally
+		{
+			settle(key, reservation, result);
+		}
+	}
+
+	/**
+	 * Adds and registers an icon, unless an icon is already registered for
+	 * the key.
+	 * 
+	 * @param key
+	 *            application key
+	 * @param icon
+	 *            icon to register
+	 * @return icon previously registered, in which case <code>icon</code> is
+	 *         not added, or <code>null</code>
+	 * @throws AWTException
+	 *             if the icon could not be added to the tray
+	 * @throws IllegalStateException
+	 *             if the calling thread is already updating the key
+	 */
+	public TrayIconWrapper putIfAbsent(Object key, final TrayIconWrapper icon) throws AWTException
+	{
+		if (icon == null)
+			throw new NullPointerException("icon");
+
+		TrayIconWrapper registered = computeIfAbsent(key, k -> icon);
+		return (registered == icon) ? null : registered;
+	}
+
+	/**
+	 * Replaces the icon registered for a key. The new icon is added to the
+	 * tray before the old one is removed, and the key stays mapped
+	 * throughout.
+	 * 
+	 * @param key
+	 *            application key
+	 * @param icon
+	 *            new icon
+	 * @return icon previously registered, or <code>null</code> if none was,
+	 *         in which case nothing is registered
+	 * @throws AWTException
+	 *             if the new icon could not be added to the tray, in which
+	 *             case the old icon stays registered
+	 * @throws IllegalStateException
+	 *             if the calling thread is already updating the key
+	 */
+	public TrayIconWrapper replace(Object key, TrayIconWrapper icon) throws AWTException
+	{
+		return replace(key, null, icon, false);
+	}
+
+	/**
+	 * Replaces the icon registered for a key, if it is the expected icon.
+	 * 
+	 * @param key
+	 *            application key
+	 * @param expected
+	 *            icon expected to be registered
+	 * @param icon
+	 *            new icon
+	 * @return <code>true</code> if the icon was replaced
+	 * @throws AWTException
+	 *             if the new icon could not be added to the tray, in which
+	 *             case the old icon stays registered
+	 * @throws IllegalStateException
+	 *             if the calling thread is already updating the key
+	 */
+	public boolean replace(Object key, TrayIconWrapper expected, TrayIconWrapper icon) throws AWTException
+	{
+		if (expected == null)
+			throw new NullPointerException("expected");
+
+		return replace(key, expected, icon, true) == expected;
+	}
+
+	private TrayIconWrapper replace(Object key, TrayIconWrapper expected, TrayIconWrapper icon,
+			boolean conditional) throws AWTException
+	{
+		if (icon == null)
+			throw new NullPointerException("icon");
+
+		for (;;)
+		{
+			Slot current = icons.get(key);
+			if (current == null)
+				return null;
+
+			if (current.isUpdating())
+			{
+				current.await();
+				continue;
+			}
+
+			if ((conditional && current.icon != expected) || current.icon == icon)
+				return current.icon;
+
+			Slot reservation = Slot.reserve(current.icon);
+			if (!icons.replace(key, current, reservation))
+				continue;
+
+			// the old icon stays registered unless the new one is added
+			Slot result = current;
+			try
+			{
+				tray.add(icon);
+				result = Slot.registered(icon);
+				tray.remove(current.icon);
+			}
+			finally
+			{
+				settle(key, reservation, result);
+			}
+
+			return current.icon;
+		}
+	}
+
+	/**
+	 * Unregisters the icon for a key and removes it from the tray.
+	 * 
+	 * @param key
+	 *            application key
+	 * @return icon removed, or <code>null</code> if none was registered
+	 * @throws IllegalStateException
+	 *             if the calling thread is already updating the key
+	 */
+	public TrayIconWrapper remove(Object key)
+	{
+		return remove(key, null, false);
+	}
+
+	/**
+	 * Unregisters an icon and removes it from the tray, if it is registered
+	 * for the key.
+	 * 
+	 * @param key
+	 *            application key
+	 * @param icon
+	 *            icon expected to be registered
+	 * @return <code>true</code> if the icon was removed
+	 * @throws IllegalStateException
+	 *             if the calling thread is already updating the key
+	 */
+	public boolean remove(Object key, TrayIconWrapper icon)
+	{
+		return icon != null && remove(key, icon, true) == icon;
+	}
+
+	private TrayIconWrapper remove(Object key, TrayIconWrapper expected, boolean conditional)
+	{
+		for (;;)
+		{
+			Slot current = icons.get(key);
+			if (current == null)
+				return null;
+
+			if (current.isUpdating())
+			{
+				current.await();
+				continue;
+			}
+
+			if (conditional && current.icon != expected)
+				return null;
+
+			Slot reservation = Slot.reserve(current.icon);
+			if (!icons.replace(key, current, reservation))
+				continue;
+
+			Slot result = current;
+			try
+			{
+				tray.remove(current.icon);
+				result = null;
+			}
+			finally
+			{
+				settle(key, reservation, result);
+			}
+
+			return current.icon;
+		}
+	}
+
+	/**
+	 * Ends an update of a key, publishing its result, or unmapping the key
+	 * if the result is <code>null</code>, and releasing any waiting threads.
+	 */
+	private void settle(Object key, Slot reservation, Slot result)
+	{
+		if (result == null)
+			icons.remove(key, reservation);
+		else
+			icons.replace(key, reservation, result);
+
+		reservation.updated.complete(null);
+	}
+
+	private List<Object> registeredKeys()
+	{
+		List<Object> result = new ArrayList<Object>(icons.size());
+		for (Map.Entry<Object, Slot> entry : icons.entrySet())
+		{
+			if (entry.getValue().icon != null)
+				result.add(entry.getKey());
+		}
+		return Collections.unmodifiableList(result);
+	}
+
+	/**
+	 * Drops entries whose icons are no longer in the tray.
+	 */
+	void purge()
+	{
+		List<Map.Entry<Object, Slot>> candidates = null;
+
+		Set<TrayIconWrapper> added = snapshot();
+		for (Map.Entry<Object, Slot> entry : icons.entrySet())
+		{
+			// keys being updated are left to their update
+			Slot slot = entry.getValue();
+			if (!slot.isUpdating() && !added.contains(slot.icon))
+			{
+				if (candidates == null)
+					candidates = new ArrayList<Map.Entry<Object, Slot>>();
+
+				candidates.add(new AbstractMap.SimpleImmutableEntry<Object, Slot>(entry));
+			}
+		}
+
+		if (candidates == null)
+			return;
+
+		// icons registered while iterating may be missing from the first
+		// snapshot, so check again before removing anything
+		added = snapshot();
+		for (Map.Entry<Object, Slot> entry : candidates)
+		{
+			if (!added.contains(entry.getValue().icon))
+				icons.remove(entry.getKey(), entry.getValue());
+		}
+	}
+
+	private Set<TrayIconWrapper> snapshot()
+	{
+		List<TrayIconWrapper> snapshot = tray.getTrayIconSnapshot();
+
+		Set<TrayIconWrapper> result = Collections.newSetFromMap(
+				new IdentityHashMap<TrayIconWrapper, Boolean>(snapshot.size() * 2));
+		result.addAll(snapshot);
+		return result;
+	}
+
+	/**
+	 * Value of a key. The tray is changed outside of any map update, so that
+	 * tray listeners may use the registry; while that happens the key holds a
+	 * reservation, which other updates of the key wait for, and which is then
+	 * replaced by the result or rolled back.
+	 */
+	private static final class Slot
+	{
+		// registered icon, or null while a missing key is being added
+		final TrayIconWrapper icon;
+
+		// only set on reservations
+		final Thread owner;
+		final CompletableFuture<Void> updated;
+
+		private Slot(TrayIconWrapper icon, Thread owner, CompletableFuture<Void> updated)
+		{
+			this.icon = icon;
+			this.owner = owner;
+			this.updated = updated;
+		}
+
+		static Slot registered(TrayIconWrapper icon)
+		{
+			return new Slot(icon, null, null);
+		}
+
+		/**
+		 * Creates a reservation for the calling thread, which keeps the
+		 * previous icon visible.
+		 */
+		static Slot reserve(TrayIconWrapper previous)
+		{
+			return new Slot(previous, Thread.currentThread(), new CompletableFuture<Void>());
+		}
+
+		boolean isUpdating()
+		{
+			return updated != null && !updated.isDone();
+		}
+
+		void await()
+		{
+			if (owner == Thread.currentThread())
+				throw new IllegalStateException("Key is already being updated by this thread");
+
+			updated.join();
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package org.randomcoder.systray;
+
+import java.awt.*;
+
+/**
+ * Immutable snapshot of the properties of a tray icon. Instances are replaced
+ * wholesale, so a single volatile read always yields a consistent view.
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+final class TrayIconState
+{
+	static final int IMAGE = 0;
+	static final int TOOL_TIP = 1;
+	static final int POPUP_MENU = 2;
+	static final int IMAGE_AUTO_SIZE = 3;
+	static final int ACTION_COMMAND = 4;
+
+	final Image image;
+	final String toolTip;
+	final PopupMenu popupMenu;
+	final boolean imageAutoSize;
+	final String actionCommand;
+
+	TrayIconState(Image image, String toolTip, PopupMenu popupMenu, boolean imageAutoSize, String actionCommand)
+	{
+		this.image = image;
+		this.toolTip = toolTip;
+		this.popupMenu = popupMenu;
+		this.imageAutoSize = imageAutoSize;
+		this.actionCommand = actionCommand;
+	}
+
+	/**
+	 * Returns a copy of this state with a single property changed.
+	 *
+	 * @param property
+	 *            property index
+	 * @param value
+	 *            new value
+	 * @return new state, or <code>this</code> if the value is unchanged
+	 */
+	TrayIconState with(int property, Object value)
+	{
+		switch (property)
+		{
+			case IMAGE:
+				return (image == value) ? this
+						: new TrayIconState((Image) value, toolTip, popupMenu, imageAutoSize, actionCommand);
+			case TOOL_TIP:
+				return equal(toolTip, value) ? this
+						: new TrayIconState(image, (String) value, popupMenu, imageAutoSize, actionCommand);
+			case POPUP_MENU:
+				return (popupMenu == value) ? this
+						: new TrayIconState(image, toolTip, (PopupMenu) value, imageAutoSize, actionCommand);
+			case IMAGE_AUTO_SIZE:
+				boolean autoSize = ((Boolean) value).booleanValue();
+				return (imageAutoSize == autoSize) ? this
+						: new TrayIconState(image, toolTip, popupMenu, autoSize, actionCommand);
+			case ACTION_COMMAND:
+				return equal(actionCommand, value) ? this
+						: new TrayIconState(image, toolTip, popupMenu, imageAutoSize, (String) value);
+			default:
+				throw new IllegalArgumentException("Unknown property: " + property);
+		}
+	}
+
+	private static boolean equal(Object a, Object b)
+	{
+		return (a == null) ? (b == null) : a.equals(b);
+	}
+}
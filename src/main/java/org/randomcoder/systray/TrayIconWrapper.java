@@ -2,8 +2,14 @@ package org.randomcoder.systray;
 
 import java.awt.*;
 import java.awt.event.*;
-import java.lang.reflect.*;
+import java.beans.*;
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
+import org.randomcoder.systray.image.*;
 import org.randomcoder.systray.peer.*;
 
 /**
@@ -37,9 +43,72 @@ import org.randomcoder.systray.peer.*;
  */
 public class TrayIconWrapper
 {
-	private static final String PEER_CLASS_NAME = TrayIconPeer.class.getName() + "Impl";
+	private static final Map<TrayIconPeer, WeakReference<TrayIconWrapper>> registry =
+		new WeakHashMap<TrayIconPeer, WeakReference<TrayIconWrapper>>();
 	
 	private final TrayIconPeer peer;
+	
+	/**
+	 * Shadow copy of the icon's properties, as last set by the application.
+	 */
+	private final AtomicReference<TrayIconState> state;
+	
+	private final Object updateLock = new Object();
+	
+	/**
+	 * Properties as last applied to the peer; guarded by
+	 * <code>updateLock</code>.
+	 */
+	private TrayIconState nativeState;
+	
+	private volatile UpdateBatcher batcher;
+	
+	private volatile NotificationQueue notificationQueue;
+	
+	private volatile ListenerDispatcher listenerDispatcher;
+	
+	private volatile ProgressRing progressRing;
+	
+	private volatile double progress = Double.NaN;
+	
+	private volatile IconSet iconSet;
+	
+	private volatile IconRenderer iconRenderer;
+	
+	private final Object popupMenuLock = new Object();
+	
+	private volatile LazyPopupMenu lazyPopupMenu;
+	
+	private volatile String iconState;
+	
+	private final PropertyChangeListener progressFramesListener = new PropertyChangeListener()
+	{
+		public void propertyChange(PropertyChangeEvent evt)
+		{
+			showProgress();
+		}
+	};
+	
+	/**
+	 * Listeners registered with the peer on behalf of application listeners,
+	 * keyed by the application listener; each map guards itself.
+	 */
+	private final Map<EventListener, DispatchingListener> actionProxies =
+		new IdentityHashMap<EventListener, DispatchingListener>();
+	
+	private final Map<EventListener, DispatchingListener> mouseProxies =
+		new IdentityHashMap<EventListener, DispatchingListener>();
+	
+	private final Map<EventListener, DispatchingListener> mouseMotionProxies =
+		new IdentityHashMap<EventListener, DispatchingListener>();
+	
+	/**
+	 * Coalescers registered with the peer for throttled mouse-motion
+	 * listeners, keyed by the application listener; guarded by
+	 * <code>mouseMotionProxies</code>.
+	 */
+	private final Map<EventListener, MouseMotionCoalescer> mouseMotionCoalescers =
+		new IdentityHashMap<EventListener, MouseMotionCoalescer>();
 
 	/**
 	 * The message type determines which icon will be displayed in the caption
@@ -72,14 +141,112 @@ public class TrayIconWrapper
 		WARNING 
 	}
 	
+	/**
+	 * Returns the peer to hand to the system tray. A deferred peer is resolved
+	 * first, which waits for background initialization if necessary.
+	 * 
+	 * @return real peer
+	 */
 	TrayIconPeer getNativePeer()
 	{
-		return peer;
+		return (peer instanceof DeferredTrayIconPeer) ? ((DeferredTrayIconPeer) peer).resolve() : peer;
+	}
+	
+	/**
+	 * Displays messages queued by a deferred peer; called once the icon has
+	 * been added to the tray.
+	 */
+	void flushDeferredMessages()
+	{
+		if (peer instanceof DeferredTrayIconPeer)
+			((DeferredTrayIconPeer) peer).flushMessages();
 	}
 	
 	TrayIconWrapper(TrayIconPeer peer)
+	{
+		this(peer, new TrayIconState(
+				peer.getImage(), peer.getToolTip(), peer.getPopupMenu(),
+				peer.isImageAutoSize(), peer.getActionCommand()));
+	}
+	
+	private TrayIconWrapper(TrayIconPeer peer, TrayIconState initialState)
 	{
 		this.peer = peer;
+		this.state = new AtomicReference<TrayIconState>(initialState);
+		this.nativeState = initialState;
+		register(this, peer);
+		
+		if (peer instanceof DeferredTrayIconPeer)
+			((DeferredTrayIconPeer) peer).setOwner(this);
+	}
+	
+	/**
+	 * Registers a wrapper as the wrapper for a peer. A wrapper with a deferred
+	 * peer is registered again for its real peer once that exists.
+	 */
+	static void register(TrayIconWrapper trayIcon, TrayIconPeer peer)
+	{
+		synchronized (registry)
+		{
+			registry.put(peer, new WeakReference<TrayIconWrapper>(trayIcon));
+		}
+	}
+	
+	private static TrayIconPeer createPeer(Image image, String tooltip, PopupMenu popup)
+	{
+		TrayIconPeer deferred = TrayInitializer.defer(image, tooltip, popup);
+		if (deferred != null)
+			return deferred;
+		
+		TrayIconPeerFactory factory = getPeerFactory();
+		
+		if (popup != null)
+			return factory.createTrayIcon(image, tooltip, popup);
+		
+		if (tooltip != null)
+			return factory.createTrayIcon(image, tooltip);
+		
+		return factory.createTrayIcon(image);
+	}
+	
+	/**
+	 * Returns the wrapper for the given peer, creating one only if no live
+	 * wrapper exists yet. Wrappers are held weakly, so repeated lookups of the
+	 * same peer return the same wrapper for as long as anyone references it.
+	 * 
+	 * @param peer
+	 *            tray icon peer
+	 * @return wrapper around <code>peer</code>
+	 */
+	static TrayIconWrapper forPeer(TrayIconPeer peer)
+	{
+		synchronized (registry)
+		{
+			WeakReference<TrayIconWrapper> ref = registry.get(peer);
+			TrayIconWrapper result = (ref == null) ? null : ref.get();
+			
+			if (result == null)
+				result = new TrayIconWrapper(peer);
+			
+			return result;
+		}
+	}
+	
+	/**
+	 * Returns the peer factory, which is resolved once on first use.
+	 * 
+	 * @return peer factory
+	 * @throws UnsupportedOperationException
+	 *             if the system tray isn't supported by the current platform
+	 */
+	static TrayIconPeerFactory getPeerFactory()
+	{
+		TrayIconPeerFactory factory = PeerFactoryHolder.FACTORY;
+		
+		if (factory == null)
+			throw new UnsupportedOperationException("System tray not supported", PeerFactoryHolder.FAILURE);
+		
+		return factory;
 	}
 	
 	/**
@@ -102,34 +269,10 @@ public class TrayIconWrapper
 	 * @see SecurityManager#checkPermission(java.security.Permission)
 	 * @see AWTPermission
 	 */
-	@SuppressWarnings("unchecked")
 	public TrayIconWrapper(Image image)
 	{
-		try
-		{
-			// load peer class
-			Class peerClass = Class.forName(PEER_CLASS_NAME);
-			
-			// load SystemTray class
-			Class trayIcon = Class.forName("java.awt.TrayIcon");
-			
-			// create a new peer
-			Constructor constructor = peerClass.getConstructor(Image.class);
-			
-			peer = (TrayIconPeer) constructor.newInstance(image);						
-		}
-		catch (InvocationTargetException e)
-		{
-			Throwable target = e.getTargetException();
-			if (target instanceof RuntimeException)
-				throw (RuntimeException) target;
-			
-			throw new UnsupportedOperationException("System tray not supported", e);
-		}
-		catch (Exception e)
-		{
-			throw new UnsupportedOperationException("System tray not supported", e);
-		}
+		this(createPeer(image, null, null),
+				new TrayIconState(image, null, null, false, null));
 	}
 	
 	/**
@@ -156,34 +299,10 @@ public class TrayIconWrapper
 	 * @see SecurityManager#checkPermission(java.security.Permission)
 	 * @see AWTPermission
 	 */
-	@SuppressWarnings("unchecked")
 	public TrayIconWrapper(Image image, String tooltip)
 	{
-		try
-		{
-			// load peer class
-			Class peerClass = Class.forName(PEER_CLASS_NAME);
-			
-			// load SystemTray class
-			Class trayIcon = Class.forName("java.awt.TrayIcon");
-			
-			// create a new peer
-			Constructor constructor = peerClass.getConstructor(Image.class, String.class);
-			
-			peer = (TrayIconPeer) constructor.newInstance(image, tooltip);
-		}
-		catch (InvocationTargetException e)
-		{
-			Throwable target = e.getTargetException();
-			if (target instanceof RuntimeException)
-				throw (RuntimeException) target;
-			
-			throw new UnsupportedOperationException("System tray not supported", e);
-		}
-		catch (Exception e)
-		{
-			throw new UnsupportedOperationException("System tray not supported", e);
-		}
+		this(createPeer(image, tooltip, null),
+				new TrayIconState(image, tooltip, null, false, null));
 	}
 	
 	/**
@@ -213,34 +332,10 @@ public class TrayIconWrapper
 	 * @see SecurityManager#checkPermission(java.security.Permission)
 	 * @see AWTPermission
 	 */
-	@SuppressWarnings("unchecked")
 	public TrayIconWrapper(Image image, String tooltip, PopupMenu popup)
 	{
-		try
-		{
-			// load peer class
-			Class peerClass = Class.forName(PEER_CLASS_NAME);
-			
-			// load SystemTray class
-			Class trayIcon = Class.forName("java.awt.TrayIcon");
-			
-			// create a new peer
-			Constructor constructor = peerClass.getConstructor(Image.class, String.class, PopupMenu.class);
-			
-			peer = (TrayIconPeer) constructor.newInstance(image, tooltip, popup);
-		}
-		catch (InvocationTargetException e)
-		{
-			Throwable target = e.getTargetException();
-			if (target instanceof RuntimeException)
-				throw (RuntimeException) target;
-			
-			throw new UnsupportedOperationException("System tray not supported", e);
-		}
-		catch (Exception e)
-		{
-			throw new UnsupportedOperationException("System tray not supported", e);
-		}
+		this(createPeer(image, tooltip, popup),
+				new TrayIconState(image, tooltip, popup, false, null));
 	}
 	
 	/**
@@ -276,7 +371,10 @@ public class TrayIconWrapper
 	 */
 	public void setImage(Image image)
 	{
-		peer.setImage(image);
+		if (image == null)
+			throw new NullPointerException("setting null Image");
+		
+		update(TrayIconState.IMAGE, image, true);
 	}
 	
 	/**
@@ -288,7 +386,23 @@ public class TrayIconWrapper
 	 */
 	public Image getImage()
 	{
-		return peer.getImage();
+		return state.get().image;
+	}
+	
+	/**
+	 * Returns the image last applied to the native tray icon. This differs
+	 * from {@link #getImage()} only while a batched update is pending.
+	 * 
+	 * @return the image currently displayed
+	 * @see #getImage()
+	 * @see #enableBatchedUpdates(long, TimeUnit)
+	 */
+	public Image getDisplayedImage()
+	{
+		synchronized (updateLock)
+		{
+			return nativeState.image;
+		}
 	}
 	
 	/**
@@ -327,18 +441,113 @@ public class TrayIconWrapper
 	 */
 	public void setPopupMenu(PopupMenu popup)
 	{
-		peer.setPopupMenu(popup);
+		synchronized (popupMenuLock)
+		{
+			setLazyPopupMenu(null);
+			
+			// never batched, as the peer may reject the menu
+			update(TrayIconState.POPUP_MENU, popup, false);
+		}
 	}
 	
 	/**
-	 * Returns the popup menu associated with this <code>TrayIcon</code>.
+	 * Returns the popup menu associated with this <code>TrayIcon</code>. If a
+	 * popup menu supplier is set and the menu is stale, it is built first.
 	 * 
 	 * @return the popup menu or <code>null</code> if none exists
 	 * @see #setPopupMenu(PopupMenu)
+	 * @see #setPopupMenuSupplier(Supplier)
 	 */
 	public PopupMenu getPopupMenu()
 	{
-		return peer.getPopupMenu();
+		LazyPopupMenu lazy = lazyPopupMenu;
+		if (lazy != null)
+			return lazy.get();
+		
+		return state.get().popupMenu;
+	}
+	
+	/**
+	 * <p>
+	 * Sets a supplier which builds the popup menu only when it is needed. The
+	 * menu is built when a mouse button is pressed over the tray icon, before
+	 * the platform shows the popup, or when {@link #getPopupMenu()} is
+	 * called. It is then kept, and shown again on later clicks, until
+	 * {@link #invalidatePopupMenu()} is called. Menus whose contents change
+	 * often are therefore built only when a user is about to see them.
+	 * </p>
+	 * 
+	 * <p>
+	 * Clicks build the menu on the AWT event dispatch thread. The supplier may
+	 * return the same menu each time, updated in place, but as explained in
+	 * {@link #setPopupMenu(PopupMenu)} a menu must not be shared with another
+	 * tray icon. Setting a menu directly with
+	 * {@link #setPopupMenu(PopupMenu)} removes the supplier.
+	 * </p>
+	 * 
+	 * @param supplier
+	 *            popup menu supplier, or <code>null</code> to remove it; the
+	 *            current menu is left in place
+	 * @see #invalidatePopupMenu()
+	 */
+	public void setPopupMenuSupplier(Supplier<? extends PopupMenu> supplier)
+	{
+		synchronized (popupMenuLock)
+		{
+			setLazyPopupMenu((supplier == null) ? null : new LazyPopupMenu(this, supplier));
+		}
+	}
+	
+	/**
+	 * Returns the popup menu supplier.
+	 * 
+	 * @return popup menu supplier, or <code>null</code> if none is set
+	 * @see #setPopupMenuSupplier(Supplier)
+	 */
+	public Supplier<? extends PopupMenu> getPopupMenuSupplier()
+	{
+		LazyPopupMenu lazy = lazyPopupMenu;
+		return (lazy == null) ? null : lazy.getSupplier();
+	}
+	
+	/**
+	 * Marks the menu built by the popup menu supplier as stale, so that it is
+	 * built again before it is next shown. This is cheap, and may be called
+	 * whenever the data behind the menu changes. Does nothing if no supplier
+	 * is set.
+	 * 
+	 * @see #setPopupMenuSupplier(Supplier)
+	 */
+	public void invalidatePopupMenu()
+	{
+		LazyPopupMenu lazy = lazyPopupMenu;
+		if (lazy != null)
+			lazy.invalidate();
+	}
+	
+	private void setLazyPopupMenu(LazyPopupMenu lazy)
+	{
+		LazyPopupMenu previous = lazyPopupMenu;
+		if (previous != null)
+			peer.removeMouseListener(previous);
+		
+		lazyPopupMenu = lazy;
+		
+		if (lazy != null)
+			peer.addMouseListener(lazy);
+	}
+	
+	/**
+	 * Installs a menu built by a popup menu supplier, unless the supplier has
+	 * since been replaced.
+	 */
+	void installPopupMenu(LazyPopupMenu lazy, PopupMenu popup)
+	{
+		synchronized (popupMenuLock)
+		{
+			if (lazyPopupMenu == lazy)
+				update(TrayIconState.POPUP_MENU, popup, false);
+		}
 	}
 	
 	/**
@@ -355,7 +564,7 @@ public class TrayIconWrapper
 	 */
 	public void setToolTip(String tooltip)
 	{
-		peer.setToolTip(tooltip);
+		update(TrayIconState.TOOL_TIP, tooltip, true);
 	}
 
 	/**
@@ -366,7 +575,7 @@ public class TrayIconWrapper
 	 */
 	public String getToolTip()
 	{
-		return peer.getToolTip();
+		return state.get().toolTip;
 	}
 	
 	/**
@@ -394,7 +603,7 @@ public class TrayIconWrapper
 	 */
 	public void setImageAutoSize(boolean autosize)
 	{
-		peer.setImageAutoSize(autosize);
+		update(TrayIconState.IMAGE_AUTO_SIZE, Boolean.valueOf(autosize), true);
 	}
 	
 	/**
@@ -406,7 +615,7 @@ public class TrayIconWrapper
 	 */
 	public boolean isImageAutoSize()
 	{
-		return peer.isImageAutoSize();
+		return state.get().imageAutoSize;
 	}
 	
 	/**
@@ -428,6 +637,14 @@ public class TrayIconWrapper
 	 * </p>
 	 * 
 	 * <p>
+	 * If a {@link #setListenerDispatcher(ListenerDispatcher) listener
+	 * dispatcher} is set, the listener is called on the dispatcher's threads
+	 * rather than the event dispatch thread, and events which arrive while the
+	 * dispatcher's queue is full are silently dropped, and only counted by
+	 * {@link ListenerDispatcher#getDroppedCount()}.
+	 * </p>
+	 * 
+	 * <p>
 	 * Refer to <a
 	 * href="http://java.sun.com/javase/6/docs/api/java/awt/doc-files/AWTThreadIssues.html#ListenersThreads">AWT
 	 * Threading Issues</a> for details on AWT's threading model.
@@ -442,7 +659,7 @@ public class TrayIconWrapper
 	 */
 	public void addMouseListener(MouseListener listener)
 	{
-		peer.addMouseListener(listener);
+		peer.addMouseListener(addProxy(mouseProxies, listener));
 	}
 	
 	/**
@@ -467,7 +684,7 @@ public class TrayIconWrapper
 	 */
 	public void removeMouseListener(MouseListener listener)
 	{
-		peer.removeMouseListener(listener);
+		peer.removeMouseListener(removeProxy(mouseProxies, listener));
 	}
 	
 	/**
@@ -480,7 +697,7 @@ public class TrayIconWrapper
 	 */
 	public MouseListener[] getMouseListeners()
 	{
-		return peer.getMouseListeners();
+		return unwrapListeners(peer.getMouseListeners());
 	}
 	
 	/**
@@ -502,6 +719,14 @@ public class TrayIconWrapper
 	 * </p>
 	 * 
 	 * <p>
+	 * If a {@link #setListenerDispatcher(ListenerDispatcher) listener
+	 * dispatcher} is set, the listener is called on the dispatcher's threads
+	 * rather than the event dispatch thread, and events which arrive while the
+	 * dispatcher's queue is full are silently dropped, and only counted by
+	 * {@link ListenerDispatcher#getDroppedCount()}.
+	 * </p>
+	 * 
+	 * <p>
 	 * Refer to <a
 	 * href="http://java.sun.com/javase/6/docs/api/java/awt/doc-files/AWTThreadIssues.html#ListenersThreads">AWT
 	 * Threading Issues</a> for details on AWT's threading model.
@@ -516,7 +741,65 @@ public class TrayIconWrapper
 	 */
 	public void addMouseMotionListener(MouseMotionListener listener)
 	{
-		peer.addMouseMotionListener(listener);
+		peer.addMouseMotionListener(addProxy(mouseMotionProxies, listener));
+	}
+	
+	/**
+	 * <p>
+	 * Adds the specified mouse listener to receive coalesced mouse-motion
+	 * events from this <code>TrayIcon</code>. At most one event is delivered
+	 * per <code>interval</code>: events arriving within the interval replace
+	 * one another, and only the latest position is delivered.
+	 * </p>
+	 * 
+	 * <p>
+	 * A listener may be registered with a single interval only; registering
+	 * it again changes the interval. It is removed with
+	 * {@link #removeMouseMotionListener(MouseMotionListener)} as usual.
+	 * </p>
+	 * 
+	 * <p>
+	 * With a {@link #setListenerDispatcher(ListenerDispatcher) listener
+	 * dispatcher}, coalesced events are delivered through the dispatcher, and
+	 * are silently dropped, and only counted, if its queue is full.
+	 * </p>
+	 * 
+	 * @param listener
+	 *            the mouse listener
+	 * @param interval
+	 *            minimum time between delivered events
+	 * @param unit
+	 *            unit of <code>interval</code>
+	 * @return the coalescer, which reports how many events were delivered and
+	 *         dropped, or <code>null</code> if <code>listener</code> is
+	 *         <code>null</code>
+	 * @throws IllegalArgumentException
+	 *             if <code>interval</code> is not positive
+	 * @see #addMouseMotionListener(MouseMotionListener)
+	 * @see MouseMotionCoalescer
+	 */
+	public MouseMotionCoalescer addMouseMotionListener(
+			MouseMotionListener listener, long interval, TimeUnit unit)
+	{
+		if (listener == null)
+			return null;
+		
+		MouseMotionCoalescer coalescer;
+		synchronized (mouseMotionProxies)
+		{
+			coalescer = mouseMotionCoalescers.get(listener);
+			if (coalescer != null)
+			{
+				coalescer.setInterval(interval, unit);
+				return coalescer;
+			}
+			
+			coalescer = new MouseMotionCoalescer(addProxy(mouseMotionProxies, listener), interval, unit);
+			mouseMotionCoalescers.put(listener, coalescer);
+		}
+		
+		peer.addMouseMotionListener(coalescer);
+		return coalescer;
 	}
 	
 	/**
@@ -540,7 +823,22 @@ public class TrayIconWrapper
 	 */
 	public void removeMouseMotionListener(MouseMotionListener listener)
 	{
-		peer.removeMouseMotionListener(listener);
+		MouseMotionCoalescer coalescer;
+		synchronized (mouseMotionProxies)
+		{
+			coalescer = mouseMotionCoalescers.remove(listener);
+			if (coalescer != null)
+				removeProxy(mouseMotionProxies, listener);
+		}
+		
+		if (coalescer != null)
+		{
+			coalescer.close();
+			peer.removeMouseMotionListener(coalescer);
+			return;
+		}
+		
+		peer.removeMouseMotionListener(removeProxy(mouseMotionProxies, listener));
 	}
 	
 	/**
@@ -556,7 +854,7 @@ public class TrayIconWrapper
 	 */
 	public MouseMotionListener[] getMouseMotionListeners()
 	{
-		return peer.getMouseMotionListeners();
+		return unwrapListeners(peer.getMouseMotionListeners());
 	}
 	
 	/**
@@ -568,7 +866,7 @@ public class TrayIconWrapper
 	 */
 	public String getActionCommand()
 	{
-		return peer.getActionCommand();
+		return state.get().actionCommand;
 	}
 	
 	/**
@@ -583,7 +881,7 @@ public class TrayIconWrapper
 	 */
 	public void setActionCommand(String command)
 	{
-		peer.setActionCommand(command);
+		update(TrayIconState.ACTION_COMMAND, command, true);
 	}
 	
 	/**
@@ -599,6 +897,14 @@ public class TrayIconWrapper
 	 * </p>
 	 * 
 	 * <p>
+	 * If a {@link #setListenerDispatcher(ListenerDispatcher) listener
+	 * dispatcher} is set, the listener is called on the dispatcher's threads
+	 * rather than the event dispatch thread, and events which arrive while the
+	 * dispatcher's queue is full are silently dropped, and only counted by
+	 * {@link ListenerDispatcher#getDroppedCount()}.
+	 * </p>
+	 * 
+	 * <p>
 	 * Refer to <a
 	 * href="http://java.sun.com/javase/6/docs/api/java/awt/doc-files/AWTThreadIssues.html#ListenersThreads">AWT
 	 * Threading Issues</a> for details on AWT's threading model.
@@ -613,7 +919,7 @@ public class TrayIconWrapper
 	 */
 	public void addActionListener(ActionListener listener)
 	{
-		peer.addActionListener(listener);
+		peer.addActionListener(addProxy(actionProxies, listener));
 	}
 	
 	/**
@@ -637,7 +943,7 @@ public class TrayIconWrapper
 	 */
 	public void removeActionListener(ActionListener listener)
 	{
-		peer.removeActionListener(listener);
+		peer.removeActionListener(removeProxy(actionProxies, listener));
 	}
 	
 	/**
@@ -653,7 +959,7 @@ public class TrayIconWrapper
 	 */
 	public ActionListener[] getActionListeners()
 	{
-		return peer.getActionListeners();
+		return unwrapListeners(peer.getActionListeners());
 	}
 	
 	/**
@@ -675,6 +981,11 @@ public class TrayIconWrapper
 	 * <strong>Note:</strong> Some platforms may not support showing a message.
 	 * </p>
 	 * 
+	 * <p>
+	 * If a notification queue is enabled, the message is queued rather than
+	 * displayed immediately.
+	 * </p>
+	 * 
 	 * @param caption
 	 *            the caption displayed above the text, usually in bold; may be
 	 *            <code>null</code>
@@ -686,26 +997,844 @@ public class TrayIconWrapper
 	 * @throws NullPointerException
 	 *             if both <code>caption</code> and <code>text</code> are
 	 *             <code>null</code>
+	 * @see #enableNotificationQueue(int, int, long, TimeUnit)
 	 */
 	public void displayMessage(String caption, String text, MessageType messageType)
 	{
+		NotificationQueue queue = notificationQueue;
+		if (queue != null)
+		{
+			queue.offer(caption, text, messageType);
+			return;
+		}
+		
 		peer.displayMessage(caption, text, messageType);
 	}
 	
 	/**
-	 * Returns the size, in pixels, of the space that the tray icon occupies in
-	 * the system tray. For the tray icon that is not yet added to the system
-	 * tray, the returned size is equal to the result of the
-	 * {@link SystemTrayWrapper#getTrayIconSize()}.
+	 * <p>
+	 * Routes {@link #displayMessage(String, String, MessageType)} through a
+	 * bounded, rate-limited queue. Identical messages are collapsed, more
+	 * important messages are displayed first, and messages which do not fit
+	 * in the queue are summarized in a single digest message.
+	 * </p>
 	 * 
-	 * @return the size of the tray icon, in pixels
-	 * @see #setImageAutoSize(boolean)
-	 * @see Image
-	 * @see #getSize()
+	 * <p>
+	 * Any previously enabled queue is discarded, along with its pending
+	 * messages.
+	 * </p>
+	 * 
+	 * @param capacity
+	 *            maximum number of queued messages
+	 * @param maxMessages
+	 *            maximum number of messages to display per period
+	 * @param period
+	 *            length of the rate-limiting period
+	 * @param unit
+	 *            unit of <code>period</code>
+	 * @return the new queue, which exposes queue depth and drop counts
+	 * @throws IllegalArgumentException
+	 *             if any of <code>capacity</code>, <code>maxMessages</code>
+	 *             or <code>period</code> is not positive
+	 * @see NotificationQueue
+	 * @see #disableNotificationQueue()
 	 */
-	public Dimension getSize()
+	public NotificationQueue enableNotificationQueue(int capacity, int maxMessages, long period, TimeUnit unit)
 	{
-		// TODO stub
-		return null;
-	}	
+		NotificationQueue queue = new NotificationQueue(new NotificationQueue.Sink()
+		{
+			public void displayMessage(String caption, String text, MessageType messageType)
+			{
+				peer.displayMessage(caption, text, messageType);
+			}
+		}, capacity, maxMessages, period, unit);
+		
+		NotificationQueue previous;
+		synchronized (this)
+		{
+			previous = notificationQueue;
+			notificationQueue = queue;
+		}
+		
+		if (previous != null)
+			previous.close();
+		
+		return queue;
+	}
+	
+	/**
+	 * Stops queueing messages; messages are displayed immediately again.
+	 * Pending messages are discarded.
+	 * 
+	 * @see #enableNotificationQueue(int, int, long, TimeUnit)
+	 */
+	public void disableNotificationQueue()
+	{
+		NotificationQueue previous;
+		synchronized (this)
+		{
+			previous = notificationQueue;
+			notificationQueue = null;
+		}
+		
+		if (previous != null)
+			previous.close();
+	}
+	
+	/**
+	 * Returns the notification queue, if one is enabled.
+	 * 
+	 * @return notification queue, or <code>null</code> if messages are
+	 *         displayed immediately
+	 * @see #enableNotificationQueue(int, int, long, TimeUnit)
+	 */
+	public NotificationQueue getNotificationQueue()
+	{
+		return notificationQueue;
+	}
+	
+	/**
+	 * <p>
+	 * Sets the dispatcher used to deliver events to this icon's action, mouse
+	 * and mouse motion listeners. By default, listeners are called directly on
+	 * the AWT event dispatch thread; with a dispatcher, they are called on the
+	 * dispatcher's threads instead, so that slow listeners cannot block the
+	 * user interface.
+	 * </p>
+	 * 
+	 * <p>
+	 * The dispatcher applies to all listeners, whether they were added before
+	 * or after it was set. Each listener receives its events in order, on its
+	 * own queue, so one slow listener does not delay the others. A dispatcher
+	 * may be shared by several icons, in which case their listeners share its
+	 * capacity; once that many events are waiting, further events are dropped
+	 * and only counted by {@link ListenerDispatcher#getDroppedCount()}.
+	 * </p>
+	 * 
+	 * @param dispatcher
+	 *            dispatcher to use, or <code>null</code> to call listeners on
+	 *            the event dispatch thread
+	 * @see ListenerDispatcher
+	 */
+	public void setListenerDispatcher(ListenerDispatcher dispatcher)
+	{
+		listenerDispatcher = dispatcher;
+	}
+	
+	/**
+	 * Returns the dispatcher used to deliver events to listeners.
+	 * 
+	 * @return listener dispatcher, or <code>null</code> if listeners are
+	 *         called on the event dispatch thread
+	 * @see #setListenerDispatcher(ListenerDispatcher)
+	 */
+	public ListenerDispatcher getListenerDispatcher()
+	{
+		return listenerDispatcher;
+	}
+	
+	/**
+	 * <p>
+	 * Starts playing an animation on this icon, replacing any animation
+	 * already playing. Frames are applied by the shared
+	 * {@link AnimationEngine}, which pauses the animation while this icon is
+	 * not in the system tray.
+	 * </p>
+	 * 
+	 * <p>
+	 * A non-looping animation stops on its last frame; otherwise the animation
+	 * plays until {@link #stopAnimation()} is called. Setting the image
+	 * directly while an animation is playing does not stop it.
+	 * </p>
+	 * 
+	 * @param animation
+	 *            animation to play
+	 * @see Animation
+	 * @see #stopAnimation()
+	 */
+	public void animate(Animation animation)
+	{
+		if (animation == null)
+			throw new NullPointerException("animation");
+		
+		AnimationEngine.getInstance().start(this, animation);
+	}
+	
+	/**
+	 * Stops the animation playing on this icon, if any, leaving the current
+	 * frame in place.
+	 * 
+	 * @see #animate(Animation)
+	 */
+	public void stopAnimation()
+	{
+		AnimationEngine.getInstance().stop(this);
+	}
+	
+	/**
+	 * Returns the animation playing on this icon.
+	 * 
+	 * @return animation which is playing or paused, or <code>null</code> if
+	 *         none is
+	 * @see #animate(Animation)
+	 */
+	public Animation getAnimation()
+	{
+		return AnimationEngine.getInstance().getAnimation(this);
+	}
+	
+	/**
+	 * <p>
+	 * Sets the progress ring used by {@link #setProgress(double)}. If progress
+	 * has already been set, the matching frame of the new ring is shown
+	 * immediately.
+	 * </p>
+	 * 
+	 * <p>
+	 * When the ring redraws its frames, for example because the tray icon size
+	 * has changed, the current progress is shown again using the new frames.
+	 * </p>
+	 * 
+	 * @param ring
+	 *            progress ring, or <code>null</code> to stop showing progress;
+	 *            the current image is left in place
+	 * @see ProgressRing
+	 */
+	public void setProgressRing(ProgressRing ring)
+	{
+		ProgressRing previous;
+		synchronized (this)
+		{
+			previous = progressRing;
+			progressRing = ring;
+		}
+		
+		if (previous == ring)
+			return;
+		
+		if (previous != null)
+			previous.removePropertyChangeListener(ProgressRing.FRAMES_PROPERTY, progressFramesListener);
+		
+		if (ring != null)
+		{
+			ring.addPropertyChangeListener(ProgressRing.FRAMES_PROPERTY, progressFramesListener);
+			showProgress();
+		}
+	}
+	
+	/**
+	 * Returns the progress ring used by {@link #setProgress(double)}.
+	 * 
+	 * @return progress ring, or <code>null</code> if none is set
+	 */
+	public ProgressRing getProgressRing()
+	{
+		return progressRing;
+	}
+	
+	/**
+	 * <p>
+	 * Shows progress by setting the image to the matching frame of the
+	 * progress ring. The frame is only looked up, never drawn, and setting
+	 * progress which falls in the same bucket as before does nothing. With
+	 * batched updates enabled, rapid progress changes are coalesced.
+	 * </p>
+	 * 
+	 * @param progress
+	 *            progress from <code>0.0</code> to <code>1.0</code>
+	 * @throws IllegalStateException
+	 *             if no progress ring is set
+	 * @see #setProgressRing(ProgressRing)
+	 * @see #enableBatchedUpdates(long, TimeUnit)
+	 */
+	public void setProgress(double progress)
+	{
+		if (progressRing == null)
+			throw new IllegalStateException("No progress ring set");
+		
+		this.progress = progress;
+		showProgress();
+	}
+	
+	/**
+	 * Returns the progress last set.
+	 * 
+	 * @return progress, or <code>NaN</code> if it has not been set
+	 */
+	public double getProgress()
+	{
+		return progress;
+	}
+	
+	private void showProgress()
+	{
+		ProgressRing ring = progressRing;
+		double p = progress;
+		
+		if (ring != null && !Double.isNaN(p))
+			update(TrayIconState.IMAGE, ring.getFrame(p), true);
+	}
+	
+	/**
+	 * <p>
+	 * Sets the icon set used by {@link #setIconState(String)}. If a state has
+	 * already been set and the new set contains it, its icon is shown
+	 * immediately.
+	 * </p>
+	 * 
+	 * @param icons
+	 *            icon set, or <code>null</code> to clear it; the current image
+	 *            is left in place
+	 * @see IconSet
+	 */
+	public void setIconSet(IconSet icons)
+	{
+		iconSet = icons;
+		
+		String name = iconState;
+		if (icons != null && name != null && icons.contains(name))
+			update(TrayIconState.IMAGE, icons.getIcon(name), true);
+	}
+	
+	/**
+	 * Returns the icon set used by {@link #setIconState(String)}.
+	 * 
+	 * @return icon set, or <code>null</code> if none is set
+	 */
+	public IconSet getIconSet()
+	{
+		return iconSet;
+	}
+	
+	/**
+	 * <p>
+	 * Shows the named icon from the icon set. Icons which have been shown
+	 * recently are already decoded, so switching between a few states is
+	 * cheap; setting the state already shown does nothing.
+	 * </p>
+	 * 
+	 * @param name
+	 *            icon name
+	 * @throws IllegalStateException
+	 *             if no icon set is set
+	 * @throws IllegalArgumentException
+	 *             if the icon set does not contain the named icon
+	 * @see #setIconSet(IconSet)
+	 */
+	public void setIconState(String name)
+	{
+		IconSet icons = iconSet;
+		if (icons == null)
+			throw new IllegalStateException("No icon set");
+		
+		update(TrayIconState.IMAGE, icons.getIcon(name), true);
+		iconState = name;
+	}
+	
+	/**
+	 * <p>
+	 * Sets a renderer which produces this icon's image for the current tray
+	 * icon size. The image is rendered on a background thread as soon as the
+	 * renderer is set, and again whenever the tray icon size changes; the
+	 * current image is shown until the first rendering is ready.
+	 * </p>
+	 * 
+	 * <p>
+	 * Size changes often arrive in bursts, for example while monitors are
+	 * attached or rearranged. Rendering waits until the size has settled,
+	 * then the renderers of all icons run in parallel on background threads,
+	 * and the new images are applied together on the event dispatch thread,
+	 * immediately even if batched updates are enabled. Images for a size
+	 * which has already been superseded are discarded.
+	 * </p>
+	 * 
+	 * @param renderer
+	 *            icon renderer, or <code>null</code> to stop re-rendering; the
+	 *            current image is left in place
+	 * @throws UnsupportedOperationException
+	 *             if the system tray isn't supported by the current platform
+	 * @see SystemTrayWrapper#getTrayIconSize()
+	 */
+	public void setIconRenderer(IconRenderer renderer)
+	{
+		IconResizer resizer = SystemTrayWrapper.getSystemTray().getIconResizer();
+		
+		iconRenderer = renderer;
+		
+		if (renderer == null)
+		{
+			resizer.unregister(this);
+			return;
+		}
+		
+		resizer.register(this);
+	}
+	
+	/**
+	 * Sets the image and applies it to the native tray icon at once, even if
+	 * batched updates are enabled; other pending updates stay pending.
+	 */
+	void applyImage(Image image)
+	{
+		update(TrayIconState.IMAGE, image, false);
+	}
+	
+	/**
+	 * Returns the renderer which produces this icon's image.
+	 * 
+	 * @return icon renderer, or <code>null</code> if none is set
+	 * @see #setIconRenderer(IconRenderer)
+	 */
+	public IconRenderer getIconRenderer()
+	{
+		return iconRenderer;
+	}
+	
+	/**
+	 * Returns the icon state last set.
+	 * 
+	 * @return icon name, or <code>null</code> if it has not been set
+	 */
+	public String getIconState()
+	{
+		return iconState;
+	}
+	
+	/**
+	 * Returns the size, in pixels, of the space that the tray icon occupies in
+	 * the system tray. For the tray icon that is not yet added to the system
+	 * tray, the returned size is equal to the result of the
+	 * {@link SystemTrayWrapper#getTrayIconSize()}.
+	 * 
+	 * @return the size of the tray icon, in pixels
+	 * @see #setImageAutoSize(boolean)
+	 * @see Image
+	 * @see #getSize()
+	 */
+	public Dimension getSize()
+	{
+		// TODO stub
+		return null;
+	}	
+	
+	/**
+	 * Sets the image for this <code>TrayIcon</code> without blocking the
+	 * calling thread. The work is performed by the tray executor (by default,
+	 * the AWT event dispatch thread).
+	 * 
+	 * @param image
+	 *            the non-null <code>Image</code> to be used
+	 * @return a future which completes once the image has been set
+	 * @see #setImage(Image)
+	 * @see SystemTrayWrapper#setAsyncExecutor(Executor)
+	 */
+	public CompletableFuture<Void> setImageAsync(final Image image)
+	{
+		return TrayExecutor.run(() -> setImage(image));
+	}
+	
+	/**
+	 * Sets the popup menu for this <code>TrayIcon</code> without blocking the
+	 * calling thread. The work is performed by the tray executor (by default,
+	 * the AWT event dispatch thread).
+	 * 
+	 * @param popup
+	 *            a <code>PopupMenu</code> or <code>null</code> to remove
+	 *            any popup menu
+	 * @return a future which completes once the popup menu has been set, or
+	 *         completes exceptionally if it was rejected
+	 * @see #setPopupMenu(PopupMenu)
+	 * @see SystemTrayWrapper#setAsyncExecutor(Executor)
+	 */
+	public CompletableFuture<Void> setPopupMenuAsync(final PopupMenu popup)
+	{
+		return TrayExecutor.run(() -> setPopupMenu(popup));
+	}
+	
+	/**
+	 * Sets the tooltip string for this <code>TrayIcon</code> without blocking
+	 * the calling thread. The work is performed by the tray executor (by
+	 * default, the AWT event dispatch thread).
+	 * 
+	 * @param tooltip
+	 *            the string for the tooltip; if the value is <code>null</code>
+	 *            no tooltip is shown
+	 * @return a future which completes once the tooltip has been set
+	 * @see #setToolTip(String)
+	 * @see SystemTrayWrapper#setAsyncExecutor(Executor)
+	 */
+	public CompletableFuture<Void> setToolTipAsync(final String tooltip)
+	{
+		return TrayExecutor.run(() -> setToolTip(tooltip));
+	}
+	
+	/**
+	 * Sets the auto-size property without blocking the calling thread. The
+	 * work is performed by the tray executor (by default, the AWT event
+	 * dispatch thread).
+	 * 
+	 * @param autosize
+	 *            <code>true</code> to auto-size the image, <code>false</code>
+	 *            otherwise
+	 * @return a future which completes once the property has been set
+	 * @see #setImageAutoSize(boolean)
+	 * @see SystemTrayWrapper#setAsyncExecutor(Executor)
+	 */
+	public CompletableFuture<Void> setImageAutoSizeAsync(final boolean autosize)
+	{
+		return TrayExecutor.run(() -> setImageAutoSize(autosize));
+	}
+	
+	/**
+	 * Sets the command name for the action event fired by this tray icon
+	 * without blocking the calling thread. The work is performed by the tray
+	 * executor (by default, the AWT event dispatch thread).
+	 * 
+	 * @param command
+	 *            a string used by the tray icon's action command.
+	 * @return a future which completes once the command has been set
+	 * @see #setActionCommand(String)
+	 * @see SystemTrayWrapper#setAsyncExecutor(Executor)
+	 */
+	public CompletableFuture<Void> setActionCommandAsync(final String command)
+	{
+		return TrayExecutor.run(() -> setActionCommand(command));
+	}
+	
+	/**
+	 * Displays a popup message near the tray icon without blocking the calling
+	 * thread. The work is performed by the tray executor (by default, the AWT
+	 * event dispatch thread).
+	 * 
+	 * @param caption
+	 *            the caption displayed above the text, usually in bold; may be
+	 *            <code>null</code>
+	 * @param text
+	 *            the text displayed for the particular message; may be
+	 *            <code>null</code>
+	 * @param messageType
+	 *            an enum indicating the message type
+	 * @return a future which completes once the message has been handed to the
+	 *         native tray (or queued, if a notification queue is enabled)
+	 * @see #displayMessage(String, String, MessageType)
+	 * @see SystemTrayWrapper#setAsyncExecutor(Executor)
+	 */
+	public CompletableFuture<Void> displayMessageAsync(
+			final String caption, final String text, final MessageType messageType)
+	{
+		return TrayExecutor.run(() -> displayMessage(caption, text, messageType));
+	}
+	
+	/**
+	 * <p>
+	 * Enables batched updates. While enabled, {@link #setImage(Image)},
+	 * {@link #setToolTip(String)}, {@link #setImageAutoSize(boolean)} and
+	 * {@link #setActionCommand(String)} only record the latest value for each
+	 * property, without locking. At most once per frame interval, the final
+	 * values are applied to the native tray icon on the event dispatch thread;
+	 * intermediate values are discarded.
+	 * </p>
+	 * 
+	 * <p>
+	 * Getters return pending values, so the effect of a setter is visible to
+	 * the application immediately. Calling this method while batching is
+	 * already enabled changes the frame interval.
+	 * </p>
+	 * 
+	 * @param frameInterval
+	 *            minimum time between flushes
+	 * @param unit
+	 *            unit of <code>frameInterval</code>
+	 * @throws IllegalArgumentException
+	 *             if <code>frameInterval</code> is not positive
+	 * @see #disableBatchedUpdates()
+	 * @see #getCoalescedUpdateCount()
+	 * @see #getAppliedUpdateCount()
+	 */
+	public void enableBatchedUpdates(long frameInterval, TimeUnit unit)
+	{
+		synchronized (this)
+		{
+			if (batcher == null)
+			{
+				batcher = new UpdateBatcher(new UpdateBatcher.Flusher()
+				{
+					public int flush()
+					{
+						return flushState();
+					}
+				});
+			}
+		}
+		
+		batcher.enable(frameInterval, unit);
+	}
+	
+	/**
+	 * Disables batched updates. Any pending updates are applied immediately, on
+	 * the calling thread, and subsequent updates are applied directly.
+	 * 
+	 * @see #enableBatchedUpdates(long, TimeUnit)
+	 */
+	public void disableBatchedUpdates()
+	{
+		UpdateBatcher b = batcher;
+		if (b != null)
+			b.disable();
+	}
+	
+	/**
+	 * Returns whether batched updates are enabled.
+	 * 
+	 * @return <code>true</code> if batched updates are enabled,
+	 *         <code>false</code> otherwise
+	 * @see #enableBatchedUpdates(long, TimeUnit)
+	 */
+	public boolean isBatchedUpdates()
+	{
+		UpdateBatcher b = batcher;
+		return b != null && b.isEnabled();
+	}
+	
+	/**
+	 * Returns the number of batched updates which were superseded by a later
+	 * update to the same property before being applied.
+	 * 
+	 * @return number of coalesced updates
+	 * @see #enableBatchedUpdates(long, TimeUnit)
+	 */
+	public long getCoalescedUpdateCount()
+	{
+		UpdateBatcher b = batcher;
+		return (b == null) ? 0L : b.getCoalescedCount();
+	}
+	
+	/**
+	 * Returns the number of batched updates which were applied to the native
+	 * tray icon.
+	 * 
+	 * @return number of applied updates
+	 * @see #enableBatchedUpdates(long, TimeUnit)
+	 */
+	public long getAppliedUpdateCount()
+	{
+		UpdateBatcher b = batcher;
+		return (b == null) ? 0L : b.getAppliedCount();
+	}
+	
+	/**
+	 * Returns the proxy to register with the peer for an application listener.
+	 * Adding the same listener again reuses its proxy, so that duplicate
+	 * registrations behave as they do for AWT listeners.
+	 */
+	@SuppressWarnings("unchecked")
+	private <L extends EventListener> L addProxy(Map<EventListener, DispatchingListener> proxies, L listener)
+	{
+		if (listener == null)
+			return null;
+		
+		synchronized (proxies)
+		{
+			DispatchingListener proxy = proxies.get(listener);
+			if (proxy == null)
+			{
+				proxy = new DispatchingListener(this, listener);
+				proxies.put(listener, proxy);
+			}
+			
+			proxy.registrations++;
+			return (L) proxy;
+		}
+	}
+	
+	/**
+	 * Returns the proxy to unregister from the peer for an application
+	 * listener, or the listener itself if it has no proxy.
+	 */
+	@SuppressWarnings("unchecked")
+	private <L extends EventListener> L removeProxy(Map<EventListener, DispatchingListener> proxies, L listener)
+	{
+		if (listener == null)
+			return null;
+		
+		synchronized (proxies)
+		{
+			DispatchingListener proxy = proxies.get(listener);
+			if (proxy == null)
+				return listener;
+			
+			if (--proxy.registrations == 0)
+				proxies.remove(listener);
+			
+			return (L) proxy;
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static <L extends EventListener> L[] unwrapListeners(L[] listeners)
+	{
+		int count = 0;
+		
+		for (int i = 0; i < listeners.length; i++)
+		{
+			L listener = listeners[i];
+			
+			// internal, so never reported
+			if (listener instanceof LazyPopupMenu)
+				continue;
+			
+			if (listener instanceof MouseMotionCoalescer)
+				listener = (L) ((MouseMotionCoalescer) listener).getTarget();
+			
+			if (listener instanceof DispatchingListener)
+				listener = (L) ((DispatchingListener) listener).getTarget();
+			
+			listeners[count++] = listener;
+		}
+		
+		return (count == listeners.length) ? listeners : Arrays.copyOf(listeners, count);
+	}
+	
+	/**
+	 * Updates a property. The shadow state is always updated first; setting a
+	 * property to its current value does nothing at all. In batched mode the
+	 * peer is updated by the next flush, otherwise immediately.
+	 */
+	private void update(int property, Object value, boolean batchable)
+	{
+		UpdateBatcher b = batcher;
+		
+		if (batchable && b != null && b.isEnabled())
+		{
+			if (updateState(property, value))
+				b.updateRecorded();
+			
+			return;
+		}
+		
+		synchronized (updateLock)
+		{
+			TrayIconState current = state.get();
+			if (current.with(property, value) == current)
+				return;
+			
+			// apply natively first, so a rejected value never reaches the shadow
+			apply(property, value);
+			nativeState = nativeState.with(property, value);
+			updateState(property, value);
+		}
+	}
+	
+	private boolean updateState(int property, Object value)
+	{
+		while (true)
+		{
+			TrayIconState current = state.get();
+			TrayIconState updated = current.with(property, value);
+			
+			if (updated == current)
+				return false;
+			
+			if (state.compareAndSet(current, updated))
+				return true;
+		}
+	}
+	
+	/**
+	 * Applies every property whose shadow value differs from the native one.
+	 * 
+	 * @return number of properties applied
+	 */
+	private int flushState()
+	{
+		synchronized (updateLock)
+		{
+			TrayIconState desired = state.get();
+			TrayIconState actual = nativeState;
+			int applied = 0;
+			
+			if (desired.image != actual.image)
+			{
+				apply(TrayIconState.IMAGE, desired.image);
+				applied++;
+			}
+			
+			if (actual.with(TrayIconState.TOOL_TIP, desired.toolTip) != actual)
+			{
+				apply(TrayIconState.TOOL_TIP, desired.toolTip);
+				applied++;
+			}
+			
+			if (desired.imageAutoSize != actual.imageAutoSize)
+			{
+				apply(TrayIconState.IMAGE_AUTO_SIZE, Boolean.valueOf(desired.imageAutoSize));
+				applied++;
+			}
+			
+			if (actual.with(TrayIconState.ACTION_COMMAND, desired.actionCommand) != actual)
+			{
+				apply(TrayIconState.ACTION_COMMAND, desired.actionCommand);
+				applied++;
+			}
+			
+			nativeState = desired;
+			return applied;
+		}
+	}
+	
+	private void apply(int property, Object value)
+	{
+		switch (property)
+		{
+			case TrayIconState.IMAGE:
+				peer.setImage((Image) value);
+				break;
+			case TrayIconState.TOOL_TIP:
+				peer.setToolTip((String) value);
+				break;
+			case TrayIconState.POPUP_MENU:
+				peer.setPopupMenu((PopupMenu) value);
+				break;
+			case TrayIconState.IMAGE_AUTO_SIZE:
+				peer.setImageAutoSize(((Boolean) value).booleanValue());
+				break;
+			case TrayIconState.ACTION_COMMAND:
+				peer.setActionCommand((String) value);
+				break;
+		}
+	}
+	
+	/**
+	 * Holder for the tray icon peer factory. The factory is obtained from the
+	 * active peer provider exactly once, the first time a tray icon is created.
+	 * If that fails, the cause is retained and reported by every subsequent
+	 * attempt.
+	 */
+	private static final class PeerFactoryHolder
+	{
+		static final TrayIconPeerFactory FACTORY;
+		static final Throwable FAILURE;
+		
+		static
+		{
+			TrayIconPeerFactory factory = null;
+			Throwable failure = null;
+			
+			try
+			{
+				factory = PeerProviders.getProvider().getTrayIconPeerFactory();
+			}
+			catch (RuntimeException e)
+			{
+				failure = e;
+			}
+			catch (LinkageError e)
+			{
+				failure = e;
+			}
+			
+			FACTORY = factory;
+			FAILURE = failure;
+		}
+	}
 }
@@ -0,0 +1,170 @@
+package org.randomcoder.systray;
+
+import java.awt.*;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.randomcoder.systray.peer.*;
+
+/**
+ * Initializes the tray in the background. While initialization is in
+ * progress, new tray icons are given {@link DeferredTrayIconPeer}s, which are
+ * resolved to real peers, replaying any calls made on them, once the peer
+ * factory is available.
+ * 
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+final class TrayInitializer
+{
+	private static final Object lock = new Object();
+
+	// guarded by lock
+	private static CompletableFuture<SystemTrayWrapper> future;
+	private static final List<DeferredTrayIconPeer> pending = new ArrayList<DeferredTrayIconPeer>();
+	private static volatile boolean inProgress;
+
+	private TrayInitializer()
+	{
+	}
+
+	/**
+	 * Starts background initialization, unless it has already been started.
+	 * 
+	 * @return future completed with the system tray once initialization has
+	 *         finished
+	 */
+	static CompletableFuture<SystemTrayWrapper> start()
+	{
+		synchronized (lock)
+		{
+			if (future == null)
+			{
+				future = new CompletableFuture<SystemTrayWrapper>();
+				inProgress = true;
+
+				Thread thread = new Thread(new Runnable()
+				{
+					public void run()
+					{
+						initialize();
+					}
+				}, "TrayInitializer");
+
+				thread.setDaemon(true);
+				thread.start();
+			}
+
+			return future;
+		}
+	}
+
+	/**
+	 * Creates a deferred tray icon peer if initialization is still in
+	 * progress.
+	 * 
+	 * @return deferred peer, or <code>null</code> if the real peer should be
+	 *         created immediately
+	 */
+	static DeferredTrayIconPeer defer(Image image, String tooltip, PopupMenu popup)
+	{
+		if (inProgress)
+		{
+			synchronized (lock)
+			{
+				if (inProgress)
+				{
+					DeferredTrayIconPeer peer = new DeferredTrayIconPeer(image, tooltip, popup);
+					pending.add(peer);
+					return peer;
+				}
+			}
+		}
+
+		return null;
+	}
+
+	private static void initialize()
+	{
+		CompletableFuture<SystemTrayWrapper> result;
+		synchronized (lock)
+		{
+			result = future;
+		}
+
+		try
+		{
+			if (!SystemTrayWrapper.isSupported())
+				throw new UnsupportedOperationException("System tray not supported");
+
+			SystemTrayWrapper tray = SystemTrayWrapper.getSystemTray();
+			TrayIconPeerFactory factory = TrayIconWrapper.getPeerFactory();
+
+			// icons may still be created while earlier ones are resolved
+			while (true)
+			{
+				List<DeferredTrayIconPeer> peers;
+				synchronized (lock)
+				{
+					if (pending.isEmpty())
+					{
+						inProgress = false;
+						break;
+					}
+
+					peers = new ArrayList<DeferredTrayIconPeer>(pending);
+					pending.clear();
+				}
+
+				for (DeferredTrayIconPeer peer : peers)
+				{
+					try
+					{
+						peer.resolve(factory);
+					}
+					catch (RuntimeException e)
+					{
+						// left deferred; the error is reported on next use
+					}
+				}
+			}
+
+			result.complete(tray);
+		}
+		catch (RuntimeException | LinkageError e)
+		{
+			// deferred peers keep recording, and fail once they are needed
+			synchronized (lock)
+			{
+				inProgress = false;
+				pending.clear();
+			}
+
+			result.completeExceptionally(e);
+		}
+	}
+}
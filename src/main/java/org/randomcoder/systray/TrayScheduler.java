@@ -0,0 +1,77 @@
+package org.randomcoder.systray;
+
+import java.util.concurrent.*;
+
+/**
+ * Shared scheduler for deferred tray work. A single daemon thread is created
+ * on first use; scheduled tasks should be short, and hand anything which
+ * touches AWT over to the event dispatch thread.
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+final class TrayScheduler
+{
+	private TrayScheduler()
+	{
+	}
+
+	/**
+	 * Schedules a task to run once after the given delay.
+	 *
+	 * @param task
+	 *            task to run
+	 * @param delay
+	 *            delay before running
+	 * @param unit
+	 *            unit of <code>delay</code>
+	 * @return future representing the pending task
+	 */
+	static ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit)
+	{
+		return Holder.EXECUTOR.schedule(task, delay, unit);
+	}
+
+	private static final class Holder
+	{
+		static final ScheduledExecutorService EXECUTOR = createExecutor();
+
+		private static ScheduledExecutorService createExecutor()
+		{
+			ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory()
+			{
+				public Thread newThread(Runnable r)
+				{
+					Thread thread = new Thread(r, "TrayScheduler");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+			executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+			return executor;
+		}
+	}
+}
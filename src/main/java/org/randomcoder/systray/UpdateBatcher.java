@@ -0,0 +1,145 @@
+package org.randomcoder.systray;
+
+import java.awt.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Schedules coalesced updates for a single tray icon. Setters record their
+ * values in the icon's shadow state without locking and then call
+ * {@link #updateRecorded()}; at most one flush per frame interval is
+ * scheduled, which applies only the final state on the event dispatch thread.
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+final class UpdateBatcher
+{
+	private final Runnable flushTask = new Runnable()
+	{
+		public void run()
+		{
+			flush();
+		}
+	};
+
+	private final Runnable dispatchTask = new Runnable()
+	{
+		public void run()
+		{
+			EventQueue.invokeLater(flushTask);
+		}
+	};
+
+	private final Flusher flusher;
+
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+
+	private final AtomicLong recordedCount = new AtomicLong();
+
+	private final AtomicLong coalescedCount = new AtomicLong();
+
+	private final AtomicLong appliedCount = new AtomicLong();
+
+	private volatile long frameIntervalNanos;
+
+	private volatile boolean enabled;
+
+	UpdateBatcher(Flusher flusher)
+	{
+		this.flusher = flusher;
+	}
+
+	boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	void enable(long frameInterval, TimeUnit unit)
+	{
+		if (frameInterval <= 0)
+			throw new IllegalArgumentException("Frame interval must be positive");
+
+		frameIntervalNanos = unit.toNanos(frameInterval);
+		enabled = true;
+	}
+
+	/**
+	 * Disables batching. Any pending updates are applied immediately, on the
+	 * calling thread.
+	 */
+	void disable()
+	{
+		enabled = false;
+		flush();
+	}
+
+	/**
+	 * Notes that a property has been changed in the shadow state, scheduling a
+	 * flush if none is pending.
+	 */
+	void updateRecorded()
+	{
+		recordedCount.incrementAndGet();
+
+		if (scheduled.compareAndSet(false, true))
+			TrayScheduler.schedule(dispatchTask, frameIntervalNanos, TimeUnit.NANOSECONDS);
+	}
+
+	long getCoalescedCount()
+	{
+		return coalescedCount.get();
+	}
+
+	long getAppliedCount()
+	{
+		return appliedCount.get();
+	}
+
+	void flush()
+	{
+		// clear first, so that updates racing with this flush schedule another
+		scheduled.set(false);
+
+		long recorded = recordedCount.getAndSet(0L);
+		int applied = flusher.flush();
+
+		appliedCount.addAndGet(applied);
+		coalescedCount.addAndGet(Math.max(0L, recorded - applied));
+	}
+
+	/**
+	 * Applies the difference between the shadow state and the native state.
+	 */
+	static interface Flusher
+	{
+		/**
+		 * Applies pending changes to the native tray icon.
+		 *
+		 * @return number of properties applied
+		 */
+		int flush();
+	}
+}
@@ -0,0 +1,409 @@
+package org.randomcoder.systray.image;
+
+import java.awt.*;
+import java.awt.geom.RoundRectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+import org.randomcoder.systray.*;
+
+/**
+ * <p>
+ * Draws a count or short label as a badge in the lower right corner of a base
+ * icon, for display by the single <code>TrayIconWrapper</code> the renderer
+ * was created for.
+ * </p>
+ * 
+ * <p>
+ * All rasterization happens when the renderer is created: the base icon is
+ * scaled once to the tray icon size, and every supported character is drawn
+ * once into a glyph atlas; each badge width is drawn the first time it is
+ * needed. Updating the badge then only copies and blends pixels into one of
+ * three reused output images, so it does not allocate. The result is passed
+ * to {@link TrayIconWrapper#setImage(Image)} only if its pixels differ from
+ * the icon's current image.
+ * </p>
+ * 
+ * <p>
+ * The image drawn into is never the icon's current image nor the one it
+ * displays, which may still be an older image while a batched update is
+ * pending; so every update hands the icon a different image object, and
+ * batched updates may be enabled on the icon.
+ * </p>
+ * 
+ * <p>
+ * Labels may contain digits, upper-case letters, and the characters
+ * <code>+ - ! ?</code>, up to {@link #MAX_LABEL_LENGTH} characters. Counts
+ * above 99 are shown as <code>99+</code>.
+ * </p>
+ * 
+ * <p>
+ * This class is not thread-safe; call it from one thread at a time,
+ * typically the event dispatch thread.
+ * </p>
+ * 
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+public final class BadgeRenderer
+{
+	/**
+	 * Maximum number of characters in a badge label.
+	 */
+	public static final int MAX_LABEL_LENGTH = 4;
+
+	private static final String GLYPHS = "0123456789+-!?ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+	private static final String[] COUNT_LABELS = new String[100];
+
+	static
+	{
+		for (int i = 0; i < COUNT_LABELS.length; i++)
+			COUNT_LABELS[i] = Integer.toString(i);
+	}
+
+	private static final String OVERFLOW_LABEL = "99+";
+
+	private static final int BUFFERS = 3;
+
+	private final TrayIconWrapper icon;
+
+	private final int width;
+	private final int height;
+
+	private final int[] base;
+
+	private final int background;
+	private final int foreground;
+
+	// glyph atlas: one alpha cell per character in GLYPHS, cropped to the
+	// rows which any glyph touches
+	private final byte[][] glyphs;
+	private final int[] glyphWidths;
+	private final int glyphHeight;
+
+	// badge backgrounds, indexed by width and rasterized on first use
+	private final byte[][] badges;
+	private final int badgeHeight;
+
+	private final BufferedImage[] images = new BufferedImage[BUFFERS];
+	private final int[][] buffers = new int[BUFFERS][];
+
+	/**
+	 * Creates a renderer for an icon of the current tray icon size, with a
+	 * white label on a red badge.
+	 * 
+	 * @param icon
+	 *            tray icon to update
+	 * @param baseIcon
+	 *            fully loaded base icon image
+	 * @see SystemTrayWrapper#getTrayIconSize()
+	 */
+	public BadgeRenderer(TrayIconWrapper icon, Image baseIcon)
+	{
+		this(icon, baseIcon, SystemTrayWrapper.getSystemTray().getTrayIconSize(), new Color(0xd32f2f), Color.WHITE);
+	}
+
+	/**
+	 * Creates a renderer.
+	 * 
+	 * @param icon
+	 *            tray icon to update
+	 * @param baseIcon
+	 *            fully loaded base icon image
+	 * @param size
+	 *            size of the rendered images
+	 * @param background
+	 *            badge colour
+	 * @param foreground
+	 *            label colour
+	 */
+	public BadgeRenderer(TrayIconWrapper icon, Image baseIcon, Dimension size, Color background, Color foreground)
+	{
+		if (icon == null)
+			throw new NullPointerException("icon");
+
+		this.icon = icon;
+		this.width = Math.max(1, size.width);
+		this.height = Math.max(1, size.height);
+		this.base = Pixels.rasterize(baseIcon, new Dimension(width, height));
+		this.background = background.getRGB();
+		this.foreground = foreground.getRGB();
+
+		for (int i = 0; i < BUFFERS; i++)
+		{
+			images[i] = Pixels.createImage(new Dimension(width, height));
+			buffers[i] = Pixels.getData(images[i]);
+		}
+
+		// labels take a little under half the icon height
+		Font font = new Font(Font.SANS_SERIF, Font.BOLD, Math.max(6, (height * 7) / 16));
+		BufferedImage scratch = Pixels.createImage(new Dimension(1, 1));
+		Graphics2D g = scratch.createGraphics();
+		FontMetrics metrics;
+		try
+		{
+			metrics = g.getFontMetrics(font);
+		}
+		finally
+		{
+			g.dispose();
+		}
+
+		int cellHeight = Math.max(1, metrics.getAscent() + metrics.getDescent());
+
+		glyphs = new byte[GLYPHS.length()][];
+		glyphWidths = new int[GLYPHS.length()];
+		for (int i = 0; i < glyphs.length; i++)
+		{
+			char c = GLYPHS.charAt(i);
+			glyphWidths[i] = Math.max(1, metrics.charWidth(c));
+			glyphs[i] = rasterizeGlyph(c, glyphWidths[i], cellHeight, metrics.getAscent(), font);
+		}
+
+		// crop every glyph to the rows which contain ink in any glyph
+		int top = cellHeight;
+		int bottom = 0;
+		for (int i = 0; i < glyphs.length; i++)
+		{
+			for (int y = 0; y < cellHeight; y++)
+			{
+				for (int x = 0; x < glyphWidths[i]; x++)
+				{
+					if (glyphs[i][y * glyphWidths[i] + x] != 0)
+					{
+						top = Math.min(top, y);
+						bottom = Math.max(bottom, y + 1);
+					}
+				}
+			}
+		}
+
+		if (top >= bottom)
+		{
+			top = 0;
+			bottom = cellHeight;
+		}
+
+		glyphHeight = bottom - top;
+		for (int i = 0; i < glyphs.length; i++)
+		{
+			glyphs[i] = Arrays.copyOfRange(
+				glyphs[i], top * glyphWidths[i], bottom * glyphWidths[i]);
+		}
+
+		badgeHeight = Math.min(height, glyphHeight + 4);
+		badges = new byte[width + 1][];
+	}
+
+	/**
+	 * Shows a count badge on the icon. Counts of zero or less show the base
+	 * icon alone.
+	 * 
+	 * @param count
+	 *            count to show
+	 * @return <code>true</code> if the icon's image was changed
+	 */
+	public boolean update(int count)
+	{
+		String label;
+		if (count <= 0)
+			label = null;
+		else if (count < COUNT_LABELS.length)
+			label = COUNT_LABELS[count];
+		else
+			label = OVERFLOW_LABEL;
+
+		return update(label);
+	}
+
+	/**
+	 * Shows a label badge on the icon. A <code>null</code> or empty label
+	 * shows the base icon alone.
+	 * 
+	 * @param label
+	 *            label to show
+	 * @return <code>true</code> if the icon's image was changed
+	 * @throws IllegalArgumentException
+	 *             if the label is too long or contains unsupported characters
+	 */
+	public boolean update(String label)
+	{
+		int current = indexOf(icon.getImage());
+		int displayed = indexOf(icon.getDisplayedImage());
+
+		int back = 0;
+		while (back == current || back == displayed)
+			back++;
+
+		render(label, buffers[back]);
+
+		if (current >= 0 && Arrays.equals(buffers[back], buffers[current]))
+			return false;
+
+		icon.setImage(images[back]);
+		return true;
+	}
+
+	/**
+	 * Returns the icon updated by this renderer.
+	 * 
+	 * @return tray icon
+	 */
+	public TrayIconWrapper getIcon()
+	{
+		return icon;
+	}
+
+	/**
+	 * Returns the size of rendered images.
+	 * 
+	 * @return image size
+	 */
+	public Dimension getSize()
+	{
+		return new Dimension(width, height);
+	}
+
+	private int indexOf(Image image)
+	{
+		for (int i = 0; i < BUFFERS; i++)
+		{
+			if (images[i] == image)
+				return i;
+		}
+
+		return -1;
+	}
+
+	private void render(String label, int[] target)
+	{
+		int length = (label == null) ? 0 : label.length();
+		if (length > MAX_LABEL_LENGTH)
+			throw new IllegalArgumentException("Label too long: " + label);
+
+		// validate before touching the target
+		for (int i = 0; i < length; i++)
+		{
+			if (GLYPHS.indexOf(label.charAt(i)) < 0)
+				throw new IllegalArgumentException("Unsupported character in label: " + label);
+		}
+
+		System.arraycopy(base, 0, target, 0, base.length);
+
+		if (length == 0)
+			return;
+
+		int textWidth = 0;
+		for (int i = 0; i < length; i++)
+			textWidth += glyphWidths[GLYPHS.indexOf(label.charAt(i))];
+
+		// labels wider than the icon are clipped on the left
+		int bw = Math.min(width, Math.max(badgeHeight, textWidth + 4));
+		int bx = width - bw;
+		int by = height - badgeHeight;
+
+		draw(target, getBadge(bw), bw, badgeHeight, bx, by, background);
+
+		int tx = bx + (bw - textWidth + 1) / 2;
+		int ty = by + (badgeHeight - glyphHeight + 1) / 2;
+
+		for (int i = 0; i < length; i++)
+		{
+			int glyph = GLYPHS.indexOf(label.charAt(i));
+			draw(target, glyphs[glyph], glyphWidths[glyph], glyphHeight, tx, ty, foreground);
+			tx += glyphWidths[glyph];
+		}
+	}
+
+	private byte[] getBadge(int w)
+	{
+		byte[] badge = badges[w];
+
+		if (badge == null)
+			badges[w] = badge = rasterizeBadge(w, badgeHeight);
+
+		return badge;
+	}
+
+	private void draw(int[] target, byte[] mask, int mw, int mh, int x0, int y0, int rgb)
+	{
+		for (int y = 0; y < mh; y++)
+		{
+			int ty = y0 + y;
+			if (ty < 0 || ty >= height)
+				continue;
+
+			for (int x = 0; x < mw; x++)
+			{
+				int tx = x0 + x;
+				if (tx < 0 || tx >= width)
+					continue;
+
+				int a = mask[y * mw + x] & 0xff;
+				if (a != 0)
+					target[ty * width + tx] = Pixels.blend(target[ty * width + tx], rgb, a);
+			}
+		}
+	}
+
+	private static byte[] rasterizeGlyph(char c, int w, int h, int ascent, Font font)
+	{
+		BufferedImage cell = Pixels.createImage(new Dimension(w, h));
+		Graphics2D g = cell.createGraphics();
+		try
+		{
+			g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+			g.setFont(font);
+			g.setColor(Color.WHITE);
+			g.drawString(String.valueOf(c), 0, ascent);
+		}
+		finally
+		{
+			g.dispose();
+		}
+
+		return Pixels.alpha(cell);
+	}
+
+	private static byte[] rasterizeBadge(int w, int h)
+	{
+		BufferedImage badge = Pixels.createImage(new Dimension(w, h));
+		Graphics2D g = badge.createGraphics();
+		try
+		{
+			g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+			g.setColor(Color.WHITE);
+			g.fill(new RoundRectangle2D.Float(0, 0, w, h, h, h));
+		}
+		finally
+		{
+			g.dispose();
+		}
+
+		return Pixels.alpha(badge);
+	}
+}
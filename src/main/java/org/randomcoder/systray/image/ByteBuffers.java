@@ -0,0 +1,242 @@
+package org.randomcoder.systray.image;
+
+import java.io.*;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+import javax.imageio.stream.*;
+
+/**
+ * Reads encoded images into byte buffers. Large files are memory-mapped, so
+ * that their contents stay in the page cache rather than on the heap.
+ * 
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+final class ByteBuffers
+{
+	/**
+	 * Files at least this large are memory-mapped rather than read.
+	 */
+	private static final long MAP_THRESHOLD = 64 * 1024;
+
+	private ByteBuffers()
+	{
+	}
+
+	/**
+	 * Reads a file, mapping it if it is large.
+	 * 
+	 * @param path
+	 *            file to read
+	 * @return buffer holding the file contents
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	static ByteBuffer read(Path path) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE)
+				throw new IOException("File too large: " + path);
+
+			if (size >= MAP_THRESHOLD)
+				return channel.map(FileChannel.MapMode.READ_ONLY, 0L, size);
+
+			ByteBuffer buffer = ByteBuffer.allocate((int) size);
+			while (buffer.hasRemaining() && channel.read(buffer) >= 0)
+			{
+				// keep reading
+			}
+
+			buffer.flip();
+			return buffer;
+		}
+	}
+
+	/**
+	 * Reads a URL. File URLs are read as files; anything else is read as a
+	 * stream.
+	 * 
+	 * @param url
+	 *            URL to read
+	 * @return buffer holding the contents
+	 * @throws IOException
+	 *             if the URL cannot be read
+	 */
+	static ByteBuffer read(URL url) throws IOException
+	{
+		if ("file".equals(url.getProtocol()))
+		{
+			try
+			{
+				return read(Paths.get(url.toURI()));
+			}
+			catch (Exception e)
+			{
+				// fall back to a stream
+			}
+		}
+
+		try (InputStream in = url.openStream())
+		{
+			ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+			byte[] chunk = new byte[8192];
+
+			int n;
+			while ((n = in.read(chunk)) >= 0)
+				out.write(chunk, 0, n);
+
+			return ByteBuffer.wrap(out.toByteArray());
+		}
+	}
+
+	/**
+	 * Returns a stream over the remaining bytes of a buffer. The buffer's
+	 * position is advanced as the stream is read.
+	 * 
+	 * @param buffer
+	 *            buffer to read
+	 * @return input stream
+	 */
+	static InputStream newInputStream(ByteBuffer buffer)
+	{
+		return new ByteBufferInputStream(buffer);
+	}
+
+	/**
+	 * Returns an image input stream over the remaining bytes of a buffer.
+	 * Bytes are read from the buffer as they are needed, and never copied
+	 * into a cache, so a mapped buffer stays off the heap; seeking is free.
+	 * The buffer's position is not changed.
+	 * 
+	 * @param buffer
+	 *            buffer to read
+	 * @return image input stream
+	 */
+	static ImageInputStream newImageInputStream(ByteBuffer buffer)
+	{
+		return new ByteBufferImageInputStream(buffer);
+	}
+
+	private static final class ByteBufferInputStream extends InputStream
+	{
+		private final ByteBuffer buffer;
+
+		ByteBufferInputStream(ByteBuffer buffer)
+		{
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read()
+		{
+			return buffer.hasRemaining() ? (buffer.get() & 0xff) : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len)
+		{
+			if (len == 0)
+				return 0;
+
+			if (!buffer.hasRemaining())
+				return -1;
+
+			int n = Math.min(len, buffer.remaining());
+			buffer.get(b, off, n);
+			return n;
+		}
+
+		@Override
+		public long skip(long n)
+		{
+			int skipped = (int) Math.max(0L, Math.min(n, buffer.remaining()));
+			buffer.position(buffer.position() + skipped);
+			return skipped;
+		}
+
+		@Override
+		public int available()
+		{
+			return buffer.remaining();
+		}
+	}
+
+	private static final class ByteBufferImageInputStream extends ImageInputStreamImpl
+	{
+		private final ByteBuffer buffer;
+
+		ByteBufferImageInputStream(ByteBuffer buffer)
+		{
+			this.buffer = buffer.slice();
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			checkClosed();
+			bitOffset = 0;
+
+			if (streamPos >= buffer.limit())
+				return -1;
+
+			return buffer.get((int) streamPos++) & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException
+		{
+			checkClosed();
+
+			if (off < 0 || len < 0 || len > b.length - off)
+				throw new IndexOutOfBoundsException();
+
+			bitOffset = 0;
+
+			if (len == 0)
+				return 0;
+
+			if (streamPos >= buffer.limit())
+				return -1;
+
+			int n = (int) Math.min(len, buffer.limit() - streamPos);
+			buffer.position((int) streamPos);
+			buffer.get(b, off, n);
+			streamPos += n;
+			return n;
+		}
+
+		@Override
+		public long length()
+		{
+			return buffer.limit();
+		}
+	}
+}
@@ -0,0 +1,502 @@
+package org.randomcoder.systray.image;
+
+import java.awt.image.*;
+import java.io.*;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import javax.imageio.ImageIO;
+
+/**
+ * <p>
+ * Loads icon images in the background. Reads use NIO, with large files
+ * memory-mapped; decoding is done by <code>ImageIO</code> on a pool of
+ * daemon threads, so that several icons decode in parallel and nothing blocks
+ * the calling thread. Decoded images are <code>BufferedImage</code>s, which
+ * are complete as soon as they are returned, so the tray never paints a
+ * partially loaded image.
+ * </p>
+ * 
+ * <p>
+ * Decoded images are cached by the SHA-256 hash of their encoded content, so
+ * the same icon loaded from several places, or several times, is decoded
+ * once and shared. Concurrent loads of the same content wait for a single
+ * decode. Images returned by the loader are shared and must not be modified.
+ * The cache is bounded by a memory budget, counted from the size of each
+ * decoded image's pixel data; once it is exceeded, the least recently loaded
+ * images are evicted, and are decoded again if they are loaded later.
+ * </p>
+ * 
+ * <p>
+ * A loaded image can be handed straight to an icon:
+ * </p>
+ * 
+ * <pre>
+ * IconLoader.getInstance().load(url).thenCompose(icon::setImageAsync);
+ * </pre>
+ * 
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+public final class IconLoader
+{
+	/**
+	 * Default memory budget for cached images, in bytes.
+	 */
+	public static final long DEFAULT_MAX_BYTES = 16L * 1024L * 1024L;
+
+	private final Executor executor;
+
+	private final long maxBytes;
+
+	// access-ordered, so iteration starts at the least recently used entry;
+	// guarded by itself
+	private final LinkedHashMap<ContentKey, Entry> cache =
+		new LinkedHashMap<ContentKey, Entry>(16, 0.75f, true);
+
+	// bytes of completed entries; guarded by cache
+	private long bytes;
+
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong decodeCount = new AtomicLong();
+	private final AtomicLong evictionCount = new AtomicLong();
+
+	/**
+	 * Creates a loader using a shared pool of daemon threads and the default
+	 * memory budget.
+	 */
+	public IconLoader()
+	{
+		this(DefaultExecutorHolder.EXECUTOR);
+	}
+
+	/**
+	 * Creates a loader with the default memory budget.
+	 * 
+	 * @param executor
+	 *            executor used to read and decode images
+	 */
+	public IconLoader(Executor executor)
+	{
+		this(executor, DEFAULT_MAX_BYTES);
+	}
+
+	/**
+	 * Creates a loader.
+	 * 
+	 * @param executor
+	 *            executor used to read and decode images
+	 * @param maxBytes
+	 *            memory budget for cached images, in bytes
+	 * @throws IllegalArgumentException
+	 *             if <code>maxBytes</code> is not positive
+	 */
+	public IconLoader(Executor executor, long maxBytes)
+	{
+		if (executor == null)
+			throw new NullPointerException("executor");
+
+		if (maxBytes <= 0L)
+			throw new IllegalArgumentException("Memory budget must be positive");
+
+		this.executor = executor;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Returns the shared loader, which uses the default pool.
+	 * 
+	 * @return shared loader
+	 */
+	public static IconLoader getInstance()
+	{
+		return SharedHolder.INSTANCE;
+	}
+
+	/**
+	 * Loads an image from a file.
+	 * 
+	 * @param path
+	 *            file to load
+	 * @return future completed with the decoded image, or exceptionally with
+	 *         an <code>IOException</code> if the file cannot be read or
+	 *         decoded
+	 */
+	public CompletableFuture<BufferedImage> load(final Path path)
+	{
+		return read(() -> ByteBuffers.read(path));
+	}
+
+	/**
+	 * Loads an image from a URL, such as a class path resource.
+	 * 
+	 * @param url
+	 *            URL to load
+	 * @return future completed with the decoded image, or exceptionally with
+	 *         an <code>IOException</code> if the URL cannot be read or
+	 *         decoded
+	 */
+	public CompletableFuture<BufferedImage> load(final URL url)
+	{
+		return read(() -> ByteBuffers.read(url));
+	}
+
+	/**
+	 * Loads an image from encoded bytes. The array is not copied, and must not
+	 * be modified until the returned future completes.
+	 * 
+	 * @param data
+	 *            encoded image
+	 * @return future completed with the decoded image, or exceptionally with
+	 *         an <code>IOException</code> if the data cannot be decoded
+	 */
+	public CompletableFuture<BufferedImage> load(byte[] data)
+	{
+		final ByteBuffer buffer = ByteBuffer.wrap(data);
+		return read(() -> buffer);
+	}
+
+	/**
+	 * Loads an image from a file, waiting for the result.
+	 * 
+	 * @param path
+	 *            file to load
+	 * @return decoded image
+	 * @throws IOException
+	 *             if the file cannot be read or decoded
+	 */
+	public BufferedImage loadNow(Path path) throws IOException
+	{
+		return await(load(path));
+	}
+
+	/**
+	 * Loads an image from a URL, waiting for the result.
+	 * 
+	 * @param url
+	 *            URL to load
+	 * @return decoded image
+	 * @throws IOException
+	 *             if the URL cannot be read or decoded
+	 */
+	public BufferedImage loadNow(URL url) throws IOException
+	{
+		return await(load(url));
+	}
+
+	/**
+	 * Returns the number of loads satisfied by an already cached or in-flight
+	 * decode.
+	 * 
+	 * @return cache hits
+	 */
+	public long getHitCount()
+	{
+		return hitCount.get();
+	}
+
+	/**
+	 * Returns the number of images decoded.
+	 * 
+	 * @return decode count
+	 */
+	public long getDecodeCount()
+	{
+		return decodeCount.get();
+	}
+
+	/**
+	 * Returns the number of images evicted to stay within the memory budget.
+	 * 
+	 * @return eviction count
+	 */
+	public long getEvictionCount()
+	{
+		return evictionCount.get();
+	}
+
+	/**
+	 * Returns the number of cached images, including those still being
+	 * decoded.
+	 * 
+	 * @return cache size
+	 */
+	public int getCachedCount()
+	{
+		synchronized (cache)
+		{
+			return cache.size();
+		}
+	}
+
+	/**
+	 * Returns the memory used by cached images.
+	 * 
+	 * @return cached bytes
+	 */
+	public long getCachedBytes()
+	{
+		synchronized (cache)
+		{
+			return bytes;
+		}
+	}
+
+	/**
+	 * Returns the memory budget for cached images.
+	 * 
+	 * @return maximum cached bytes
+	 */
+	public long getMaxBytes()
+	{
+		return maxBytes;
+	}
+
+	/**
+	 * Removes all cached images. Loads in progress are unaffected.
+	 */
+	public void clear()
+	{
+		synchronized (cache)
+		{
+			cache.clear();
+			bytes = 0L;
+		}
+	}
+
+	private CompletableFuture<BufferedImage> read(final Reader reader)
+	{
+		CompletableFuture<ByteBuffer> content = CompletableFuture.supplyAsync(() ->
+		{
+			try
+			{
+				return reader.read();
+			}
+			catch (IOException e)
+			{
+				throw new CompletionException(e);
+			}
+		}, executor);
+
+		// always decode on the executor, even if the read has already
+		// completed, so that the caller never hashes or decodes
+		return content.thenComposeAsync(this::decode, executor);
+	}
+
+	private CompletableFuture<BufferedImage> decode(final ByteBuffer data)
+	{
+		ContentKey key = new ContentKey(hash(data.duplicate()));
+		Entry entry = new Entry();
+
+		synchronized (cache)
+		{
+			Entry existing = cache.get(key);
+			if (existing != null)
+			{
+				hitCount.incrementAndGet();
+				return existing.future;
+			}
+
+			cache.put(key, entry);
+		}
+
+		try
+		{
+			decodeCount.incrementAndGet();
+
+			BufferedImage image = ImageIO.read(ByteBuffers.newImageInputStream(data.duplicate()));
+			if (image == null)
+				throw new IOException("Unsupported image format");
+
+			synchronized (cache)
+			{
+				// the entry may have been cleared while decoding
+				if (cache.get(key) == entry)
+				{
+					entry.bytes = sizeOf(image);
+					bytes += entry.bytes;
+					evict();
+				}
+			}
+
+			entry.future.complete(image);
+		}
+		catch (IOException | RuntimeException e)
+		{
+			// do not cache failures
+			synchronized (cache)
+			{
+				if (cache.get(key) == entry)
+					cache.remove(key);
+			}
+
+			entry.future.completeExceptionally(e);
+		}
+
+		return entry.future;
+	}
+
+	/**
+	 * Evicts the least recently used decoded images until the cache is
+	 * within its budget. Loads still decoding are never evicted, and the most
+	 * recently used entry is always kept, even if it alone exceeds the budget.
+	 */
+	private void evict()
+	{
+		Iterator<Entry> it = cache.values().iterator();
+		int remaining = cache.size();
+
+		while (bytes > maxBytes && remaining-- > 1)
+		{
+			Entry entry = it.next();
+			if (entry.bytes == 0L)
+				continue;
+
+			it.remove();
+			bytes -= entry.bytes;
+			evictionCount.incrementAndGet();
+		}
+	}
+
+	private static long sizeOf(BufferedImage image)
+	{
+		DataBuffer data = image.getRaster().getDataBuffer();
+		return Math.max(1L, (long) data.getSize() * data.getNumBanks() * DataBuffer.getDataTypeSize(data.getDataType()) / 8L);
+	}
+
+	private static byte[] hash(ByteBuffer data)
+	{
+		try
+		{
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(data);
+			return digest.digest();
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			// every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static BufferedImage await(CompletableFuture<BufferedImage> future) throws IOException
+	{
+		try
+		{
+			return future.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while loading image");
+		}
+		catch (ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if (cause instanceof CompletionException && cause.getCause() != null)
+				cause = cause.getCause();
+
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+
+			throw new IOException(cause);
+		}
+	}
+
+	private static interface Reader
+	{
+		ByteBuffer read() throws IOException;
+	}
+
+	private static final class Entry
+	{
+		final CompletableFuture<BufferedImage> future = new CompletableFuture<BufferedImage>();
+
+		// zero until decoded; guarded by the cache
+		long bytes;
+	}
+
+	private static final class ContentKey
+	{
+		private final byte[] hash;
+		private final int hashCode;
+
+		ContentKey(byte[] hash)
+		{
+			this.hash = hash;
+			this.hashCode = Arrays.hashCode(hash);
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			return (o instanceof ContentKey) && Arrays.equals(hash, ((ContentKey) o).hash);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hashCode;
+		}
+	}
+
+	private static final class DefaultExecutorHolder
+	{
+		static final Executor EXECUTOR = createExecutor();
+
+		private static Executor createExecutor()
+		{
+			int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+			final AtomicInteger count = new AtomicInteger();
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(
+				threads, threads, 30L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				r ->
+				{
+					Thread thread = new Thread(r, "TrayIconLoader-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+
+			executor.allowCoreThreadTimeOut(true);
+			return executor;
+		}
+	}
+
+	private static final class SharedHolder
+	{
+		static final IconLoader INSTANCE = new IconLoader();
+	}
+}
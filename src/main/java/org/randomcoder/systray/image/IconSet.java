@@ -0,0 +1,435 @@
+package org.randomcoder.systray.image;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.lang.ref.SoftReference;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+import javax.imageio.*;
+import javax.imageio.stream.*;
+
+/**
+ * <p>
+ * A set of named icons sliced from a single sprite sheet. The encoded sheet
+ * is held in a buffer, memory-mapped when it is read from a large file, and
+ * each icon is decoded from its region of the sheet the first time it is
+ * requested. Decoders read the sheet straight from the buffer, without
+ * copying it, and only the region is kept; the rest of the sheet is never
+ * decoded onto the heap.
+ * </p>
+ * 
+ * <p>
+ * The most recently used icons are kept; older ones are held only by soft
+ * references, so the garbage collector may release them and they are
+ * decoded again if needed. Resident memory therefore follows the icons
+ * actually shown rather than the size of the set.
+ * </p>
+ * 
+ * <p>
+ * The index is a text file with one icon per line, giving its name and its
+ * region of the sheet in pixels:
+ * </p>
+ * 
+ * <pre>
+ * # name    x   y   width height
+ * idle      0   0   16    16
+ * busy      16  0   16    16
+ * </pre>
+ * 
+ * <p>
+ * Blank lines and lines starting with <code>#</code> are ignored. Icons
+ * returned by a set are shared and must not be modified.
+ * </p>
+ * 
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+public final class IconSet
+{
+	/**
+	 * Default number of recently used icons kept.
+	 */
+	public static final int DEFAULT_MAX_RESIDENT = 8;
+
+	private final ByteBuffer sheet;
+
+	private final Map<String, Rectangle> regions;
+
+	private final int maxResident;
+
+	// access-ordered, so iteration starts at the least recently used icon
+	private final LinkedHashMap<String, BufferedImage> resident =
+		new LinkedHashMap<String, BufferedImage>(16, 0.75f, true);
+
+	private final Map<String, SoftReference<BufferedImage>> released =
+		new HashMap<String, SoftReference<BufferedImage>>();
+
+	private long decodeCount;
+
+	private IconSet(ByteBuffer sheet, Map<String, Rectangle> regions, int maxResident)
+	{
+		this.sheet = sheet;
+		this.regions = regions;
+		this.maxResident = maxResident;
+	}
+
+	/**
+	 * Opens an icon set, keeping up to {@link #DEFAULT_MAX_RESIDENT} icons.
+	 * 
+	 * @param sheet
+	 *            sprite sheet image file
+	 * @param index
+	 *            index file
+	 * @return icon set
+	 * @throws IOException
+	 *             if either file cannot be read, or the index is invalid
+	 */
+	public static IconSet open(Path sheet, Path index) throws IOException
+	{
+		return open(sheet, index, DEFAULT_MAX_RESIDENT);
+	}
+
+	/**
+	 * Opens an icon set.
+	 * 
+	 * @param sheet
+	 *            sprite sheet image file
+	 * @param index
+	 *            index file
+	 * @param maxResident
+	 *            number of recently used icons kept
+	 * @return icon set
+	 * @throws IOException
+	 *             if either file cannot be read, or the index is invalid
+	 */
+	public static IconSet open(Path sheet, Path index, int maxResident) throws IOException
+	{
+		return open(ByteBuffers.read(sheet), ByteBuffers.read(index), index.toString(), maxResident);
+	}
+
+	/**
+	 * Opens an icon set, such as one held in class path resources, keeping up
+	 * to {@link #DEFAULT_MAX_RESIDENT} icons.
+	 * 
+	 * @param sheet
+	 *            sprite sheet image
+	 * @param index
+	 *            index
+	 * @return icon set
+	 * @throws IOException
+	 *             if either URL cannot be read, or the index is invalid
+	 */
+	public static IconSet open(URL sheet, URL index) throws IOException
+	{
+		return open(sheet, index, DEFAULT_MAX_RESIDENT);
+	}
+
+	/**
+	 * Opens an icon set, such as one held in class path resources.
+	 * 
+	 * @param sheet
+	 *            sprite sheet image
+	 * @param index
+	 *            index
+	 * @param maxResident
+	 *            number of recently used icons kept
+	 * @return icon set
+	 * @throws IOException
+	 *             if either URL cannot be read, or the index is invalid
+	 */
+	public static IconSet open(URL sheet, URL index, int maxResident) throws IOException
+	{
+		return open(ByteBuffers.read(sheet), ByteBuffers.read(index), index.toString(), maxResident);
+	}
+
+	private static IconSet open(ByteBuffer sheet, ByteBuffer index, String indexName, int maxResident)
+			throws IOException
+	{
+		if (maxResident < 0)
+			throw new IllegalArgumentException("Resident count must not be negative");
+
+		Map<String, Rectangle> regions = parseIndex(index, indexName);
+
+		// check regions against the header only, without decoding any pixels
+		ImageReader reader = createReader(sheet.duplicate());
+		try
+		{
+			Rectangle bounds = new Rectangle(reader.getWidth(0), reader.getHeight(0));
+			for (Map.Entry<String, Rectangle> entry : regions.entrySet())
+			{
+				if (!bounds.contains(entry.getValue()))
+					throw new IOException(indexName + ": icon '" + entry.getKey() + "' lies outside the sheet");
+			}
+		}
+		finally
+		{
+			dispose(reader);
+		}
+
+		return new IconSet(sheet, Collections.unmodifiableMap(regions), maxResident);
+	}
+
+	/**
+	 * Returns the names of the icons in this set, in index order.
+	 * 
+	 * @return icon names
+	 */
+	public Set<String> getNames()
+	{
+		return regions.keySet();
+	}
+
+	/**
+	 * Determines whether this set contains an icon.
+	 * 
+	 * @param name
+	 *            icon name
+	 * @return <code>true</code> if the icon exists
+	 */
+	public boolean contains(String name)
+	{
+		return regions.containsKey(name);
+	}
+
+	/**
+	 * Returns the region of the sheet holding an icon.
+	 * 
+	 * @param name
+	 *            icon name
+	 * @return region, in pixels
+	 * @throws IllegalArgumentException
+	 *             if the icon does not exist
+	 */
+	public Rectangle getRegion(String name)
+	{
+		return new Rectangle(region(name));
+	}
+
+	/**
+	 * Returns an icon, decoding it from the sheet if it is not resident.
+	 * 
+	 * @param name
+	 *            icon name
+	 * @return icon image
+	 * @throws IllegalArgumentException
+	 *             if the icon does not exist
+	 * @throws IllegalStateException
+	 *             if the sheet can no longer be decoded
+	 */
+	public synchronized BufferedImage getIcon(String name)
+	{
+		Rectangle region = region(name);
+
+		BufferedImage image = resident.get(name);
+		if (image != null)
+			return image;
+
+		SoftReference<BufferedImage> ref = released.remove(name);
+		image = (ref == null) ? null : ref.get();
+
+		if (image == null)
+		{
+			try
+			{
+				image = decode(region);
+			}
+			catch (IOException e)
+			{
+				throw new IllegalStateException("Unable to decode icon '" + name + "'", e);
+			}
+		}
+
+		resident.put(name, image);
+		trim();
+		return image;
+	}
+
+	/**
+	 * Returns the number of icons currently kept.
+	 * 
+	 * @return resident icon count
+	 */
+	public synchronized int getResidentCount()
+	{
+		return resident.size();
+	}
+
+	/**
+	 * Returns the number of recently used icons kept.
+	 * 
+	 * @return maximum resident icon count
+	 */
+	public int getMaxResident()
+	{
+		return maxResident;
+	}
+
+	/**
+	 * Returns the number of icons decoded from the sheet.
+	 * 
+	 * @return decode count
+	 */
+	public synchronized long getDecodeCount()
+	{
+		return decodeCount;
+	}
+
+	/**
+	 * Releases all decoded icons. They are decoded again when next requested.
+	 */
+	public synchronized void release()
+	{
+		resident.clear();
+		released.clear();
+	}
+
+	private Rectangle region(String name)
+	{
+		Rectangle region = regions.get(name);
+		if (region == null)
+			throw new IllegalArgumentException("Unknown icon: " + name);
+
+		return region;
+	}
+
+	private void trim()
+	{
+		Iterator<Map.Entry<String, BufferedImage>> it = resident.entrySet().iterator();
+		while (resident.size() > maxResident && it.hasNext())
+		{
+			Map.Entry<String, BufferedImage> eldest = it.next();
+			released.put(eldest.getKey(), new SoftReference<BufferedImage>(eldest.getValue()));
+			it.remove();
+		}
+
+		// drop references the collector has already cleared
+		Iterator<SoftReference<BufferedImage>> refs = released.values().iterator();
+		while (refs.hasNext())
+		{
+			if (refs.next().get() == null)
+				refs.remove();
+		}
+	}
+
+	private BufferedImage decode(Rectangle region) throws IOException
+	{
+		ImageReader reader = createReader(sheet.duplicate());
+		try
+		{
+			ImageReadParam param = reader.getDefaultReadParam();
+			param.setSourceRegion(region);
+
+			BufferedImage image = reader.read(0, param);
+			decodeCount++;
+			return image;
+		}
+		finally
+		{
+			dispose(reader);
+		}
+	}
+
+	private static ImageReader createReader(ByteBuffer data) throws IOException
+	{
+		ImageInputStream in = ByteBuffers.newImageInputStream(data);
+
+		Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+		if (!readers.hasNext())
+		{
+			in.close();
+			throw new IOException("Unsupported sprite sheet format");
+		}
+
+		ImageReader reader = readers.next();
+		reader.setInput(in, true, true);
+		return reader;
+	}
+
+	private static void dispose(ImageReader reader)
+	{
+		try
+		{
+			Object input = reader.getInput();
+			if (input instanceof ImageInputStream)
+				((ImageInputStream) input).close();
+		}
+		catch (IOException e)
+		{
+			// nothing to release
+		}
+		finally
+		{
+			reader.dispose();
+		}
+	}
+
+	private static Map<String, Rectangle> parseIndex(ByteBuffer index, String indexName) throws IOException
+	{
+		Map<String, Rectangle> regions = new LinkedHashMap<String, Rectangle>();
+
+		BufferedReader in = new BufferedReader(new InputStreamReader(
+				ByteBuffers.newInputStream(index), StandardCharsets.UTF_8));
+
+		String line;
+		int lineNumber = 0;
+		while ((line = in.readLine()) != null)
+		{
+			lineNumber++;
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#"))
+				continue;
+
+			String[] fields = line.split("\\s+");
+			if (fields.length != 5)
+				throw new IOException(indexName + ":" + lineNumber + ": expected name x y width height");
+
+			Rectangle region;
+			try
+			{
+				region = new Rectangle(
+						Integer.parseInt(fields[1]), Integer.parseInt(fields[2]),
+						Integer.parseInt(fields[3]), Integer.parseInt(fields[4]));
+			}
+			catch (NumberFormatException e)
+			{
+				throw new IOException(indexName + ":" + lineNumber + ": invalid number", e);
+			}
+
+			if (region.x < 0 || region.y < 0 || region.width <= 0 || region.height <= 0)
+				throw new IOException(indexName + ":" + lineNumber + ": invalid region");
+
+			if (regions.put(fields[0], region) != null)
+				throw new IOException(indexName + ":" + lineNumber + ": duplicate icon '" + fields[0] + "'");
+		}
+
+		return regions;
+	}
+}
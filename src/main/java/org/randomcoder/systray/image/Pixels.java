@@ -0,0 +1,130 @@
+package org.randomcoder.systray.image;
+
+import java.awt.*;
+import java.awt.image.*;
+
+/**
+ * Raster helpers shared by the renderers in this package. All pixels are
+ * non-premultiplied ARGB, as stored by <code>TYPE_INT_ARGB</code> images.
+ * 
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+final class Pixels
+{
+	private Pixels()
+	{
+	}
+
+	/**
+	 * Creates an ARGB image of the given size.
+	 */
+	static BufferedImage createImage(Dimension size)
+	{
+		return new BufferedImage(
+			Math.max(1, size.width), Math.max(1, size.height), BufferedImage.TYPE_INT_ARGB);
+	}
+
+	/**
+	 * Returns the pixel array backing an image created by
+	 * {@link #createImage(Dimension)}. Writes to the array are visible in the
+	 * image.
+	 */
+	static int[] getData(BufferedImage image)
+	{
+		return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+	}
+
+	/**
+	 * Draws an image, scaled to fit, into a new array of pixels.
+	 */
+	static int[] rasterize(Image image, Dimension size)
+	{
+		BufferedImage target = createImage(size);
+
+		Graphics2D g = target.createGraphics();
+		try
+		{
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+			g.drawImage(image, 0, 0, target.getWidth(), target.getHeight(), null);
+		}
+		finally
+		{
+			g.dispose();
+		}
+
+		return getData(target);
+	}
+
+	/**
+	 * Extracts the alpha channel of an image.
+	 */
+	static byte[] alpha(BufferedImage image)
+	{
+		int[] data = getData(image);
+		byte[] alpha = new byte[data.length];
+		for (int i = 0; i < data.length; i++)
+			alpha[i] = (byte) (data[i] >>> 24);
+
+		return alpha;
+	}
+
+	/**
+	 * Composites a colour over a pixel using the source-over rule.
+	 *
+	 * @param dst
+	 *            destination pixel
+	 * @param rgb
+	 *            source colour; its alpha is ignored
+	 * @param alpha
+	 *            source coverage, from 0 to 255
+	 * @return composited pixel
+	 */
+	static int blend(int dst, int rgb, int alpha)
+	{
+		if (alpha <= 0)
+			return dst;
+
+		if (alpha >= 255)
+			return 0xff000000 | (rgb & 0xffffff);
+
+		int da = dst >>> 24;
+		int inv = 255 - alpha;
+
+		// resulting alpha, scaled by 255
+		int oa = alpha * 255 + da * inv;
+		if (oa == 0)
+			return 0;
+
+		int dw = da * inv;
+		int r = (((rgb >> 16) & 0xff) * alpha * 255 + ((dst >> 16) & 0xff) * dw) / oa;
+		int g = (((rgb >> 8) & 0xff) * alpha * 255 + ((dst >> 8) & 0xff) * dw) / oa;
+		int b = ((rgb & 0xff) * alpha * 255 + (dst & 0xff) * dw) / oa;
+
+		return ((oa / 255) << 24) | (r << 16) | (g << 8) | b;
+	}
+}
@@ -0,0 +1,276 @@
+package org.randomcoder.systray.image;
+
+import java.awt.*;
+import java.awt.geom.Arc2D;
+import java.awt.image.BufferedImage;
+import java.beans.*;
+
+import org.randomcoder.systray.*;
+
+/**
+ * <p>
+ * Set of pre-rendered progress ring frames, for use with
+ * {@link TrayIconWrapper#setProgressRing(ProgressRing)}. Progress is quantized
+ * into a fixed number of buckets, and one frame per bucket is drawn when the
+ * ring is created, so that showing progress is only an array lookup.
+ * </p>
+ * 
+ * <p>
+ * A ring created without an explicit size follows the tray icon size: when
+ * the tray reports a new size, the frames are redrawn and a
+ * <code>frames</code> property change is fired, so that icons showing the
+ * ring can pick up the new frames. The tray does not keep the ring
+ * reachable; call {@link #dispose()} to stop following the tray sooner.
+ * </p>
+ * 
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+public final class ProgressRing
+{
+	/**
+	 * Name of the property fired when the frames are redrawn.
+	 */
+	public static final String FRAMES_PROPERTY = "frames";
+
+	private final Image baseIcon;
+	private final int buckets;
+	private final Color track;
+	private final Color fill;
+
+	private final PropertyChangeSupport changeSupport = new PropertyChangeSupport(this);
+
+	private volatile Image[] frames;
+
+	private SizeListener sizeListener;
+
+	/**
+	 * Creates a ring which follows the tray icon size.
+	 * 
+	 * @param baseIcon
+	 *            fully loaded image drawn beneath the ring, or
+	 *            <code>null</code> for none
+	 * @param buckets
+	 *            number of distinct progress steps, not counting zero
+	 * @param track
+	 *            colour of the unfilled part of the ring
+	 * @param fill
+	 *            colour of the filled part of the ring
+	 * @throws IllegalArgumentException
+	 *             if <code>buckets</code> is not positive
+	 */
+	public ProgressRing(Image baseIcon, int buckets, Color track, Color fill)
+	{
+		this(baseIcon, buckets, track, fill, null);
+	}
+
+	/**
+	 * Creates a ring of a fixed size.
+	 * 
+	 * @param baseIcon
+	 *            fully loaded image drawn beneath the ring, or
+	 *            <code>null</code> for none
+	 * @param buckets
+	 *            number of distinct progress steps, not counting zero
+	 * @param track
+	 *            colour of the unfilled part of the ring
+	 * @param fill
+	 *            colour of the filled part of the ring
+	 * @param size
+	 *            size of the frames, or <code>null</code> to follow the tray
+	 *            icon size
+	 * @throws IllegalArgumentException
+	 *             if <code>buckets</code> is not positive
+	 */
+	public ProgressRing(Image baseIcon, int buckets, Color track, Color fill, Dimension size)
+	{
+		if (buckets <= 0)
+			throw new IllegalArgumentException("Bucket count must be positive");
+
+		this.baseIcon = baseIcon;
+		this.buckets = buckets;
+		this.track = track;
+		this.fill = fill;
+
+		if (size == null)
+		{
+			SystemTrayWrapper tray = SystemTrayWrapper.getSystemTray();
+			sizeListener = new SizeListener(tray, this);
+			sizeListener.register();
+			size = tray.getTrayIconSize();
+		}
+
+		frames = render(size);
+	}
+
+	/**
+	 * Returns the number of progress steps, not counting zero.
+	 * 
+	 * @return bucket count
+	 */
+	public int getBuckets()
+	{
+		return buckets;
+	}
+
+	/**
+	 * Returns the bucket for a progress value. Progress is rounded down, so
+	 * that only complete progress shows the full ring.
+	 * 
+	 * @param progress
+	 *            progress from <code>0.0</code> to <code>1.0</code>; values
+	 *            outside this range are clamped, and <code>NaN</code> counts
+	 *            as <code>0.0</code>
+	 * @return bucket, from <code>0</code> to {@link #getBuckets()}
+	 */
+	public int getBucket(double progress)
+	{
+		if (!(progress > 0.0))
+			return 0;
+
+		if (progress >= 1.0)
+			return buckets;
+
+		return Math.min(buckets - 1, (int) Math.floor(progress * buckets));
+	}
+
+	/**
+	 * Returns the frame for a progress value.
+	 * 
+	 * @param progress
+	 *            progress from <code>0.0</code> to <code>1.0</code>
+	 * @return frame image, which must not be modified
+	 * @see #getBucket(double)
+	 */
+	public Image getFrame(double progress)
+	{
+		return frames[getBucket(progress)];
+	}
+
+	/**
+	 * Redraws the frames at a new size and fires a <code>frames</code>
+	 * property change.
+	 * 
+	 * @param size
+	 *            new frame size
+	 */
+	public void setSize(Dimension size)
+	{
+		Image[] oldFrames = frames;
+		Image[] newFrames = render(size);
+		frames = newFrames;
+
+		changeSupport.firePropertyChange(FRAMES_PROPERTY, oldFrames, newFrames);
+	}
+
+	/**
+	 * Stops following the tray icon size.
+	 */
+	public void dispose()
+	{
+		SizeListener l;
+		synchronized (this)
+		{
+			l = sizeListener;
+			sizeListener = null;
+		}
+
+		if (l != null)
+			l.unregister();
+	}
+
+	public void addPropertyChangeListener(String propertyName, PropertyChangeListener listener)
+	{
+		changeSupport.addPropertyChangeListener(propertyName, listener);
+	}
+
+	public void removePropertyChangeListener(String propertyName, PropertyChangeListener listener)
+	{
+		changeSupport.removePropertyChangeListener(propertyName, listener);
+	}
+
+	private Image[] render(Dimension size)
+	{
+		int w = Math.max(1, size.width);
+		int h = Math.max(1, size.height);
+
+		int[] base = (baseIcon == null) ? null : Pixels.rasterize(baseIcon, new Dimension(w, h));
+
+		float stroke = Math.max(1.5f, Math.min(w, h) / 7.0f);
+		float inset = stroke / 2.0f;
+		Arc2D.Float arc = new Arc2D.Float(inset, inset, w - stroke, h - stroke, 90.0f, 360.0f, Arc2D.OPEN);
+
+		Image[] result = new Image[buckets + 1];
+
+		for (int i = 0; i <= buckets; i++)
+		{
+			BufferedImage frame = Pixels.createImage(new Dimension(w, h));
+			if (base != null)
+				System.arraycopy(base, 0, Pixels.getData(frame), 0, base.length);
+
+			Graphics2D g = frame.createGraphics();
+			try
+			{
+				g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+				g.setStroke(new BasicStroke(stroke, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER));
+
+				g.setColor(track);
+				arc.setAngleExtent(360.0f);
+				g.draw(arc);
+
+				if (i > 0)
+				{
+					// clockwise from twelve o'clock
+					g.setColor(fill);
+					arc.setAngleExtent(-360.0f * i / buckets);
+					g.draw(arc);
+				}
+			}
+			finally
+			{
+				g.dispose();
+			}
+
+			result[i] = frame;
+		}
+
+		return result;
+	}
+
+	private static final class SizeListener extends WeakSizeListener<ProgressRing>
+	{
+		SizeListener(SystemTrayWrapper tray, ProgressRing ring)
+		{
+			super(tray, ring);
+		}
+
+		@Override
+		void sizeChanged(ProgressRing ring, Dimension size)
+		{
+			ring.setSize(size);
+		}
+	}
+}
@@ -0,0 +1,369 @@
+package org.randomcoder.systray.image;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.lang.ref.*;
+import java.util.*;
+
+import org.randomcoder.systray.*;
+
+/**
+ * <p>
+ * Bounded cache of images scaled to the tray icon size, for icons which do
+ * not use {@link TrayIconWrapper#setImageAutoSize(boolean) auto-sizing}.
+ * Images are scaled once, with progressive bilinear filtering for good
+ * quality when shrinking, and kept until the cache exceeds its memory budget,
+ * at which point the least recently used images are evicted.
+ * </p>
+ * 
+ * <p>
+ * A cache created without an explicit size follows the tray icon size, and is
+ * cleared whenever the tray reports a new size. The tray does not keep the
+ * cache reachable; call {@link #dispose()} to stop following the tray sooner.
+ * </p>
+ * 
+ * <p>
+ * Entries are keyed by the identity of the source image and the target size.
+ * Source images are held weakly, so the cache never keeps a full-size image
+ * reachable; entries for collected source images are removed, and their
+ * bytes released, on the next access. Source images must be fully loaded;
+ * images whose size is not yet known are returned unscaled and not cached.
+ * </p>
+ * 
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+public final class ScaledImageCache
+{
+	private final long maxBytes;
+
+	private final ReferenceQueue<Image> collected = new ReferenceQueue<Image>();
+
+	// access-ordered, so iteration starts at the least recently used entry
+	private final LinkedHashMap<Key, BufferedImage> entries =
+		new LinkedHashMap<Key, BufferedImage>(16, 0.75f, true);
+
+	private long bytes;
+	private long hitCount;
+	private long missCount;
+	private long evictionCount;
+
+	private volatile Dimension size;
+
+	private SizeListener sizeListener;
+
+	/**
+	 * Creates a cache which scales images to the tray icon size.
+	 * 
+	 * @param maxBytes
+	 *            memory budget for scaled images, in bytes
+	 * @throws IllegalArgumentException
+	 *             if <code>maxBytes</code> is not positive
+	 */
+	public ScaledImageCache(long maxBytes)
+	{
+		this(maxBytes, null);
+	}
+
+	/**
+	 * Creates a cache.
+	 * 
+	 * @param maxBytes
+	 *            memory budget for scaled images, in bytes
+	 * @param size
+	 *            default size to scale images to, or <code>null</code> to
+	 *            follow the tray icon size
+	 * @throws IllegalArgumentException
+	 *             if <code>maxBytes</code> is not positive
+	 */
+	public ScaledImageCache(long maxBytes, Dimension size)
+	{
+		if (maxBytes <= 0L)
+			throw new IllegalArgumentException("Memory budget must be positive");
+
+		this.maxBytes = maxBytes;
+
+		if (size == null)
+		{
+			SystemTrayWrapper tray = SystemTrayWrapper.getSystemTray();
+			sizeListener = new SizeListener(tray, this);
+			sizeListener.register();
+			size = tray.getTrayIconSize();
+		}
+
+		this.size = new Dimension(size);
+	}
+
+	/**
+	 * Returns an image scaled to the default size.
+	 * 
+	 * @param source
+	 *            fully loaded source image
+	 * @return scaled image, which must not be modified
+	 */
+	public Image get(Image source)
+	{
+		return get(source, size);
+	}
+
+	/**
+	 * Returns an image scaled to the given size.
+	 * 
+	 * @param source
+	 *            fully loaded source image
+	 * @param size
+	 *            size to scale to
+	 * @return scaled image, which must not be modified
+	 */
+	public Image get(Image source, Dimension size)
+	{
+		int width = source.getWidth(null);
+		int height = source.getHeight(null);
+
+		if (width < 0 || height < 0)
+			return source;
+
+		Key key = new Key(source, Math.max(1, size.width), Math.max(1, size.height), null);
+
+		synchronized (this)
+		{
+			expunge();
+
+			BufferedImage image = entries.get(key);
+			if (image != null)
+			{
+				hitCount++;
+				return image;
+			}
+
+			missCount++;
+		}
+
+		// scale outside the lock; a racing miss for the same key costs a
+		// second scaling, but both callers get a usable image
+		BufferedImage image = scale(source, width, height, key.width, key.height);
+		long imageBytes = 4L * key.width * key.height;
+
+		synchronized (this)
+		{
+			BufferedImage previous = entries.put(new Key(source, key.width, key.height, collected), image);
+			if (previous != null)
+				bytes -= 4L * previous.getWidth() * previous.getHeight();
+
+			bytes += imageBytes;
+			evict();
+		}
+
+		return image;
+	}
+
+	/**
+	 * Removes all cached images.
+	 */
+	public synchronized void clear()
+	{
+		entries.clear();
+		bytes = 0L;
+	}
+
+	/**
+	 * Stops following the tray icon size.
+	 */
+	public void dispose()
+	{
+		SizeListener l;
+		synchronized (this)
+		{
+			l = sizeListener;
+			sizeListener = null;
+		}
+
+		if (l != null)
+			l.unregister();
+	}
+
+	/**
+	 * Returns the default size images are scaled to.
+	 * 
+	 * @return target size
+	 */
+	public Dimension getSize()
+	{
+		return new Dimension(size);
+	}
+
+	public long getMaxBytes()
+	{
+		return maxBytes;
+	}
+
+	public synchronized long getBytes()
+	{
+		expunge();
+		return bytes;
+	}
+
+	public synchronized int getEntryCount()
+	{
+		expunge();
+		return entries.size();
+	}
+
+	public synchronized long getHitCount()
+	{
+		return hitCount;
+	}
+
+	public synchronized long getMissCount()
+	{
+		return missCount;
+	}
+
+	public synchronized long getEvictionCount()
+	{
+		return evictionCount;
+	}
+
+	/**
+	 * Removes entries whose source image has been collected.
+	 */
+	private void expunge()
+	{
+		Reference<? extends Image> ref;
+		while ((ref = collected.poll()) != null)
+		{
+			BufferedImage image = entries.remove(ref);
+			if (image != null)
+				bytes -= 4L * image.getWidth() * image.getHeight();
+		}
+	}
+
+	private void evict()
+	{
+		Iterator<Map.Entry<Key, BufferedImage>> it = entries.entrySet().iterator();
+
+		// always keep the newest entry, even if it alone exceeds the budget
+		while (bytes > maxBytes && entries.size() > 1)
+		{
+			BufferedImage image = it.next().getValue();
+			it.remove();
+
+			bytes -= 4L * image.getWidth() * image.getHeight();
+			evictionCount++;
+		}
+	}
+
+	/**
+	 * Scales an image, halving its size in steps while shrinking by more than
+	 * a factor of two, so that bilinear filtering does not skip source
+	 * pixels.
+	 */
+	static BufferedImage scale(Image source, int width, int height, int targetWidth, int targetHeight)
+	{
+		Image current = source;
+		int w = width;
+		int h = height;
+
+		do
+		{
+			w = (w / 2 >= targetWidth) ? w / 2 : targetWidth;
+			h = (h / 2 >= targetHeight) ? h / 2 : targetHeight;
+
+			BufferedImage next = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+			Graphics2D g = next.createGraphics();
+			try
+			{
+				g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+				g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+				g.setRenderingHint(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY);
+				g.drawImage(current, 0, 0, w, h, null);
+			}
+			finally
+			{
+				g.dispose();
+			}
+
+			current = next;
+		}
+		while (w != targetWidth || h != targetHeight);
+
+		return (BufferedImage) current;
+	}
+
+	private static final class SizeListener extends WeakSizeListener<ScaledImageCache>
+	{
+		SizeListener(SystemTrayWrapper tray, ScaledImageCache cache)
+		{
+			super(tray, cache);
+		}
+
+		@Override
+		void sizeChanged(ScaledImageCache cache, Dimension size)
+		{
+			cache.size = new Dimension(size);
+			cache.clear();
+		}
+	}
+
+	/**
+	 * Cache key, holding its source image weakly. A key whose source has been
+	 * collected is equal only to itself, so that it can still be removed.
+	 */
+	private static final class Key extends WeakReference<Image>
+	{
+		final int width;
+		final int height;
+		final int hash;
+
+		Key(Image source, int width, int height, ReferenceQueue<Image> queue)
+		{
+			super(source, queue);
+			this.width = width;
+			this.height = height;
+			this.hash = (System.identityHashCode(source) * 31 + width) * 31 + height;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if (o == this)
+				return true;
+
+			if (!(o instanceof Key))
+				return false;
+
+			Key other = (Key) o;
+			Image source = get();
+			return source != null && source == other.get() && width == other.width && height == other.height;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package org.randomcoder.systray.image;
+
+import java.awt.Dimension;
+import java.beans.*;
+import java.lang.ref.*;
+
+import org.randomcoder.systray.*;
+
+/**
+ * Follows the tray icon size on behalf of an object without keeping it
+ * reachable. Once the object has been collected, its listener is removed
+ * from the tray the next time any listener of this kind is registered, or
+ * the next time the size changes.
+ * 
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+abstract class WeakSizeListener<T> implements PropertyChangeListener
+{
+	private static final String TRAY_ICON_SIZE_PROPERTY = "trayIconSize";
+
+	private static final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+
+	private final SystemTrayWrapper tray;
+
+	private final Target target;
+
+	/**
+	 * Creates a listener. Subclasses must be static, so that they do not
+	 * hold the target themselves.
+	 * 
+	 * @param tray
+	 *            tray to follow
+	 * @param target
+	 *            object to notify
+	 */
+	WeakSizeListener(SystemTrayWrapper tray, T target)
+	{
+		this.tray = tray;
+		this.target = new Target(target, this);
+	}
+
+	/**
+	 * Called when the tray icon size changes while the target is reachable.
+	 * 
+	 * @param target
+	 *            object to notify
+	 * @param size
+	 *            new tray icon size
+	 */
+	abstract void sizeChanged(T target, Dimension size);
+
+	void register()
+	{
+		expunge();
+		InternalListeners.addPropertyChangeListener(tray, TRAY_ICON_SIZE_PROPERTY, this);
+	}
+
+	void unregister()
+	{
+		InternalListeners.removePropertyChangeListener(tray, TRAY_ICON_SIZE_PROPERTY, this);
+	}
+
+	@SuppressWarnings("unchecked")
+	public final void propertyChange(PropertyChangeEvent evt)
+	{
+		Object t = target.get();
+
+		if (t == null)
+			unregister();
+		else
+			sizeChanged((T) t, (Dimension) evt.getNewValue());
+	}
+
+	private static void expunge()
+	{
+		Reference<?> ref;
+		while ((ref = queue.poll()) != null)
+			((Target) ref).listener.unregister();
+	}
+
+	private static final class Target extends WeakReference<Object>
+	{
+		final WeakSizeListener<?> listener;
+
+		Target(Object referent, WeakSizeListener<?> listener)
+		{
+			super(referent, queue);
+			this.listener = listener;
+		}
+	}
+}
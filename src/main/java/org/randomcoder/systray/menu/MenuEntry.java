@@ -0,0 +1,363 @@
+package org.randomcoder.systray.menu;
+
+import java.util.*;
+
+/**
+ * <p>
+ * An immutable popup menu entry: an item, a checkbox, a submenu or a
+ * separator. Entries are created with the static factory methods and changed
+ * by copying, with the <code>with</code> methods.
+ * </p>
+ * 
+ * <p>
+ * Each entry has a key, which identifies it across successive models so that
+ * {@link MenuReconciler} can update its menu item in place. The key defaults
+ * to the label; entries whose labels change, or which share a label with a
+ * sibling, should be given explicit keys with {@link #withKey(Object)}.
+ * </p>
+ * 
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+public final class MenuEntry
+{
+	/**
+	 * Type of menu entry.
+	 */
+	public static enum Type
+	{
+		/**
+		 * A plain menu item.
+		 */
+		ITEM,
+
+		/**
+		 * A menu item with a check mark.
+		 */
+		CHECKBOX,
+
+		/**
+		 * A submenu.
+		 */
+		SUBMENU,
+
+		/**
+		 * A separator line.
+		 */
+		SEPARATOR
+	}
+
+	private static final MenuEntry SEPARATOR = new MenuEntry(
+			Type.SEPARATOR, null, "-", null, true, false, Collections.<MenuEntry> emptyList());
+
+	private final Type type;
+	private final Object key;
+	private final String label;
+	private final String actionCommand;
+	private final boolean enabled;
+	private final boolean checked;
+	private final List<MenuEntry> children;
+
+	private MenuEntry(
+			Type type, Object key, String label, String actionCommand,
+			boolean enabled, boolean checked, List<MenuEntry> children)
+	{
+		this.type = type;
+		this.key = key;
+		this.label = label;
+		this.actionCommand = actionCommand;
+		this.enabled = enabled;
+		this.checked = checked;
+		this.children = children;
+	}
+
+	/**
+	 * Creates an enabled menu item.
+	 * 
+	 * @param label
+	 *            item label
+	 * @return menu entry
+	 */
+	public static MenuEntry item(String label)
+	{
+		return new MenuEntry(Type.ITEM, null, label, null, true, false, Collections.<MenuEntry> emptyList());
+	}
+
+	/**
+	 * Creates an enabled menu item with an action command.
+	 * 
+	 * @param label
+	 *            item label
+	 * @param actionCommand
+	 *            action command
+	 * @return menu entry
+	 */
+	public static MenuEntry item(String label, String actionCommand)
+	{
+		return item(label).withActionCommand(actionCommand);
+	}
+
+	/**
+	 * Creates an enabled checkbox item.
+	 * 
+	 * @param label
+	 *            item label
+	 * @param checked
+	 *            <code>true</code> if the item is checked
+	 * @return menu entry
+	 */
+	public static MenuEntry checkbox(String label, boolean checked)
+	{
+		return new MenuEntry(Type.CHECKBOX, null, label, null, true, checked, Collections.<MenuEntry> emptyList());
+	}
+
+	/**
+	 * Creates an enabled submenu.
+	 * 
+	 * @param label
+	 *            submenu label
+	 * @param children
+	 *            submenu entries
+	 * @return menu entry
+	 */
+	public static MenuEntry submenu(String label, MenuEntry... children)
+	{
+		return submenu(label, Arrays.asList(children));
+	}
+
+	/**
+	 * Creates an enabled submenu.
+	 * 
+	 * @param label
+	 *            submenu label
+	 * @param children
+	 *            submenu entries
+	 * @return menu entry
+	 */
+	public static MenuEntry submenu(String label, List<MenuEntry> children)
+	{
+		return new MenuEntry(Type.SUBMENU, null, label, null, true, false, copy(children));
+	}
+
+	/**
+	 * Returns a separator.
+	 * 
+	 * @return separator entry
+	 */
+	public static MenuEntry separator()
+	{
+		return SEPARATOR;
+	}
+
+	/**
+	 * Returns the type of this entry.
+	 * 
+	 * @return entry type
+	 */
+	public Type getType()
+	{
+		return type;
+	}
+
+	/**
+	 * Returns the key which identifies this entry among its siblings.
+	 * 
+	 * @return explicit key if one was set, otherwise the label
+	 */
+	public Object getKey()
+	{
+		return (key == null) ? label : key;
+	}
+
+	/**
+	 * Returns the label.
+	 * 
+	 * @return label
+	 */
+	public String getLabel()
+	{
+		return label;
+	}
+
+	/**
+	 * Returns the action command.
+	 * 
+	 * @return action command, or <code>null</code> to use the label
+	 */
+	public String getActionCommand()
+	{
+		return actionCommand;
+	}
+
+	/**
+	 * Determines whether this entry is enabled.
+	 * 
+	 * @return <code>true</code> if enabled
+	 */
+	public boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	/**
+	 * Determines whether this checkbox entry is checked.
+	 * 
+	 * @return <code>true</code> if checked
+	 */
+	public boolean isChecked()
+	{
+		return checked;
+	}
+
+	/**
+	 * Returns the entries of this submenu.
+	 * 
+	 * @return unmodifiable list of entries, empty for other types
+	 */
+	public List<MenuEntry> getChildren()
+	{
+		return children;
+	}
+
+	/**
+	 * Returns a copy of this entry with a different key.
+	 * 
+	 * @param key
+	 *            key, or <code>null</code> to use the label
+	 * @return new entry, or <code>this</code> if the key is unchanged
+	 */
+	public MenuEntry withKey(Object key)
+	{
+		return equal(this.key, key) ? this
+				: new MenuEntry(type, key, label, actionCommand, enabled, checked, children);
+	}
+
+	/**
+	 * Returns a copy of this entry with a different label.
+	 * 
+	 * @param label
+	 *            label
+	 * @return new entry, or <code>this</code> if the label is unchanged
+	 */
+	public MenuEntry withLabel(String label)
+	{
+		checkNotSeparator();
+		return equal(this.label, label) ? this
+				: new MenuEntry(type, key, label, actionCommand, enabled, checked, children);
+	}
+
+	/**
+	 * Returns a copy of this entry with a different action command.
+	 * 
+	 * @param actionCommand
+	 *            action command, or <code>null</code> to use the label
+	 * @return new entry, or <code>this</code> if the command is unchanged
+	 */
+	public MenuEntry withActionCommand(String actionCommand)
+	{
+		checkNotSeparator();
+		return equal(this.actionCommand, actionCommand) ? this
+				: new MenuEntry(type, key, label, actionCommand, enabled, checked, children);
+	}
+
+	/**
+	 * Returns a copy of this entry, enabled or disabled.
+	 * 
+	 * @param enabled
+	 *            <code>true</code> to enable the entry
+	 * @return new entry, or <code>this</code> if the state is unchanged
+	 */
+	public MenuEntry withEnabled(boolean enabled)
+	{
+		checkNotSeparator();
+		return (this.enabled == enabled) ? this
+				: new MenuEntry(type, key, label, actionCommand, enabled, checked, children);
+	}
+
+	/**
+	 * Returns a copy of this checkbox entry, checked or unchecked.
+	 * 
+	 * @param checked
+	 *            <code>true</code> to check the entry
+	 * @return new entry, or <code>this</code> if the state is unchanged
+	 * @throws IllegalStateException
+	 *             if this entry is not a checkbox
+	 */
+	public MenuEntry withChecked(boolean checked)
+	{
+		if (type != Type.CHECKBOX)
+			throw new IllegalStateException("Not a checkbox");
+
+		return (this.checked == checked) ? this
+				: new MenuEntry(type, key, label, actionCommand, enabled, checked, children);
+	}
+
+	/**
+	 * Returns a copy of this submenu with different entries.
+	 * 
+	 * @param children
+	 *            submenu entries
+	 * @return new entry
+	 * @throws IllegalStateException
+	 *             if this entry is not a submenu
+	 */
+	public MenuEntry withChildren(List<MenuEntry> children)
+	{
+		if (type != Type.SUBMENU)
+			throw new IllegalStateException("Not a submenu");
+
+		return new MenuEntry(type, key, label, actionCommand, enabled, checked, copy(children));
+	}
+
+	@Override
+	public String toString()
+	{
+		return (type == Type.SEPARATOR) ? "-" : (type + "[" + label + "]");
+	}
+
+	private void checkNotSeparator()
+	{
+		if (type == Type.SEPARATOR)
+			throw new IllegalStateException("Separators have no properties");
+	}
+
+	static List<MenuEntry> copy(List<MenuEntry> entries)
+	{
+		MenuEntry[] array = entries.toArray(new MenuEntry[entries.size()]);
+		for (MenuEntry entry : array)
+		{
+			if (entry == null)
+				throw new NullPointerException("null menu entry");
+		}
+
+		return Collections.unmodifiableList(Arrays.asList(array));
+	}
+
+	private static boolean equal(Object a, Object b)
+	{
+		return (a == null) ? (b == null) : a.equals(b);
+	}
+}
@@ -0,0 +1,126 @@
+package org.randomcoder.systray.menu;
+
+import java.util.*;
+
+/**
+ * <p>
+ * An immutable popup menu: an ordered list of {@link MenuEntry entries}.
+ * Models are applied to a <code>PopupMenu</code> by a
+ * {@link MenuReconciler}, which changes only the menu items whose entries
+ * differ from the previous model.
+ * </p>
+ * 
+ * <p>
+ * Entries and submenus which are unchanged between models should be reused
+ * rather than recreated: the reconciler skips an entry, including its whole
+ * submenu, as soon as it finds the same instance in both models.
+ * </p>
+ * 
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+public final class MenuModel
+{
+	private static final MenuModel EMPTY = new MenuModel(Collections.<MenuEntry> emptyList());
+
+	private final List<MenuEntry> entries;
+
+	private MenuModel(List<MenuEntry> entries)
+	{
+		this.entries = entries;
+	}
+
+	/**
+	 * Returns an empty model.
+	 * 
+	 * @return empty model
+	 */
+	public static MenuModel empty()
+	{
+		return EMPTY;
+	}
+
+	/**
+	 * Creates a model.
+	 * 
+	 * @param entries
+	 *            menu entries
+	 * @return menu model
+	 */
+	public static MenuModel of(MenuEntry... entries)
+	{
+		return of(Arrays.asList(entries));
+	}
+
+	/**
+	 * Creates a model.
+	 * 
+	 * @param entries
+	 *            menu entries
+	 * @return menu model
+	 */
+	public static MenuModel of(List<MenuEntry> entries)
+	{
+		return new MenuModel(MenuEntry.copy(entries));
+	}
+
+	/**
+	 * Returns the entries of this model.
+	 * 
+	 * @return unmodifiable list of entries
+	 */
+	public List<MenuEntry> getEntries()
+	{
+		return entries;
+	}
+
+	/**
+	 * Returns a copy of this model with one entry replaced.
+	 * 
+	 * @param index
+	 *            index of the entry to replace
+	 * @param entry
+	 *            new entry
+	 * @return new model, or <code>this</code> if the entry is unchanged
+	 * @throws IndexOutOfBoundsException
+	 *             if the index is out of range
+	 */
+	public MenuModel with(int index, MenuEntry entry)
+	{
+		if (entries.get(index) == entry)
+			return this;
+
+		List<MenuEntry> copy = new ArrayList<MenuEntry>(entries);
+		copy.set(index, entry);
+		return of(copy);
+	}
+
+	@Override
+	public String toString()
+	{
+		return entries.toString();
+	}
+}
@@ -0,0 +1,435 @@
+package org.randomcoder.systray.menu;
+
+import java.awt.*;
+import java.awt.event.*;
+import java.util.List;
+import java.util.concurrent.atomic.*;
+
+/**
+ * <p>
+ * Applies {@link MenuModel}s to a <code>PopupMenu</code>, changing only the
+ * menu items whose entries differ from the previous model. Items are
+ * relabelled, enabled, disabled and checked in place rather than recreated,
+ * so their native peers survive; entries which are the same instance in both
+ * models are skipped along with their whole submenu.
+ * </p>
+ * 
+ * <p>
+ * Entries are matched by {@link MenuEntry#getKey() key} at the start and end
+ * of each menu, and by position in between. Removing entries is cheap. AWT
+ * can only insert an item by removing and re-adding every item after it, so
+ * entries added part way through a menu are instead absorbed by relabelling
+ * the following items in place and appending at the end.
+ * </p>
+ * 
+ * <p>
+ * Models may be supplied from any thread. They are applied on the AWT event
+ * dispatch thread, in a single pass; if several are supplied before that
+ * pass runs, only the last is applied. Menu items report their actions to
+ * the listeners registered here, with the entry's action command. The
+ * model is authoritative: a checkbox toggled by the user is reset to the
+ * state in the next model applied, so models should be updated from item
+ * events.
+ * </p>
+ * 
+ * <pre>
+ * MenuReconciler menu = new MenuReconciler();
+ * menu.addActionListener(handler);
+ * icon.setPopupMenu(menu.getPopupMenu());
+ * ...
+ * menu.update(MenuModel.of(MenuEntry.item(&quot;Open&quot;, &quot;open&quot;), ...));
+ * </pre>
+ * 
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+public final class MenuReconciler
+{
+	private final PopupMenu popupMenu;
+
+	private final AtomicReference<MenuModel> pending = new AtomicReference<MenuModel>();
+
+	private final Runnable applyTask = new Runnable()
+	{
+		public void run()
+		{
+			applyPending();
+		}
+	};
+
+	private final ActionListener actionForwarder = new ActionListener()
+	{
+		public void actionPerformed(ActionEvent e)
+		{
+			ActionListener listener = actionListener;
+			if (listener != null)
+				listener.actionPerformed(e);
+		}
+	};
+
+	private final ItemListener itemForwarder = new ItemListener()
+	{
+		public void itemStateChanged(ItemEvent e)
+		{
+			ItemListener listener = itemListener;
+			if (listener != null)
+				listener.itemStateChanged(e);
+		}
+	};
+
+	private final AtomicLong createdCount = new AtomicLong();
+	private final AtomicLong removedCount = new AtomicLong();
+	private final AtomicLong modifiedCount = new AtomicLong();
+
+	private volatile ActionListener actionListener;
+	private volatile ItemListener itemListener;
+
+	// only changed on the event dispatch thread
+	private volatile MenuModel model = MenuModel.empty();
+
+	/**
+	 * Creates a reconciler with a new, empty popup menu.
+	 */
+	public MenuReconciler()
+	{
+		this(new PopupMenu());
+	}
+
+	/**
+	 * Creates a reconciler which manages an existing popup menu.
+	 * 
+	 * @param popupMenu
+	 *            empty popup menu
+	 * @throws IllegalArgumentException
+	 *             if the menu is not empty
+	 */
+	public MenuReconciler(PopupMenu popupMenu)
+	{
+		if (popupMenu.getItemCount() != 0)
+			throw new IllegalArgumentException("Popup menu must be empty");
+
+		this.popupMenu = popupMenu;
+	}
+
+	/**
+	 * Returns the managed popup menu.
+	 * 
+	 * @return popup menu
+	 */
+	public PopupMenu getPopupMenu()
+	{
+		return popupMenu;
+	}
+
+	/**
+	 * Returns the model most recently applied to the menu.
+	 * 
+	 * @return applied model
+	 */
+	public MenuModel getModel()
+	{
+		return model;
+	}
+
+	/**
+	 * Applies a model to the menu. On the event dispatch thread the model is
+	 * applied immediately; otherwise it is applied later on that thread.
+	 * 
+	 * @param model
+	 *            new menu model
+	 */
+	public void update(MenuModel model)
+	{
+		if (model == null)
+			throw new NullPointerException("model");
+
+		if (EventQueue.isDispatchThread())
+		{
+			pending.set(model);
+			applyPending();
+		}
+		else if (pending.getAndSet(model) == null)
+		{
+			EventQueue.invokeLater(applyTask);
+		}
+	}
+
+	/**
+	 * Adds a listener for actions performed on menu items.
+	 * 
+	 * @param listener
+	 *            action listener
+	 */
+	public synchronized void addActionListener(ActionListener listener)
+	{
+		actionListener = AWTEventMulticaster.add(actionListener, listener);
+	}
+
+	/**
+	 * Removes an action listener.
+	 * 
+	 * @param listener
+	 *            action listener
+	 */
+	public synchronized void removeActionListener(ActionListener listener)
+	{
+		actionListener = AWTEventMulticaster.remove(actionListener, listener);
+	}
+
+	/**
+	 * Adds a listener for checkbox items being checked or unchecked.
+	 * 
+	 * @param listener
+	 *            item listener
+	 */
+	public synchronized void addItemListener(ItemListener listener)
+	{
+		itemListener = AWTEventMulticaster.add(itemListener, listener);
+	}
+
+	/**
+	 * Removes an item listener.
+	 * 
+	 * @param listener
+	 *            item listener
+	 */
+	public synchronized void removeItemListener(ItemListener listener)
+	{
+		itemListener = AWTEventMulticaster.remove(itemListener, listener);
+	}
+
+	/**
+	 * Returns the number of menu items created.
+	 * 
+	 * @return created item count
+	 */
+	public long getCreatedCount()
+	{
+		return createdCount.get();
+	}
+
+	/**
+	 * Returns the number of menu items removed.
+	 * 
+	 * @return removed item count
+	 */
+	public long getRemovedCount()
+	{
+		return removedCount.get();
+	}
+
+	/**
+	 * Returns the number of properties changed on existing menu items.
+	 * 
+	 * @return modified property count
+	 */
+	public long getModifiedCount()
+	{
+		return modifiedCount.get();
+	}
+
+	private void applyPending()
+	{
+		MenuModel next = pending.getAndSet(null);
+		if (next == null)
+			return;
+
+		reconcile(popupMenu, model.getEntries(), next.getEntries());
+		model = next;
+	}
+
+	private void reconcile(Menu menu, List<MenuEntry> oldEntries, List<MenuEntry> newEntries)
+	{
+		if (oldEntries == newEntries)
+			return;
+
+		int oldSize = oldEntries.size();
+		int newSize = newEntries.size();
+
+		// unchanged or updated entries at the start
+		int start = 0;
+		while (start < oldSize && start < newSize && sameSlot(oldEntries.get(start), newEntries.get(start)))
+		{
+			patch(menu, start, oldEntries.get(start), newEntries.get(start));
+			start++;
+		}
+
+		// and at the end
+		int oldEnd = oldSize;
+		int newEnd = newSize;
+		while (oldEnd > start && newEnd > start && sameSlot(oldEntries.get(oldEnd - 1), newEntries.get(newEnd - 1)))
+		{
+			oldEnd--;
+			newEnd--;
+		}
+
+		if (newEnd > oldEnd && oldEnd < oldSize)
+		{
+			reconcileShifted(menu, oldEntries, newEntries, start);
+			return;
+		}
+
+		for (int i = oldEnd, j = newEnd; i < oldSize; i++, j++)
+			patch(menu, i, oldEntries.get(i), newEntries.get(j));
+
+		int overlap = Math.min(oldEnd, newEnd) - start;
+		for (int i = 0; i < overlap; i++)
+			patch(menu, start + i, oldEntries.get(start + i), newEntries.get(start + i));
+
+		for (int i = oldEnd - 1; i >= start + overlap; i--)
+		{
+			menu.remove(i);
+			removedCount.incrementAndGet();
+		}
+
+		// only reached at the end of the menu, so these are appends
+		for (int i = start + overlap; i < newEnd; i++)
+			menu.insert(create(newEntries.get(i)), i);
+	}
+
+	/*
+	 * Inserting before the end of a menu makes AWT re-add every following
+	 * item, so the shifted items are relabelled in place instead. That only
+	 * works while the types line up: replacing an item of another type is
+	 * itself an insert, and doing that at every separator costs a re-add of
+	 * the tail each time. At the first mismatch the rest of the menu is
+	 * rebuilt in one go, removing from the end and appending, which creates
+	 * more items than strictly needed but never shifts the ones that remain.
+	 */
+	private void reconcileShifted(Menu menu, List<MenuEntry> oldEntries, List<MenuEntry> newEntries, int start)
+	{
+		int oldSize = oldEntries.size();
+		int newSize = newEntries.size();
+
+		int index = start;
+		while (index < oldSize && oldEntries.get(index).getType() == newEntries.get(index).getType())
+		{
+			patch(menu, index, oldEntries.get(index), newEntries.get(index));
+			index++;
+		}
+
+		for (int i = oldSize - 1; i >= index; i--)
+		{
+			menu.remove(i);
+			removedCount.incrementAndGet();
+		}
+
+		for (int i = index; i < newSize; i++)
+			menu.add(create(newEntries.get(i)));
+	}
+
+	private void patch(Menu menu, int index, MenuEntry oldEntry, MenuEntry newEntry)
+	{
+		MenuItem item = menu.getItem(index);
+
+		if (oldEntry.getType() != newEntry.getType())
+		{
+			menu.remove(index);
+			removedCount.incrementAndGet();
+			menu.insert(create(newEntry), index);
+			return;
+		}
+
+		// checkboxes can be toggled by the user, so compare with the item itself
+		if (newEntry.getType() == MenuEntry.Type.CHECKBOX)
+		{
+			CheckboxMenuItem checkbox = (CheckboxMenuItem) item;
+			if (checkbox.getState() != newEntry.isChecked())
+			{
+				checkbox.setState(newEntry.isChecked());
+				modifiedCount.incrementAndGet();
+			}
+		}
+
+		if (oldEntry == newEntry || newEntry.getType() == MenuEntry.Type.SEPARATOR)
+			return;
+
+		if (!equal(oldEntry.getLabel(), newEntry.getLabel()))
+		{
+			item.setLabel(newEntry.getLabel());
+			modifiedCount.incrementAndGet();
+		}
+
+		if (oldEntry.isEnabled() != newEntry.isEnabled())
+		{
+			item.setEnabled(newEntry.isEnabled());
+			modifiedCount.incrementAndGet();
+		}
+
+		if (!equal(oldEntry.getActionCommand(), newEntry.getActionCommand()))
+		{
+			item.setActionCommand(newEntry.getActionCommand());
+			modifiedCount.incrementAndGet();
+		}
+
+		if (newEntry.getType() == MenuEntry.Type.SUBMENU)
+			reconcile((Menu) item, oldEntry.getChildren(), newEntry.getChildren());
+	}
+
+	private MenuItem create(MenuEntry entry)
+	{
+		createdCount.incrementAndGet();
+
+		MenuItem item;
+		switch (entry.getType())
+		{
+			case SEPARATOR:
+				return new MenuItem("-");
+			case CHECKBOX:
+				CheckboxMenuItem checkbox = new CheckboxMenuItem(entry.getLabel(), entry.isChecked());
+				checkbox.addItemListener(itemForwarder);
+				item = checkbox;
+				break;
+			case SUBMENU:
+				Menu submenu = new Menu(entry.getLabel());
+				for (MenuEntry child : entry.getChildren())
+					submenu.add(create(child));
+				item = submenu;
+				break;
+			default:
+				item = new MenuItem(entry.getLabel());
+				break;
+		}
+
+		item.setEnabled(entry.isEnabled());
+		item.setActionCommand(entry.getActionCommand());
+
+		if (entry.getType() != MenuEntry.Type.SUBMENU)
+			item.addActionListener(actionForwarder);
+
+		return item;
+	}
+
+	private static boolean sameSlot(MenuEntry a, MenuEntry b)
+	{
+		return (a == b) || (a.getType() == b.getType() && equal(a.getKey(), b.getKey()));
+	}
+
+	private static boolean equal(Object a, Object b)
+	{
+		return (a == null) ? (b == null) : a.equals(b);
+	}
+}
@@ -0,0 +1,385 @@
+package org.randomcoder.systray.menu;
+
+import java.awt.*;
+import java.awt.event.*;
+import java.util.*;
+import java.util.List;
+import java.util.function.*;
+
+import org.randomcoder.systray.TrayIconWrapper;
+
+/**
+ * <p>
+ * A popup menu over a list of items which may be far too long to show in
+ * full. The list is read, and the menu built, only when the popup is about
+ * to be shown, and the menu never holds more than a bounded number of items
+ * however long the list is.
+ * </p>
+ * 
+ * <p>
+ * Lists of up to one page are shown directly. Longer lists are split into
+ * alphabetical buckets, one submenu per initial letter from A to Z, with a
+ * further bucket for items starting with anything else. Each bucket shows one page
+ * of its items, followed by <em>More&hellip;</em> and preceded by
+ * <em>Previous&hellip;</em> items which move to the next or previous page the
+ * next time the popup is shown. AWT reports nothing when a submenu is
+ * opened, so buckets cannot be filled at that moment; instead, only the
+ * current page of each bucket is ever created, and successive menus are
+ * applied in place by a {@link MenuReconciler}.
+ * </p>
+ * 
+ * <pre>
+ * VirtualMenu&lt;Host&gt; menu = new VirtualMenu&lt;Host&gt;(hosts::snapshot, Host::getName, 25);
+ * menu.setSelectionHandler(this::connect);
+ * menu.install(icon);
+ * ...
+ * menu.invalidate(); // when the hosts change
+ * </pre>
+ * 
+ * @param <T>
+ *            item type
+ * 
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+public final class VirtualMenu<T> implements Supplier<PopupMenu>
+{
+	private static final String COMMAND_PREFIX = VirtualMenu.class.getName() + ":";
+	private static final String SELECT = COMMAND_PREFIX + "select:";
+	private static final String NEXT = COMMAND_PREFIX + "next:";
+	private static final String PREVIOUS = COMMAND_PREFIX + "previous:";
+
+	private static final String OTHER_BUCKET = "#";
+
+	private final Supplier<? extends List<? extends T>> source;
+	private final Function<? super T, String> labeler;
+	private final int pageSize;
+
+	private final MenuReconciler reconciler = new MenuReconciler();
+
+	// page offsets by bucket name; guarded by this
+	private final Map<String, Integer> offsets = new HashMap<String, Integer>();
+
+	private volatile List<MenuEntry> footer = Collections.emptyList();
+
+	private volatile Consumer<? super T> selectionHandler;
+
+	private volatile ActionListener actionListener;
+
+	private volatile TrayIconWrapper icon;
+
+	// items shown by the current menu, indexed by their action commands
+	private volatile List<? extends T> snapshot = Collections.emptyList();
+
+	/**
+	 * Creates a virtual menu.
+	 * 
+	 * @param source
+	 *            supplies the current items whenever the menu is built; should
+	 *            return a snapshot which is not modified afterwards
+	 * @param labeler
+	 *            returns the label of an item
+	 * @param pageSize
+	 *            maximum number of items shown at once in each menu
+	 */
+	public VirtualMenu(
+			Supplier<? extends List<? extends T>> source, Function<? super T, String> labeler, int pageSize)
+	{
+		if (source == null)
+			throw new NullPointerException("source");
+
+		if (labeler == null)
+			throw new NullPointerException("labeler");
+
+		if (pageSize <= 0)
+			throw new IllegalArgumentException("Page size must be positive");
+
+		this.source = source;
+		this.labeler = labeler;
+		this.pageSize = pageSize;
+
+		reconciler.addActionListener(new ActionListener()
+		{
+			public void actionPerformed(ActionEvent e)
+			{
+				handleAction(e);
+			}
+		});
+	}
+
+	/**
+	 * Returns the maximum number of items shown at once in each menu.
+	 * 
+	 * @return page size
+	 */
+	public int getPageSize()
+	{
+		return pageSize;
+	}
+
+	/**
+	 * Sets entries shown after the items, such as <em>Exit</em>. Their actions
+	 * are reported to the listeners added with
+	 * {@link #addActionListener(ActionListener)}.
+	 * 
+	 * @param entries
+	 *            footer entries
+	 */
+	public void setFooter(MenuEntry... entries)
+	{
+		footer = MenuEntry.copy(Arrays.asList(entries));
+		invalidate();
+	}
+
+	/**
+	 * Sets the handler called, on the event dispatch thread, when an item is
+	 * chosen.
+	 * 
+	 * @param handler
+	 *            selection handler, or <code>null</code> for none
+	 */
+	public void setSelectionHandler(Consumer<? super T> handler)
+	{
+		this.selectionHandler = handler;
+	}
+
+	/**
+	 * Adds a listener for actions on footer entries.
+	 * 
+	 * @param listener
+	 *            action listener
+	 */
+	public synchronized void addActionListener(ActionListener listener)
+	{
+		actionListener = AWTEventMulticaster.add(actionListener, listener);
+	}
+
+	/**
+	 * Removes an action listener.
+	 * 
+	 * @param listener
+	 *            action listener
+	 */
+	public synchronized void removeActionListener(ActionListener listener)
+	{
+		actionListener = AWTEventMulticaster.remove(actionListener, listener);
+	}
+
+	/**
+	 * Makes this the popup menu of a tray icon. The menu is built when the
+	 * popup is about to be shown, and rebuilt after it is invalidated.
+	 * 
+	 * @param icon
+	 *            tray icon
+	 * @see TrayIconWrapper#setPopupMenuSupplier(Supplier)
+	 */
+	public void install(TrayIconWrapper icon)
+	{
+		this.icon = icon;
+		icon.setPopupMenuSupplier(this);
+	}
+
+	/**
+	 * Marks the menu as stale, so that the items are read again before the
+	 * popup is next shown. Should be called whenever the items change.
+	 */
+	public void invalidate()
+	{
+		TrayIconWrapper current = icon;
+		if (current != null)
+			current.invalidatePopupMenu();
+	}
+
+	/**
+	 * Reads the items and brings the menu up to date. Called when the popup
+	 * is about to be shown; the menu is updated immediately on the event
+	 * dispatch thread, otherwise shortly afterwards on that thread.
+	 * 
+	 * @return popup menu
+	 */
+	public synchronized PopupMenu get()
+	{
+		List<? extends T> items = source.get();
+
+		List<MenuEntry> entries = new ArrayList<MenuEntry>();
+
+		if (items.size() <= pageSize)
+		{
+			offsets.clear();
+			for (int i = 0; i < items.size(); i++)
+				entries.add(item(items, i));
+		}
+		else
+		{
+			entries.addAll(buckets(items));
+		}
+
+		List<MenuEntry> footerEntries = footer;
+		if (!footerEntries.isEmpty())
+		{
+			if (!entries.isEmpty())
+				entries.add(MenuEntry.separator());
+
+			entries.addAll(footerEntries);
+		}
+
+		snapshot = items;
+		reconciler.update(MenuModel.of(entries));
+		return reconciler.getPopupMenu();
+	}
+
+	private List<MenuEntry> buckets(List<? extends T> items)
+	{
+		String[] names = new String[items.size()];
+		Map<String, int[]> counts = new HashMap<String, int[]>();
+
+		for (int i = 0; i < names.length; i++)
+		{
+			names[i] = bucketName(labeler.apply(items.get(i)));
+
+			int[] count = counts.get(names[i]);
+			if (count == null)
+				counts.put(names[i], count = new int[1]);
+
+			count[0]++;
+		}
+
+		// indexes of the items in each bucket, in list order
+		SortedMap<String, int[]> buckets = new TreeMap<String, int[]>();
+		for (Map.Entry<String, int[]> count : counts.entrySet())
+		{
+			buckets.put(count.getKey(), new int[count.getValue()[0]]);
+			count.getValue()[0] = 0;
+		}
+
+		for (int i = 0; i < names.length; i++)
+			buckets.get(names[i])[counts.get(names[i])[0]++] = i;
+
+		offsets.keySet().retainAll(buckets.keySet());
+
+		List<MenuEntry> entries = new ArrayList<MenuEntry>(buckets.size());
+		for (Map.Entry<String, int[]> bucket : buckets.entrySet())
+			entries.add(bucket(items, bucket.getKey(), bucket.getValue()));
+
+		return entries;
+	}
+
+	private MenuEntry bucket(List<? extends T> items, String name, int[] indexes)
+	{
+		Integer saved = offsets.get(name);
+		int offset = (saved == null) ? 0 : saved.intValue();
+		if (offset >= indexes.length)
+			offset = 0;
+
+		int end = Math.min(indexes.length, offset + pageSize);
+
+		List<MenuEntry> children = new ArrayList<MenuEntry>(end - offset + 3);
+
+		if (offset > 0)
+		{
+			children.add(MenuEntry.item("Previous\u2026", PREVIOUS + name).withKey(PREVIOUS));
+			children.add(MenuEntry.separator());
+		}
+
+		for (int i = offset; i < end; i++)
+			children.add(item(items, indexes[i]));
+
+		if (end < indexes.length)
+		{
+			children.add(MenuEntry.separator());
+			children.add(MenuEntry.item(
+					"More\u2026 (" + (indexes.length - end) + ")", NEXT + name).withKey(NEXT));
+		}
+
+		String label = name + " (" + indexes.length + ")";
+		return MenuEntry.submenu(label, children).withKey(name);
+	}
+
+	private MenuEntry item(List<? extends T> items, int index)
+	{
+		T item = items.get(index);
+		return MenuEntry.item(labeler.apply(item), SELECT + index).withKey(item);
+	}
+
+	private static String bucketName(String label)
+	{
+		if (label != null)
+		{
+			for (int i = 0; i < label.length(); i++)
+			{
+				char c = label.charAt(i);
+				if (Character.isWhitespace(c))
+					continue;
+
+				c = Character.toUpperCase(c);
+				return (c >= 'A' && c <= 'Z') ? String.valueOf(c) : OTHER_BUCKET;
+			}
+		}
+
+		return OTHER_BUCKET;
+	}
+
+	private void handleAction(ActionEvent e)
+	{
+		String command = e.getActionCommand();
+
+		if (command == null || !command.startsWith(COMMAND_PREFIX))
+		{
+			ActionListener listener = actionListener;
+			if (listener != null)
+				listener.actionPerformed(e);
+		}
+		else if (command.startsWith(SELECT))
+		{
+			Consumer<? super T> handler = selectionHandler;
+			List<? extends T> items = snapshot;
+			int index = Integer.parseInt(command.substring(SELECT.length()));
+
+			if (handler != null && index < items.size())
+				handler.accept(items.get(index));
+		}
+		else if (command.startsWith(NEXT))
+		{
+			page(command.substring(NEXT.length()), pageSize);
+		}
+		else if (command.startsWith(PREVIOUS))
+		{
+			page(command.substring(PREVIOUS.length()), -pageSize);
+		}
+	}
+
+	private void page(String bucket, int delta)
+	{
+		synchronized (this)
+		{
+			Integer saved = offsets.get(bucket);
+			int offset = (saved == null) ? 0 : saved.intValue();
+			offsets.put(bucket, Integer.valueOf(Math.max(0, offset + delta)));
+		}
+
+		invalidate();
+	}
+}
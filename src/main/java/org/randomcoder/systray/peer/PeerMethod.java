@@ -0,0 +1,52 @@
+package org.randomcoder.systray.peer;
+
+/**
+ * Enumeration of the peer operations which may be recorded or measured.
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+public enum PeerMethod
+{
+	SYSTEM_TRAY_ADD,
+	SYSTEM_TRAY_REMOVE,
+	SYSTEM_TRAY_ADD_ALL,
+	SYSTEM_TRAY_REMOVE_ALL,
+	SYSTEM_TRAY_REPLACE_ALL,
+	SYSTEM_TRAY_GET_TRAY_ICONS,
+	SYSTEM_TRAY_GET_TRAY_ICON_SIZE,
+	SET_IMAGE,
+	SET_POPUP_MENU,
+	SET_TOOL_TIP,
+	SET_IMAGE_AUTO_SIZE,
+	SET_ACTION_COMMAND,
+	ADD_MOUSE_LISTENER,
+	REMOVE_MOUSE_LISTENER,
+	ADD_MOUSE_MOTION_LISTENER,
+	REMOVE_MOUSE_MOTION_LISTENER,
+	ADD_ACTION_LISTENER,
+	REMOVE_ACTION_LISTENER,
+	DISPLAY_MESSAGE
+}
@@ -0,0 +1,176 @@
+package org.randomcoder.systray.peer;
+
+import java.util.*;
+
+import org.randomcoder.systray.peer.metrics.InstrumentedPeerProvider;
+
+/**
+ * Discovers and selects the active {@link PeerProvider}.
+ *
+ * <p>
+ * Providers are located once, the first time this class is used, via
+ * <code>java.util.ServiceLoader</code>. If the
+ * <code>org.randomcoder.systray.peer.provider</code> system property names a
+ * discovered provider, that provider is selected; otherwise the provider with
+ * the highest priority wins. If no providers are found at all (for example
+ * because service descriptors were lost while repackaging), the AWT provider
+ * is used.
+ * </p>
+ *
+ * <p>
+ * If the <code>org.randomcoder.systray.peer.metrics</code> system property is
+ * <code>true</code>, the selected provider's peers are instrumented and their
+ * call metrics published through JMX. Otherwise peers are used as-is.
+ * </p>
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+public final class PeerProviders
+{
+	/**
+	 * System property used to select a provider by name.
+	 */
+	public static final String PROVIDER_PROPERTY = "org.randomcoder.systray.peer.provider";
+
+	/**
+	 * System property used to enable peer call metrics.
+	 */
+	public static final String METRICS_PROPERTY = "org.randomcoder.systray.peer.metrics";
+
+	private PeerProviders()
+	{
+	}
+
+	/**
+	 * Returns the selected peer provider.
+	 *
+	 * @return active provider
+	 */
+	public static PeerProvider getProvider()
+	{
+		return Holder.PROVIDER;
+	}
+
+	/**
+	 * Returns all discovered providers, ordered from highest to lowest
+	 * priority.
+	 *
+	 * @return unmodifiable list of providers
+	 */
+	public static List<PeerProvider> getProviders()
+	{
+		return Holder.PROVIDERS;
+	}
+
+	static List<PeerProvider> discover()
+	{
+		List<PeerProvider> providers = new ArrayList<PeerProvider>();
+
+		Iterator<PeerProvider> it = ServiceLoader.load(
+				PeerProvider.class, PeerProvider.class.getClassLoader()).iterator();
+
+		while (true)
+		{
+			try
+			{
+				if (!it.hasNext())
+					break;
+
+				providers.add(it.next());
+			}
+			catch (ServiceConfigurationError e)
+			{
+				// skip broken providers
+			}
+		}
+
+		if (providers.isEmpty())
+			providers.add(new AwtPeerProvider());
+
+		// stable sort, highest priority first
+		Collections.sort(providers, new Comparator<PeerProvider>()
+		{
+			public int compare(PeerProvider p1, PeerProvider p2)
+			{
+				int a = p1.getPriority();
+				int b = p2.getPriority();
+				return (a > b) ? -1 : ((a == b) ? 0 : 1);
+			}
+		});
+
+		return Collections.unmodifiableList(providers);
+	}
+
+	static PeerProvider select(List<PeerProvider> providers, String name)
+	{
+		if (name != null)
+		{
+			for (PeerProvider provider : providers)
+			{
+				if (name.equalsIgnoreCase(provider.getName()))
+					return provider;
+			}
+		}
+
+		return providers.get(0);
+	}
+
+	static PeerProvider instrument(PeerProvider provider, boolean enabled)
+	{
+		return enabled ? InstrumentedPeerProvider.instrument(provider) : provider;
+	}
+
+	private static boolean isMetricsEnabled()
+	{
+		try
+		{
+			return Boolean.getBoolean(METRICS_PROPERTY);
+		}
+		catch (SecurityException e)
+		{
+			return false;
+		}
+	}
+
+	private static String getProviderName()
+	{
+		try
+		{
+			return System.getProperty(PROVIDER_PROPERTY);
+		}
+		catch (SecurityException e)
+		{
+			return null;
+		}
+	}
+
+	private static final class Holder
+	{
+		static final List<PeerProvider> PROVIDERS = discover();
+		static final PeerProvider PROVIDER = instrument(
+				select(PROVIDERS, getProviderName()), isMetricsEnabled());
+	}
+}
@@ -4,7 +4,8 @@ import java.awt.*;
 import java.beans.PropertyChangeListener;
 
 /**
- * System tray peer interface, used by <code>SystemTray</code> via reflection.
+ * System tray peer interface, used by <code>SystemTray</code> and supplied by
+ * a <code>PeerProvider</code>.
  * 
  * <pre>
  * Copyright (c) 2007, Craig Condit. All rights reserved.
@@ -39,6 +40,45 @@ public interface SystemTrayPeer
 	
 	public void remove(TrayIconPeer trayIcon);
 	
+	/**
+	 * Adds several tray icons in one call. A failure to add one icon does not
+	 * prevent the remaining icons from being added.
+	 * 
+	 * @param trayIcons
+	 *            icons to add; <code>null</code> elements are reported as
+	 *            failures
+	 * @return array parallel to <code>trayIcons</code> holding the exception
+	 *         raised for each icon, or <code>null</code> where the icon was
+	 *         added
+	 */
+	public Exception[] addAll(TrayIconPeer[] trayIcons);
+	
+	/**
+	 * Removes several tray icons in one call. Icons which are
+	 * <code>null</code> or not in the tray are ignored.
+	 * 
+	 * @param trayIcons
+	 *            icons to remove
+	 * @return array parallel to <code>trayIcons</code> holding the exception
+	 *         raised for each icon, or <code>null</code> where the icon was
+	 *         removed or ignored
+	 */
+	public Exception[] removeAll(TrayIconPeer[] trayIcons);
+	
+	/**
+	 * Replaces the contents of the tray with the given icons in one call.
+	 * Icons already in the tray which are also in <code>trayIcons</code> are
+	 * left in place; all others are removed, and the remaining
+	 * <code>trayIcons</code> are added.
+	 * 
+	 * @param trayIcons
+	 *            icons the tray should contain
+	 * @return array parallel to <code>trayIcons</code> holding the exception
+	 *         raised for each icon, or <code>null</code> where the icon is now
+	 *         in the tray
+	 */
+	public Exception[] replaceAll(TrayIconPeer[] trayIcons);
+	
 	public TrayIconPeer[] getTrayIcons();
 	
 	public Dimension getTrayIconSize();
@@ -1,11 +1,18 @@
 package org.randomcoder.systray.peer;
 
 import java.awt.*;
-import java.beans.PropertyChangeListener;
+import java.beans.*;
+import java.util.*;
+import java.util.List;
 
 /**
- * System tray peer implementation, used by <code>SystemTray</code> via
- * reflection.
+ * System tray peer implementation, supplied by <code>AwtPeerProvider</code>.
+ * 
+ * <p>
+ * AWT does not report changes to the tray icon size, so this peer fires
+ * <code>trayIconSize</code> property changes itself: the size is checked
+ * whenever the native tray comes or goes, and whenever it is queried.
+ * </p>
  * 
  * <pre>
  * Copyright (c) 2007, Craig Condit. All rights reserved.
@@ -34,8 +41,28 @@ import java.beans.PropertyChangeListener;
  */
 public class SystemTrayPeerImpl implements SystemTrayPeer
 {
+	private static final String TRAY_ICON_SIZE_PROPERTY = "trayIconSize";
+	
+	private static final String SYSTEM_TRAY_PROPERTY = "systemTray";
+	
 	private final SystemTray peer;
 	
+	private final PropertyChangeSupport sizeChangeSupport = new PropertyChangeSupport(this);
+	
+	/**
+	 * Last size reported, while anyone listens for size changes; guarded by
+	 * <code>sizeChangeSupport</code>.
+	 */
+	private Dimension trayIconSize;
+	
+	private final PropertyChangeListener systemTrayListener = new PropertyChangeListener()
+	{
+		public void propertyChange(PropertyChangeEvent evt)
+		{
+			checkTrayIconSize(peer.getTrayIconSize());
+		}
+	};
+	
 	public SystemTrayPeerImpl(SystemTray peer)
 	{
 		this.peer = peer;
@@ -66,35 +93,186 @@ public class SystemTrayPeerImpl implements SystemTrayPeer
 		peer.remove((TrayIcon) trayIcon.getNativePeer());
 	}
 
+	public Exception[] addAll(TrayIconPeer[] trayIcons)
+	{
+		Exception[] failures = new Exception[trayIcons.length];
+		
+		for (int i = 0; i < trayIcons.length; i++)
+		{
+			try
+			{
+				if (trayIcons[i] == null)
+					throw new NullPointerException("adding null TrayIcon");
+				
+				add(trayIcons[i]);
+			}
+			catch (Exception e)
+			{
+				failures[i] = e;
+			}
+		}
+		
+		return failures;
+	}
+
+	public Exception[] removeAll(TrayIconPeer[] trayIcons)
+	{
+		Exception[] failures = new Exception[trayIcons.length];
+		
+		for (int i = 0; i < trayIcons.length; i++)
+		{
+			if (trayIcons[i] == null)
+				continue;
+			
+			try
+			{
+				remove(trayIcons[i]);
+			}
+			catch (RuntimeException e)
+			{
+				failures[i] = e;
+			}
+		}
+		
+		return failures;
+	}
+
+	public Exception[] replaceAll(TrayIconPeer[] trayIcons)
+	{
+		Set<Object> wanted = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+		for (TrayIconPeer trayIcon : trayIcons)
+		{
+			if (trayIcon != null)
+				wanted.add(trayIcon.getNativePeer());
+		}
+		
+		Set<Object> current = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+		for (TrayIcon icon : peer.getTrayIcons())
+		{
+			if (wanted.contains(icon))
+				current.add(icon);
+			else
+				peer.remove(icon);
+		}
+		
+		Exception[] failures = new Exception[trayIcons.length];
+		
+		for (int i = 0; i < trayIcons.length; i++)
+		{
+			try
+			{
+				if (trayIcons[i] == null)
+					throw new NullPointerException("adding null TrayIcon");
+				
+				// current doubles as the set of icons already handled
+				if (current.add(trayIcons[i].getNativePeer()))
+					add(trayIcons[i]);
+			}
+			catch (Exception e)
+			{
+				failures[i] = e;
+			}
+		}
+		
+		return failures;
+	}
+
 	public TrayIconPeer[] getTrayIcons()
 	{
 		TrayIcon[] icons = peer.getTrayIcons();
 		TrayIconPeer[] wrappedIcons = new TrayIconPeer[icons.length];
 		
 		for (int i = 0; i < icons.length; i++)
-			wrappedIcons[i] = new TrayIconPeerImpl(icons[i]);
+			wrappedIcons[i] = TrayIconPeerImpl.forNativePeer(icons[i]);
 		
 		return wrappedIcons;
 	}
 	
 	public Dimension getTrayIconSize()
 	{
-		return peer.getTrayIconSize();
+		Dimension size = peer.getTrayIconSize();
+		checkTrayIconSize(size);
+		return size;
 	}
 
 	public void addPropertyChangeListener(
 			String propertyName, PropertyChangeListener listener)
 	{
-		peer.addPropertyChangeListener(propertyName, listener);
+		if (!TRAY_ICON_SIZE_PROPERTY.equals(propertyName))
+		{
+			peer.addPropertyChangeListener(propertyName, listener);
+			return;
+		}
+		
+		if (listener == null)
+			return;
+		
+		synchronized (sizeChangeSupport)
+		{
+			if (trayIconSize == null)
+			{
+				trayIconSize = peer.getTrayIconSize();
+				peer.addPropertyChangeListener(SYSTEM_TRAY_PROPERTY, systemTrayListener);
+			}
+			
+			sizeChangeSupport.addPropertyChangeListener(propertyName, listener);
+		}
 	}
 
 	public void removePropertyChangeListener(String propertyName, PropertyChangeListener listener)
 	{
-		peer.removePropertyChangeListener(propertyName, listener);
+		if (!TRAY_ICON_SIZE_PROPERTY.equals(propertyName))
+		{
+			peer.removePropertyChangeListener(propertyName, listener);
+			return;
+		}
+		
+		synchronized (sizeChangeSupport)
+		{
+			sizeChangeSupport.removePropertyChangeListener(propertyName, listener);
+			
+			if (trayIconSize != null && !sizeChangeSupport.hasListeners(propertyName))
+			{
+				trayIconSize = null;
+				peer.removePropertyChangeListener(SYSTEM_TRAY_PROPERTY, systemTrayListener);
+			}
+		}
 	}
 
 	public PropertyChangeListener[] getPropertyChangeListeners(String propertyName)
 	{
-		return peer.getPropertyChangeListeners(propertyName);
+		if (TRAY_ICON_SIZE_PROPERTY.equals(propertyName))
+			return sizeChangeSupport.getPropertyChangeListeners(propertyName);
+		
+		PropertyChangeListener[] listeners = peer.getPropertyChangeListeners(propertyName);
+		
+		if (!SYSTEM_TRAY_PROPERTY.equals(propertyName))
+			return listeners;
+		
+		// hide our own listener from callers
+		List<PropertyChangeListener> result = new ArrayList<PropertyChangeListener>(listeners.length);
+		for (PropertyChangeListener listener : listeners)
+		{
+			if (listener != systemTrayListener)
+				result.add(listener);
+		}
+		
+		return result.toArray(new PropertyChangeListener[result.size()]);
+	}
+	
+	private void checkTrayIconSize(Dimension size)
+	{
+		Dimension oldSize;
+		
+		synchronized (sizeChangeSupport)
+		{
+			oldSize = trayIconSize;
+			if (oldSize == null || oldSize.equals(size))
+				return;
+			
+			trayIconSize = new Dimension(size);
+		}
+		
+		sizeChangeSupport.firePropertyChange(TRAY_ICON_SIZE_PROPERTY, oldSize, new Dimension(size));
 	}
 }
@@ -4,7 +4,8 @@ import java.awt.*;
 import java.awt.event.*;
 
 /**
- * Tray icon peer interface, used by <code>TrayIcon</code> via reflection.
+ * Tray icon peer interface, used by <code>TrayIcon</code> and supplied by a
+ * <code>PeerProvider</code>.
  * 
  * <pre>
  * Copyright (c) 2007, Craig Condit. All rights reserved.
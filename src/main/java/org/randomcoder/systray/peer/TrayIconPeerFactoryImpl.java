@@ -0,0 +1,57 @@
+package org.randomcoder.systray.peer;
+
+import java.awt.*;
+
+/**
+ * Tray icon peer factory implementation, used by
+ * <code>AwtPeerProvider</code>.
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+public class TrayIconPeerFactoryImpl implements TrayIconPeerFactory
+{
+	public TrayIconPeerFactoryImpl()
+	{
+		// force resolution of TrayIcon, so that missing classes are detected
+		// when the factory is loaded rather than on first use
+		TrayIcon.class.getName();
+	}
+	
+	public TrayIconPeer createTrayIcon(Image image)
+	{
+		return new TrayIconPeerImpl(image);
+	}
+
+	public TrayIconPeer createTrayIcon(Image image, String tooltip)
+	{
+		return new TrayIconPeerImpl(image, tooltip);
+	}
+
+	public TrayIconPeer createTrayIcon(Image image, String tooltip, PopupMenu popup)
+	{
+		return new TrayIconPeerImpl(image, tooltip, popup);
+	}
+}
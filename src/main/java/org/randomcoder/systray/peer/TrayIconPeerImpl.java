@@ -2,10 +2,11 @@ package org.randomcoder.systray.peer;
 
 import java.awt.*;
 import java.awt.event.*;
+import java.lang.ref.WeakReference;
+import java.util.*;
 
 /**
- * Tray icon peer implementation, used by <code>TrayIcon</code> via
- * reflection.
+ * Tray icon peer implementation, supplied by <code>AwtPeerProvider</code>.
  * 
  * <pre>
  * Copyright (c) 2007, Craig Condit. All rights reserved.
@@ -34,26 +35,64 @@ import java.awt.event.*;
  */
 public class TrayIconPeerImpl implements TrayIconPeer
 {
+	private static final Map<TrayIcon, WeakReference<TrayIconPeerImpl>> registry =
+		new WeakHashMap<TrayIcon, WeakReference<TrayIconPeerImpl>>();
+	
 	private final TrayIcon peer;
 	
 	public TrayIconPeerImpl(TrayIcon peer)
 	{
 		this.peer = peer;
+		register(this);
 	}
 	
 	public TrayIconPeerImpl(Image image)
 	{
 		peer = new TrayIcon(image);
+		register(this);
 	}
 
 	public TrayIconPeerImpl(Image image, String tooltip)
 	{
 		peer = new TrayIcon(image, tooltip);
+		register(this);
 	}
 
 	public TrayIconPeerImpl(Image image, String tooltip, PopupMenu popup)
 	{
 		peer = new TrayIcon(image, tooltip, popup);
+		register(this);
+	}
+	
+	private static void register(TrayIconPeerImpl trayIcon)
+	{
+		synchronized (registry)
+		{
+			registry.put(trayIcon.peer, new WeakReference<TrayIconPeerImpl>(trayIcon));
+		}
+	}
+	
+	/**
+	 * Returns the peer for the given native tray icon, creating one only if no
+	 * live peer exists yet. Peers are held weakly, so repeated lookups of the
+	 * same icon return the same peer for as long as anyone references it.
+	 * 
+	 * @param trayIcon
+	 *            native tray icon
+	 * @return peer wrapping <code>trayIcon</code>
+	 */
+	static TrayIconPeerImpl forNativePeer(TrayIcon trayIcon)
+	{
+		synchronized (registry)
+		{
+			WeakReference<TrayIconPeerImpl> ref = registry.get(trayIcon);
+			TrayIconPeerImpl result = (ref == null) ? null : ref.get();
+			
+			if (result == null)
+				result = new TrayIconPeerImpl(trayIcon);
+			
+			return result;
+		}
 	}
 	
 	public Object getNativePeer()
@@ -0,0 +1,226 @@
+package org.randomcoder.systray.peer.memory;
+
+import java.util.concurrent.atomic.*;
+
+import org.randomcoder.systray.peer.PeerMethod;
+
+/**
+ * Records peer calls into fixed-size ring buffers which are allocated up
+ * front, so that recording a call never allocates. Once the buffers are full,
+ * the oldest calls are overwritten; per-method call counts are kept for the
+ * lifetime of the recorder regardless.
+ *
+ * <p>
+ * Recording is safe from any number of threads. Reading individual entries
+ * while other threads are still recording may observe partially written
+ * entries, so entries should only be inspected once callers are quiescent.
+ * </p>
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+public final class CallRecorder
+{
+	private static final PeerMethod[] METHODS = PeerMethod.values();
+
+	private final int mask;
+	private final PeerMethod[] methods;
+	private final Object[] targets;
+	private final Object[] arguments;
+	private final long[] timestamps;
+
+	private final AtomicLong sequence = new AtomicLong();
+	private final AtomicLongArray counts = new AtomicLongArray(METHODS.length);
+
+	/**
+	 * Creates a new call recorder.
+	 *
+	 * @param capacity
+	 *            number of calls to retain; rounded up to a power of two
+	 * @throws IllegalArgumentException
+	 *             if <code>capacity</code> is not positive
+	 */
+	public CallRecorder(int capacity)
+	{
+		if (capacity <= 0 || capacity > (1 << 30))
+			throw new IllegalArgumentException("Invalid capacity: " + capacity);
+
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity)
+			size <<= 1;
+
+		mask = size - 1;
+		methods = new PeerMethod[size];
+		targets = new Object[size];
+		arguments = new Object[size];
+		timestamps = new long[size];
+	}
+
+	/**
+	 * Records a call.
+	 *
+	 * @param method
+	 *            method called
+	 * @param target
+	 *            peer the method was called on
+	 * @param argument
+	 *            first argument of the call, or <code>null</code>
+	 */
+	public void record(PeerMethod method, Object target, Object argument)
+	{
+		int slot = (int) (sequence.getAndIncrement() & mask);
+
+		methods[slot] = method;
+		targets[slot] = target;
+		arguments[slot] = argument;
+		timestamps[slot] = System.nanoTime();
+
+		counts.incrementAndGet(method.ordinal());
+	}
+
+	/**
+	 * Returns the number of calls which can be retained.
+	 *
+	 * @return capacity
+	 */
+	public int getCapacity()
+	{
+		return mask + 1;
+	}
+
+	/**
+	 * Returns the number of retained calls.
+	 *
+	 * @return number of calls which may be inspected, at most
+	 *         {@link #getCapacity()}
+	 */
+	public int size()
+	{
+		return (int) Math.min(sequence.get(), mask + 1);
+	}
+
+	/**
+	 * Returns the total number of calls recorded, including any which have
+	 * since been overwritten.
+	 *
+	 * @return total call count
+	 */
+	public long getCallCount()
+	{
+		return sequence.get();
+	}
+
+	/**
+	 * Returns the total number of calls recorded for a given method.
+	 *
+	 * @param method
+	 *            peer method
+	 * @return call count
+	 */
+	public long getCallCount(PeerMethod method)
+	{
+		return counts.get(method.ordinal());
+	}
+
+	/**
+	 * Returns the method of a retained call.
+	 *
+	 * @param index
+	 *            call index, where <code>0</code> is the oldest retained call
+	 * @return method called
+	 */
+	public PeerMethod getMethod(int index)
+	{
+		return methods[slot(index)];
+	}
+
+	/**
+	 * Returns the target of a retained call.
+	 *
+	 * @param index
+	 *            call index, where <code>0</code> is the oldest retained call
+	 * @return peer the method was called on
+	 */
+	public Object getTarget(int index)
+	{
+		return targets[slot(index)];
+	}
+
+	/**
+	 * Returns the first argument of a retained call.
+	 *
+	 * @param index
+	 *            call index, where <code>0</code> is the oldest retained call
+	 * @return argument, or <code>null</code>
+	 */
+	public Object getArgument(int index)
+	{
+		return arguments[slot(index)];
+	}
+
+	/**
+	 * Returns the time of a retained call, as reported by
+	 * {@link System#nanoTime()}.
+	 *
+	 * @param index
+	 *            call index, where <code>0</code> is the oldest retained call
+	 * @return timestamp
+	 */
+	public long getTimestamp(int index)
+	{
+		return timestamps[slot(index)];
+	}
+
+	/**
+	 * Discards all recorded calls and counts. Must not be called while other
+	 * threads are recording.
+	 */
+	public void clear()
+	{
+		for (int i = 0; i <= mask; i++)
+		{
+			methods[i] = null;
+			targets[i] = null;
+			arguments[i] = null;
+			timestamps[i] = 0L;
+		}
+
+		for (int i = 0; i < METHODS.length; i++)
+			counts.set(i, 0L);
+
+		sequence.set(0L);
+	}
+
+	private int slot(int index)
+	{
+		int size = size();
+
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+
+		long oldest = sequence.get() - size;
+		return (int) ((oldest + index) & mask);
+	}
+}
@@ -0,0 +1,131 @@
+package org.randomcoder.systray.peer.memory;
+
+import java.awt.*;
+
+import org.randomcoder.systray.peer.*;
+
+/**
+ * Peer provider which supplies in-memory peers. It has a low priority, so it
+ * is only used when selected explicitly by setting the
+ * <code>org.randomcoder.systray.peer.provider</code> system property to
+ * <code>memory</code>.
+ *
+ * <p>
+ * All peers share a single {@link CallRecorder}, whose capacity may be set
+ * with the <code>org.randomcoder.systray.peer.memory.capacity</code> system
+ * property (default 65536).
+ * </p>
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+public class InMemoryPeerProvider implements PeerProvider
+{
+	public static final String NAME = "memory";
+
+	public static final int PRIORITY = -100;
+
+	public static final String CAPACITY_PROPERTY = "org.randomcoder.systray.peer.memory.capacity";
+
+	private static final int DEFAULT_CAPACITY = 65536;
+
+	private static final InMemorySystemTrayPeer systemTray =
+		new InMemorySystemTrayPeer(new CallRecorder(getCapacity()));
+
+	private final TrayIconPeerFactory trayIconPeerFactory = new TrayIconPeerFactory()
+	{
+		public TrayIconPeer createTrayIcon(Image image)
+		{
+			return new InMemoryTrayIconPeer(systemTray, image, null, null);
+		}
+
+		public TrayIconPeer createTrayIcon(Image image, String tooltip)
+		{
+			return new InMemoryTrayIconPeer(systemTray, image, tooltip, null);
+		}
+
+		public TrayIconPeer createTrayIcon(Image image, String tooltip, PopupMenu popup)
+		{
+			return new InMemoryTrayIconPeer(systemTray, image, tooltip, popup);
+		}
+	};
+
+	/**
+	 * Returns the system tray peer shared by all instances of this provider.
+	 *
+	 * @return system tray peer
+	 */
+	public static InMemorySystemTrayPeer getSystemTrayPeer()
+	{
+		return systemTray;
+	}
+
+	/**
+	 * Returns the call recorder shared by all peers of this provider.
+	 *
+	 * @return call recorder
+	 */
+	public static CallRecorder getCallRecorder()
+	{
+		return systemTray.getCallRecorder();
+	}
+
+	public String getName()
+	{
+		return NAME;
+	}
+
+	public int getPriority()
+	{
+		return PRIORITY;
+	}
+
+	public boolean isSupported()
+	{
+		return true;
+	}
+
+	public SystemTrayPeer getSystemTray()
+	{
+		return systemTray;
+	}
+
+	public TrayIconPeerFactory getTrayIconPeerFactory()
+	{
+		return trayIconPeerFactory;
+	}
+
+	private static int getCapacity()
+	{
+		try
+		{
+			return Integer.getInteger(CAPACITY_PROPERTY, DEFAULT_CAPACITY).intValue();
+		}
+		catch (SecurityException e)
+		{
+			return DEFAULT_CAPACITY;
+		}
+	}
+}
@@ -0,0 +1,293 @@
+package org.randomcoder.systray.peer.memory;
+
+import java.awt.*;
+import java.beans.*;
+import java.util.Arrays;
+
+import org.randomcoder.systray.peer.*;
+
+/**
+ * In-memory system tray peer. Keeps its icons in an array and records every
+ * call with a {@link CallRecorder}.
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+public class InMemorySystemTrayPeer implements SystemTrayPeer
+{
+	private static final TrayIconPeer[] EMPTY = new TrayIconPeer[0];
+
+	private final CallRecorder recorder;
+
+	private final PropertyChangeSupport changeSupport = new PropertyChangeSupport(this);
+
+	private volatile TrayIconPeer[] icons = EMPTY;
+
+	private volatile Dimension trayIconSize = new Dimension(16, 16);
+
+	public InMemorySystemTrayPeer(CallRecorder recorder)
+	{
+		this.recorder = recorder;
+	}
+
+	public CallRecorder getCallRecorder()
+	{
+		return recorder;
+	}
+
+	public Object getNativePeer()
+	{
+		return this;
+	}
+
+	public void add(TrayIconPeer trayIcon) throws AWTException
+	{
+		if (trayIcon == null)
+			throw new NullPointerException("adding null TrayIcon");
+
+		recorder.record(PeerMethod.SYSTEM_TRAY_ADD, this, trayIcon);
+
+		TrayIconPeer[] oldIcons;
+		TrayIconPeer[] newIcons;
+
+		synchronized (this)
+		{
+			oldIcons = icons;
+
+			for (TrayIconPeer icon : oldIcons)
+			{
+				if (icon == trayIcon)
+					throw new IllegalArgumentException("adding TrayIcon that is already added");
+			}
+
+			newIcons = Arrays.copyOf(oldIcons, oldIcons.length + 1);
+			newIcons[oldIcons.length] = trayIcon;
+			icons = newIcons;
+		}
+
+		changeSupport.firePropertyChange("trayIcons", oldIcons, newIcons);
+	}
+
+	public void remove(TrayIconPeer trayIcon)
+	{
+		recorder.record(PeerMethod.SYSTEM_TRAY_REMOVE, this, trayIcon);
+
+		TrayIconPeer[] oldIcons;
+		TrayIconPeer[] newIcons;
+
+		synchronized (this)
+		{
+			oldIcons = icons;
+
+			int index = -1;
+			for (int i = 0; i < oldIcons.length; i++)
+			{
+				if (oldIcons[i] == trayIcon)
+				{
+					index = i;
+					break;
+				}
+			}
+
+			if (index < 0)
+				return;
+
+			newIcons = new TrayIconPeer[oldIcons.length - 1];
+			System.arraycopy(oldIcons, 0, newIcons, 0, index);
+			System.arraycopy(oldIcons, index + 1, newIcons, index, newIcons.length - index);
+			icons = newIcons;
+		}
+
+		changeSupport.firePropertyChange("trayIcons", oldIcons, newIcons);
+	}
+
+	public Exception[] addAll(TrayIconPeer[] trayIcons)
+	{
+		recorder.record(PeerMethod.SYSTEM_TRAY_ADD_ALL, this, trayIcons);
+
+		Exception[] failures = new Exception[trayIcons.length];
+
+		TrayIconPeer[] oldIcons;
+		TrayIconPeer[] newIcons;
+
+		synchronized (this)
+		{
+			oldIcons = icons;
+			newIcons = Arrays.copyOf(oldIcons, oldIcons.length + trayIcons.length);
+			int count = oldIcons.length;
+
+			for (int i = 0; i < trayIcons.length; i++)
+			{
+				TrayIconPeer trayIcon = trayIcons[i];
+
+				if (trayIcon == null)
+					failures[i] = new NullPointerException("adding null TrayIcon");
+				else if (indexOf(newIcons, count, trayIcon) >= 0)
+					failures[i] = new IllegalArgumentException("adding TrayIcon that is already added");
+				else
+					newIcons[count++] = trayIcon;
+			}
+
+			if (count == oldIcons.length)
+				return failures;
+
+			newIcons = Arrays.copyOf(newIcons, count);
+			icons = newIcons;
+		}
+
+		changeSupport.firePropertyChange("trayIcons", oldIcons, newIcons);
+		return failures;
+	}
+
+	public Exception[] removeAll(TrayIconPeer[] trayIcons)
+	{
+		recorder.record(PeerMethod.SYSTEM_TRAY_REMOVE_ALL, this, trayIcons);
+
+		Exception[] failures = new Exception[trayIcons.length];
+
+		TrayIconPeer[] oldIcons;
+		TrayIconPeer[] newIcons;
+
+		synchronized (this)
+		{
+			oldIcons = icons;
+			newIcons = new TrayIconPeer[oldIcons.length];
+			int count = 0;
+
+			for (TrayIconPeer icon : oldIcons)
+			{
+				if (indexOf(trayIcons, trayIcons.length, icon) < 0)
+					newIcons[count++] = icon;
+			}
+
+			if (count == oldIcons.length)
+				return failures;
+
+			newIcons = Arrays.copyOf(newIcons, count);
+			icons = newIcons;
+		}
+
+		changeSupport.firePropertyChange("trayIcons", oldIcons, newIcons);
+		return failures;
+	}
+
+	public Exception[] replaceAll(TrayIconPeer[] trayIcons)
+	{
+		recorder.record(PeerMethod.SYSTEM_TRAY_REPLACE_ALL, this, trayIcons);
+
+		Exception[] failures = new Exception[trayIcons.length];
+
+		TrayIconPeer[] oldIcons;
+		TrayIconPeer[] newIcons;
+
+		synchronized (this)
+		{
+			oldIcons = icons;
+			newIcons = new TrayIconPeer[oldIcons.length + trayIcons.length];
+			int count = 0;
+
+			// keep icons which are wanted in their current positions
+			for (TrayIconPeer icon : oldIcons)
+			{
+				if (indexOf(trayIcons, trayIcons.length, icon) >= 0)
+					newIcons[count++] = icon;
+			}
+
+			for (int i = 0; i < trayIcons.length; i++)
+			{
+				TrayIconPeer trayIcon = trayIcons[i];
+
+				if (trayIcon == null)
+					failures[i] = new NullPointerException("adding null TrayIcon");
+				else if (indexOf(newIcons, count, trayIcon) < 0)
+					newIcons[count++] = trayIcon;
+			}
+
+			newIcons = Arrays.copyOf(newIcons, count);
+			if (Arrays.equals(oldIcons, newIcons))
+				return failures;
+
+			icons = newIcons;
+		}
+
+		changeSupport.firePropertyChange("trayIcons", oldIcons, newIcons);
+		return failures;
+	}
+
+	public TrayIconPeer[] getTrayIcons()
+	{
+		recorder.record(PeerMethod.SYSTEM_TRAY_GET_TRAY_ICONS, this, null);
+		return icons.clone();
+	}
+
+	public Dimension getTrayIconSize()
+	{
+		recorder.record(PeerMethod.SYSTEM_TRAY_GET_TRAY_ICON_SIZE, this, null);
+		return new Dimension(trayIconSize);
+	}
+
+	/**
+	 * Changes the reported tray icon size, firing a <code>trayIconSize</code>
+	 * property change as a native tray would when, for example, the display
+	 * configuration changes.
+	 *
+	 * @param size
+	 *            new tray icon size
+	 */
+	public void setTrayIconSize(Dimension size)
+	{
+		Dimension oldSize = trayIconSize;
+		trayIconSize = new Dimension(size);
+		changeSupport.firePropertyChange("trayIconSize", oldSize, new Dimension(size));
+	}
+
+	public void addPropertyChangeListener(String propertyName, PropertyChangeListener listener)
+	{
+		if (listener != null)
+			changeSupport.addPropertyChangeListener(propertyName, listener);
+	}
+
+	public void removePropertyChangeListener(String propertyName, PropertyChangeListener listener)
+	{
+		if (listener != null)
+			changeSupport.removePropertyChangeListener(propertyName, listener);
+	}
+
+	public PropertyChangeListener[] getPropertyChangeListeners(String propertyName)
+	{
+		return changeSupport.getPropertyChangeListeners(propertyName);
+	}
+
+	private static int indexOf(TrayIconPeer[] icons, int length, TrayIconPeer trayIcon)
+	{
+		for (int i = 0; i < length; i++)
+		{
+			if (icons[i] == trayIcon)
+				return i;
+		}
+
+		return -1;
+	}
+}
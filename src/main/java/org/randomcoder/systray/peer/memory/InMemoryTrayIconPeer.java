@@ -0,0 +1,192 @@
+package org.randomcoder.systray.peer.memory;
+
+import java.awt.*;
+import java.awt.event.*;
+
+import org.randomcoder.systray.TrayIconWrapper.MessageType;
+import org.randomcoder.systray.peer.*;
+
+/**
+ * In-memory tray icon peer. Keeps its state in fields and records every
+ * mutating call with a {@link CallRecorder}.
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+public class InMemoryTrayIconPeer implements TrayIconPeer
+{
+	private final CallRecorder recorder;
+	private final InMemorySystemTrayPeer systemTray;
+
+	private volatile Image image;
+	private volatile String tooltip;
+	private volatile PopupMenu popup;
+	private volatile boolean autosize;
+	private volatile String actionCommand;
+
+	private ActionListener actionListener;
+	private MouseListener mouseListener;
+	private MouseMotionListener mouseMotionListener;
+
+	public InMemoryTrayIconPeer(
+			InMemorySystemTrayPeer systemTray, Image image, String tooltip, PopupMenu popup)
+	{
+		if (image == null)
+			throw new IllegalArgumentException("creating TrayIcon with null Image");
+
+		this.systemTray = systemTray;
+		this.recorder = systemTray.getCallRecorder();
+		this.image = image;
+		this.tooltip = tooltip;
+		this.popup = popup;
+	}
+
+	public Object getNativePeer()
+	{
+		return this;
+	}
+
+	public void setImage(Image image)
+	{
+		if (image == null)
+			throw new NullPointerException("setting null Image");
+
+		recorder.record(PeerMethod.SET_IMAGE, this, image);
+		this.image = image;
+	}
+
+	public Image getImage()
+	{
+		return image;
+	}
+
+	public void setPopupMenu(PopupMenu popup)
+	{
+		recorder.record(PeerMethod.SET_POPUP_MENU, this, popup);
+		this.popup = popup;
+	}
+
+	public PopupMenu getPopupMenu()
+	{
+		return popup;
+	}
+
+	public void setToolTip(String tooltip)
+	{
+		recorder.record(PeerMethod.SET_TOOL_TIP, this, tooltip);
+		this.tooltip = tooltip;
+	}
+
+	public String getToolTip()
+	{
+		return tooltip;
+	}
+
+	public void setImageAutoSize(boolean autosize)
+	{
+		recorder.record(PeerMethod.SET_IMAGE_AUTO_SIZE, this, Boolean.valueOf(autosize));
+		this.autosize = autosize;
+	}
+
+	public boolean isImageAutoSize()
+	{
+		return autosize;
+	}
+
+	public synchronized void addMouseListener(MouseListener listener)
+	{
+		recorder.record(PeerMethod.ADD_MOUSE_LISTENER, this, listener);
+		mouseListener = AWTEventMulticaster.add(mouseListener, listener);
+	}
+
+	public synchronized void removeMouseListener(MouseListener listener)
+	{
+		recorder.record(PeerMethod.REMOVE_MOUSE_LISTENER, this, listener);
+		mouseListener = AWTEventMulticaster.remove(mouseListener, listener);
+	}
+
+	public synchronized MouseListener[] getMouseListeners()
+	{
+		return AWTEventMulticaster.getListeners(mouseListener, MouseListener.class);
+	}
+
+	public synchronized void addMouseMotionListener(MouseMotionListener listener)
+	{
+		recorder.record(PeerMethod.ADD_MOUSE_MOTION_LISTENER, this, listener);
+		mouseMotionListener = AWTEventMulticaster.add(mouseMotionListener, listener);
+	}
+
+	public synchronized void removeMouseMotionListener(MouseMotionListener listener)
+	{
+		recorder.record(PeerMethod.REMOVE_MOUSE_MOTION_LISTENER, this, listener);
+		mouseMotionListener = AWTEventMulticaster.remove(mouseMotionListener, listener);
+	}
+
+	public synchronized MouseMotionListener[] getMouseMotionListeners()
+	{
+		return AWTEventMulticaster.getListeners(mouseMotionListener, MouseMotionListener.class);
+	}
+
+	public String getActionCommand()
+	{
+		return actionCommand;
+	}
+
+	public void setActionCommand(String command)
+	{
+		recorder.record(PeerMethod.SET_ACTION_COMMAND, this, command);
+		this.actionCommand = command;
+	}
+
+	public synchronized void addActionListener(ActionListener listener)
+	{
+		recorder.record(PeerMethod.ADD_ACTION_LISTENER, this, listener);
+		actionListener = AWTEventMulticaster.add(actionListener, listener);
+	}
+
+	public synchronized void removeActionListener(ActionListener listener)
+	{
+		recorder.record(PeerMethod.REMOVE_ACTION_LISTENER, this, listener);
+		actionListener = AWTEventMulticaster.remove(actionListener, listener);
+	}
+
+	public synchronized ActionListener[] getActionListeners()
+	{
+		return AWTEventMulticaster.getListeners(actionListener, ActionListener.class);
+	}
+
+	public void displayMessage(String caption, String text, MessageType messageType)
+	{
+		if (caption == null && text == null)
+			throw new NullPointerException("displaying the message with both caption and text being null");
+
+		recorder.record(PeerMethod.DISPLAY_MESSAGE, this, (caption == null) ? text : caption);
+	}
+
+	public Dimension getSize()
+	{
+		return systemTray.getTrayIconSize();
+	}
+}
@@ -0,0 +1,119 @@
+package org.randomcoder.systray.peer.metrics;
+
+import java.awt.*;
+
+import org.randomcoder.systray.peer.*;
+
+/**
+ * Provider which wraps the peers of another provider with instrumented peers.
+ * It reports the name and priority of the provider it wraps.
+ * 
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+public class InstrumentedPeerProvider implements PeerProvider
+{
+	private final PeerProvider delegate;
+	private final PeerMetrics metrics;
+
+	private volatile TrayIconPeerFactory trayIconPeerFactory;
+
+	public InstrumentedPeerProvider(PeerProvider delegate, PeerMetrics metrics)
+	{
+		this.delegate = delegate;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Wraps a provider, recording to the shared {@link PeerMetrics} instance.
+	 * 
+	 * @param provider
+	 *            provider to wrap
+	 * @return instrumented provider
+	 */
+	public static PeerProvider instrument(PeerProvider provider)
+	{
+		if (provider instanceof InstrumentedPeerProvider)
+			return provider;
+
+		return new InstrumentedPeerProvider(provider, PeerMetrics.getInstance());
+	}
+
+	public String getName()
+	{
+		return delegate.getName();
+	}
+
+	public int getPriority()
+	{
+		return delegate.getPriority();
+	}
+
+	public boolean isSupported()
+	{
+		return delegate.isSupported();
+	}
+
+	public SystemTrayPeer getSystemTray()
+	{
+		return new InstrumentedSystemTrayPeer(delegate.getSystemTray(), metrics);
+	}
+
+	public TrayIconPeerFactory getTrayIconPeerFactory()
+	{
+		TrayIconPeerFactory factory = trayIconPeerFactory;
+
+		if (factory == null)
+			trayIconPeerFactory = factory = new Factory(delegate.getTrayIconPeerFactory());
+
+		return factory;
+	}
+
+	private final class Factory implements TrayIconPeerFactory
+	{
+		private final TrayIconPeerFactory factory;
+
+		Factory(TrayIconPeerFactory factory)
+		{
+			this.factory = factory;
+		}
+
+		public TrayIconPeer createTrayIcon(Image image)
+		{
+			return new InstrumentedTrayIconPeer(factory.createTrayIcon(image), metrics);
+		}
+
+		public TrayIconPeer createTrayIcon(Image image, String tooltip)
+		{
+			return new InstrumentedTrayIconPeer(factory.createTrayIcon(image, tooltip), metrics);
+		}
+
+		public TrayIconPeer createTrayIcon(Image image, String tooltip, PopupMenu popup)
+		{
+			return new InstrumentedTrayIconPeer(factory.createTrayIcon(image, tooltip, popup), metrics);
+		}
+	}
+}
@@ -0,0 +1,206 @@
+package org.randomcoder.systray.peer.metrics;
+
+import java.awt.*;
+import java.beans.PropertyChangeListener;
+
+import org.randomcoder.systray.peer.*;
+
+/**
+ * System tray peer which times every call made to another peer and records it
+ * in {@link PeerMetrics}. Tray icon peers passed in are unwrapped, and those
+ * returned are wrapped, so that the same instrumented peer is always seen for
+ * a given icon.
+ * 
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+public class InstrumentedSystemTrayPeer implements SystemTrayPeer
+{
+	private final SystemTrayPeer delegate;
+	private final PeerMetrics metrics;
+
+	public InstrumentedSystemTrayPeer(SystemTrayPeer delegate, PeerMetrics metrics)
+	{
+		this.delegate = delegate;
+		this.metrics = metrics;
+	}
+
+	public Object getNativePeer()
+	{
+		return delegate.getNativePeer();
+	}
+
+	public void add(TrayIconPeer trayIcon) throws AWTException
+	{
+		long start = System.nanoTime();
+		boolean failed = true;
+		try
+		{
+			delegate.add(InstrumentedTrayIconPeer.unwrap(trayIcon));
+			failed = false;
+		}
+		finally
+		{
+			metrics.record(PeerMethod.SYSTEM_TRAY_ADD, start, failed);
+		}
+	}
+
+	public void remove(TrayIconPeer trayIcon)
+	{
+		long start = System.nanoTime();
+		boolean failed = true;
+		try
+		{
+			delegate.remove(InstrumentedTrayIconPeer.unwrap(trayIcon));
+			failed = false;
+		}
+		finally
+		{
+			metrics.record(PeerMethod.SYSTEM_TRAY_REMOVE, start, failed);
+		}
+	}
+
+	public Exception[] addAll(TrayIconPeer[] trayIcons)
+	{
+		long start = System.nanoTime();
+		boolean failed = true;
+		try
+		{
+			Exception[] failures = delegate.addAll(unwrap(trayIcons));
+			failed = hasFailures(failures);
+			return failures;
+		}
+		finally
+		{
+			metrics.record(PeerMethod.SYSTEM_TRAY_ADD_ALL, start, failed);
+		}
+	}
+
+	public Exception[] removeAll(TrayIconPeer[] trayIcons)
+	{
+		long start = System.nanoTime();
+		boolean failed = true;
+		try
+		{
+			Exception[] failures = delegate.removeAll(unwrap(trayIcons));
+			failed = hasFailures(failures);
+			return failures;
+		}
+		finally
+		{
+			metrics.record(PeerMethod.SYSTEM_TRAY_REMOVE_ALL, start, failed);
+		}
+	}
+
+	public Exception[] replaceAll(TrayIconPeer[] trayIcons)
+	{
+		long start = System.nanoTime();
+		boolean failed = true;
+		try
+		{
+			Exception[] failures = delegate.replaceAll(unwrap(trayIcons));
+			failed = hasFailures(failures);
+			return failures;
+		}
+		finally
+		{
+			metrics.record(PeerMethod.SYSTEM_TRAY_REPLACE_ALL, start, failed);
+		}
+	}
+
+	public TrayIconPeer[] getTrayIcons()
+	{
+		TrayIconPeer[] icons;
+
+		long start = System.nanoTime();
+		boolean failed = true;
+		try
+		{
+			icons = delegate.getTrayIcons();
+			failed = false;
+		}
+		finally
+		{
+			metrics.record(PeerMethod.SYSTEM_TRAY_GET_TRAY_ICONS, start, failed);
+		}
+
+		for (int i = 0; i < icons.length; i++)
+			icons[i] = InstrumentedTrayIconPeer.forDelegate(icons[i], metrics);
+
+		return icons;
+	}
+
+	public Dimension getTrayIconSize()
+	{
+		long start = System.nanoTime();
+		boolean failed = true;
+		try
+		{
+			Dimension size = delegate.getTrayIconSize();
+			failed = false;
+			return size;
+		}
+		finally
+		{
+			metrics.record(PeerMethod.SYSTEM_TRAY_GET_TRAY_ICON_SIZE, start, failed);
+		}
+	}
+
+	public void addPropertyChangeListener(String propertyName, PropertyChangeListener listener)
+	{
+		delegate.addPropertyChangeListener(propertyName, listener);
+	}
+
+	public void removePropertyChangeListener(String propertyName, PropertyChangeListener listener)
+	{
+		delegate.removePropertyChangeListener(propertyName, listener);
+	}
+
+	public PropertyChangeListener[] getPropertyChangeListeners(String propertyName)
+	{
+		return delegate.getPropertyChangeListeners(propertyName);
+	}
+
+	private static TrayIconPeer[] unwrap(TrayIconPeer[] trayIcons)
+	{
+		TrayIconPeer[] result = new TrayIconPeer[trayIcons.length];
+		for (int i = 0; i < trayIcons.length; i++)
+			result[i] = InstrumentedTrayIconPeer.unwrap(trayIcons[i]);
+
+		return result;
+	}
+
+	private static boolean hasFailures(Exception[] failures)
+	{
+		for (Exception failure : failures)
+		{
+			if (failure != null)
+				return true;
+		}
+
+		return false;
+	}
+}
@@ -0,0 +1,325 @@
+package org.randomcoder.systray.peer.metrics;
+
+import java.awt.*;
+import java.awt.event.*;
+import java.lang.ref.WeakReference;
+import java.util.*;
+
+import org.randomcoder.systray.TrayIconWrapper.MessageType;
+import org.randomcoder.systray.peer.*;
+
+/**
+ * Tray icon peer which times every mutating call made to another peer and
+ * records it in {@link PeerMetrics}. Queries are passed through untimed.
+ * 
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+public class InstrumentedTrayIconPeer implements TrayIconPeer
+{
+	private static final Map<TrayIconPeer, WeakReference<InstrumentedTrayIconPeer>> registry =
+		new WeakHashMap<TrayIconPeer, WeakReference<InstrumentedTrayIconPeer>>();
+
+	private final TrayIconPeer delegate;
+	private final PeerMetrics metrics;
+
+	public InstrumentedTrayIconPeer(TrayIconPeer delegate, PeerMetrics metrics)
+	{
+		this.delegate = delegate;
+		this.metrics = metrics;
+
+		synchronized (registry)
+		{
+			registry.put(delegate, new WeakReference<InstrumentedTrayIconPeer>(this));
+		}
+	}
+
+	/**
+	 * Returns the instrumented peer for a delegate, creating one if the
+	 * delegate was not created through instrumentation.
+	 *
+	 * @param delegate
+	 *            peer to look up
+	 * @param metrics
+	 *            metrics to record to, if a new peer must be created
+	 * @return instrumented peer
+	 */
+	static InstrumentedTrayIconPeer forDelegate(TrayIconPeer delegate, PeerMetrics metrics)
+	{
+		synchronized (registry)
+		{
+			WeakReference<InstrumentedTrayIconPeer> ref = registry.get(delegate);
+			InstrumentedTrayIconPeer peer = (ref == null) ? null : ref.get();
+			if (peer != null)
+				return peer;
+		}
+
+		return new InstrumentedTrayIconPeer(delegate, metrics);
+	}
+
+	/**
+	 * Returns the peer which an instrumented peer delegates to.
+	 *
+	 * @param peer
+	 *            peer, which may or may not be instrumented
+	 * @return delegate of an instrumented peer, or <code>peer</code> itself
+	 */
+	static TrayIconPeer unwrap(TrayIconPeer peer)
+	{
+		return (peer instanceof InstrumentedTrayIconPeer)
+			? ((InstrumentedTrayIconPeer) peer).delegate : peer;
+	}
+
+	public Object getNativePeer()
+	{
+		return delegate.getNativePeer();
+	}
+
+	public void setImage(Image image)
+	{
+		long start = System.nanoTime();
+		boolean failed = true;
+		try
+		{
+			delegate.setImage(image);
+			failed = false;
+		}
+		finally
+		{
+			metrics.record(PeerMethod.SET_IMAGE, start, failed);
+		}
+	}
+
+	public Image getImage()
+	{
+		return delegate.getImage();
+	}
+
+	public void setPopupMenu(PopupMenu popup)
+	{
+		long start = System.nanoTime();
+		boolean failed = true;
+		try
+		{
+			delegate.setPopupMenu(popup);
+			failed = false;
+		}
+		finally
+		{
+			metrics.record(PeerMethod.SET_POPUP_MENU, start, failed);
+		}
+	}
+
+	public PopupMenu getPopupMenu()
+	{
+		return delegate.getPopupMenu();
+	}
+
+	public void setToolTip(String tooltip)
+	{
+		long start = System.nanoTime();
+		boolean failed = true;
+		try
+		{
+			delegate.setToolTip(tooltip);
+			failed = false;
+		}
+		finally
+		{
+			metrics.record(PeerMethod.SET_TOOL_TIP, start, failed);
+		}
+	}
+
+	public String getToolTip()
+	{
+		return delegate.getToolTip();
+	}
+
+	public void setImageAutoSize(boolean autosize)
+	{
+		long start = System.nanoTime();
+		boolean failed = true;
+		try
+		{
+			delegate.setImageAutoSize(autosize);
+			failed = false;
+		}
+		finally
+		{
+			metrics.record(PeerMethod.SET_IMAGE_AUTO_SIZE, start, failed);
+		}
+	}
+
+	public boolean isImageAutoSize()
+	{
+		return delegate.isImageAutoSize();
+	}
+
+	public void addMouseListener(MouseListener listener)
+	{
+		long start = System.nanoTime();
+		boolean failed = true;
+		try
+		{
+			delegate.addMouseListener(listener);
+			failed = false;
+		}
+		finally
+		{
+			metrics.record(PeerMethod.ADD_MOUSE_LISTENER, start, failed);
+		}
+	}
+
+	public void removeMouseListener(MouseListener listener)
+	{
+		long start = System.nanoTime();
+		boolean failed = true;
+		try
+		{
+			delegate.removeMouseListener(listener);
+			failed = false;
+		}
+		finally
+		{
+			metrics.record(PeerMethod.REMOVE_MOUSE_LISTENER, start, failed);
+		}
+	}
+
+	public MouseListener[] getMouseListeners()
+	{
+		return delegate.getMouseListeners();
+	}
+
+	public void addMouseMotionListener(MouseMotionListener listener)
+	{
+		long start = System.nanoTime();
+		boolean failed = true;
+		try
+		{
+			delegate.addMouseMotionListener(listener);
+			failed = false;
+		}
+		finally
+		{
+			metrics.record(PeerMethod.ADD_MOUSE_MOTION_LISTENER, start, failed);
+		}
+	}
+
+	public void removeMouseMotionListener(MouseMotionListener listener)
+	{
+		long start = System.nanoTime();
+		boolean failed = true;
+		try
+		{
+			delegate.removeMouseMotionListener(listener);
+			failed = false;
+		}
+		finally
+		{
+			metrics.record(PeerMethod.REMOVE_MOUSE_MOTION_LISTENER, start, failed);
+		}
+	}
+
+	public MouseMotionListener[] getMouseMotionListeners()
+	{
+		return delegate.getMouseMotionListeners();
+	}
+
+	public String getActionCommand()
+	{
+		return delegate.getActionCommand();
+	}
+
+	public void setActionCommand(String command)
+	{
+		long start = System.nanoTime();
+		boolean failed = true;
+		try
+		{
+			delegate.setActionCommand(command);
+			failed = false;
+		}
+		finally
+		{
+			metrics.record(PeerMethod.SET_ACTION_COMMAND, start, failed);
+		}
+	}
+
+	public void addActionListener(ActionListener listener)
+	{
+		long start = System.nanoTime();
+		boolean failed = true;
+		try
+		{
+			delegate.addActionListener(listener);
+			failed = false;
+		}
+		finally
+		{
+			metrics.record(PeerMethod.ADD_ACTION_LISTENER, start, failed);
+		}
+	}
+
+	public void removeActionListener(ActionListener listener)
+	{
+		long start = System.nanoTime();
+		boolean failed = true;
+		try
+		{
+			delegate.removeActionListener(listener);
+			failed = false;
+		}
+		finally
+		{
+			metrics.record(PeerMethod.REMOVE_ACTION_LISTENER, start, failed);
+		}
+	}
+
+	public ActionListener[] getActionListeners()
+	{
+		return delegate.getActionListeners();
+	}
+
+	public void displayMessage(String caption, String text, MessageType messageType)
+	{
+		long start = System.nanoTime();
+		boolean failed = true;
+		try
+		{
+			delegate.displayMessage(caption, text, messageType);
+			failed = false;
+		}
+		finally
+		{
+			metrics.record(PeerMethod.DISPLAY_MESSAGE, start, failed);
+		}
+	}
+
+	public Dimension getSize()
+	{
+		return delegate.getSize();
+	}
+}
@@ -0,0 +1,232 @@
+package org.randomcoder.systray.peer.metrics;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * Fixed-size latency histogram with power-of-two buckets. Bucket
+ * <code>0</code> counts calls which took no measurable time, and bucket
+ * <code>n</code> counts calls which took between <code>2<sup>n-1</sup></code>
+ * and <code>2<sup>n</sup> - 1</code> nanoseconds; the last bucket also
+ * collects anything slower. Recording never allocates or locks.
+ *
+ * <p>
+ * Values read while other threads are recording are individually accurate,
+ * but need not be consistent with one another.
+ * </p>
+ * 
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+public final class LatencyHistogram
+{
+	/**
+	 * Number of buckets; the last bucket starts at roughly 275 seconds.
+	 */
+	public static final int BUCKET_COUNT = 40;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong errorCount = new AtomicLong();
+	private final AtomicLong totalNanos = new AtomicLong();
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	/**
+	 * Records a call.
+	 *
+	 * @param nanos
+	 *            duration of the call, in nanoseconds
+	 * @param failed
+	 *            <code>true</code> if the call threw an exception
+	 */
+	public void record(long nanos, boolean failed)
+	{
+		if (nanos < 0L)
+			nanos = 0L;
+
+		buckets.incrementAndGet(bucketFor(nanos));
+		count.incrementAndGet();
+		totalNanos.addAndGet(nanos);
+
+		if (failed)
+			errorCount.incrementAndGet();
+
+		long max;
+		while (nanos > (max = maxNanos.get()))
+		{
+			if (maxNanos.compareAndSet(max, nanos))
+				break;
+		}
+	}
+
+	/**
+	 * Returns the number of recorded calls.
+	 *
+	 * @return call count
+	 */
+	public long getCount()
+	{
+		return count.get();
+	}
+
+	/**
+	 * Returns the number of recorded calls which threw an exception.
+	 *
+	 * @return error count
+	 */
+	public long getErrorCount()
+	{
+		return errorCount.get();
+	}
+
+	/**
+	 * Returns the total time spent in recorded calls.
+	 *
+	 * @return total time, in nanoseconds
+	 */
+	public long getTotalNanos()
+	{
+		return totalNanos.get();
+	}
+
+	/**
+	 * Returns the mean duration of recorded calls.
+	 *
+	 * @return mean duration in nanoseconds, or <code>0</code> if no calls
+	 *         have been recorded
+	 */
+	public long getMeanNanos()
+	{
+		long n = count.get();
+		return (n == 0L) ? 0L : totalNanos.get() / n;
+	}
+
+	/**
+	 * Returns the duration of the slowest recorded call.
+	 *
+	 * @return maximum duration, in nanoseconds
+	 */
+	public long getMaxNanos()
+	{
+		return maxNanos.get();
+	}
+
+	/**
+	 * Returns the number of calls recorded in a bucket.
+	 *
+	 * @param bucket
+	 *            bucket index, from <code>0</code> to
+	 *            <code>BUCKET_COUNT - 1</code>
+	 * @return bucket count
+	 */
+	public long getBucketCount(int bucket)
+	{
+		return buckets.get(bucket);
+	}
+
+	/**
+	 * Returns the counts of all buckets.
+	 *
+	 * @return new array of <code>BUCKET_COUNT</code> counts
+	 */
+	public long[] getBucketCounts()
+	{
+		long[] result = new long[BUCKET_COUNT];
+		for (int i = 0; i < BUCKET_COUNT; i++)
+			result[i] = buckets.get(i);
+
+		return result;
+	}
+
+	/**
+	 * Estimates a percentile of recorded call durations. The estimate is the
+	 * upper bound of the bucket containing the percentile, capped at the
+	 * slowest call seen, so it errs on the slow side by at most a factor of
+	 * two.
+	 *
+	 * @param percentile
+	 *            percentile to estimate, from <code>0</code> to
+	 *            <code>100</code>
+	 * @return estimated duration in nanoseconds, or <code>0</code> if no
+	 *         calls have been recorded
+	 */
+	public long getPercentileNanos(double percentile)
+	{
+		long[] counts = getBucketCounts();
+
+		long total = 0L;
+		for (long c : counts)
+			total += c;
+
+		if (total == 0L)
+			return 0L;
+
+		long rank = (long) Math.ceil(total * Math.max(0.0, Math.min(100.0, percentile)) / 100.0);
+		if (rank < 1L)
+			rank = 1L;
+
+		long seen = 0L;
+		for (int i = 0; i < BUCKET_COUNT; i++)
+		{
+			seen += counts[i];
+			if (seen >= rank)
+				return Math.min(getBucketUpperBound(i), maxNanos.get());
+		}
+
+		return maxNanos.get();
+	}
+
+	/**
+	 * Clears all recorded data.
+	 */
+	public void reset()
+	{
+		for (int i = 0; i < BUCKET_COUNT; i++)
+			buckets.set(i, 0L);
+
+		count.set(0L);
+		errorCount.set(0L);
+		totalNanos.set(0L);
+		maxNanos.set(0L);
+	}
+
+	/**
+	 * Returns the largest duration counted by a bucket.
+	 *
+	 * @param bucket
+	 *            bucket index
+	 * @return inclusive upper bound, in nanoseconds
+	 */
+	public static long getBucketUpperBound(int bucket)
+	{
+		return (bucket >= BUCKET_COUNT - 1) ? Long.MAX_VALUE : (1L << bucket) - 1L;
+	}
+
+	static int bucketFor(long nanos)
+	{
+		return Math.min(64 - Long.numberOfLeadingZeros(nanos), BUCKET_COUNT - 1);
+	}
+}
@@ -0,0 +1,128 @@
+package org.randomcoder.systray.peer.metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Point-in-time statistics for a single peer method, as published through
+ * JMX.
+ * 
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+public final class PeerMethodStatistics
+{
+	private final String method;
+	private final long callCount;
+	private final long errorCount;
+	private final long meanNanos;
+	private final long maxNanos;
+	private final long p50Nanos;
+	private final long p90Nanos;
+	private final long p99Nanos;
+	private final long[] bucketCounts;
+
+	@ConstructorProperties({ "method", "callCount", "errorCount", "meanNanos", "maxNanos",
+		"p50Nanos", "p90Nanos", "p99Nanos", "bucketCounts" })
+	public PeerMethodStatistics(
+			String method, long callCount, long errorCount, long meanNanos, long maxNanos,
+			long p50Nanos, long p90Nanos, long p99Nanos, long[] bucketCounts)
+	{
+		this.method = method;
+		this.callCount = callCount;
+		this.errorCount = errorCount;
+		this.meanNanos = meanNanos;
+		this.maxNanos = maxNanos;
+		this.p50Nanos = p50Nanos;
+		this.p90Nanos = p90Nanos;
+		this.p99Nanos = p99Nanos;
+		this.bucketCounts = bucketCounts.clone();
+	}
+
+	static PeerMethodStatistics of(String method, LatencyHistogram histogram)
+	{
+		return new PeerMethodStatistics(
+			method, histogram.getCount(), histogram.getErrorCount(),
+			histogram.getMeanNanos(), histogram.getMaxNanos(),
+			histogram.getPercentileNanos(50.0), histogram.getPercentileNanos(90.0),
+			histogram.getPercentileNanos(99.0), histogram.getBucketCounts());
+	}
+
+	/**
+	 * Returns the name of the peer method.
+	 * 
+	 * @return name of a {@link org.randomcoder.systray.peer.PeerMethod}
+	 */
+	public String getMethod()
+	{
+		return method;
+	}
+
+	public long getCallCount()
+	{
+		return callCount;
+	}
+
+	public long getErrorCount()
+	{
+		return errorCount;
+	}
+
+	public long getMeanNanos()
+	{
+		return meanNanos;
+	}
+
+	public long getMaxNanos()
+	{
+		return maxNanos;
+	}
+
+	public long getP50Nanos()
+	{
+		return p50Nanos;
+	}
+
+	public long getP90Nanos()
+	{
+		return p90Nanos;
+	}
+
+	public long getP99Nanos()
+	{
+		return p99Nanos;
+	}
+
+	/**
+	 * Returns the raw histogram; see {@link LatencyHistogram} for the bucket
+	 * layout.
+	 * 
+	 * @return copy of the bucket counts
+	 */
+	public long[] getBucketCounts()
+	{
+		return bucketCounts.clone();
+	}
+}
@@ -0,0 +1,166 @@
+package org.randomcoder.systray.peer.metrics;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.*;
+
+import org.randomcoder.systray.peer.PeerMethod;
+
+/**
+ * Per-method call metrics for the peer layer. A single instance is shared by
+ * all instrumented peers and is registered with the platform MBean server the
+ * first time it is used.
+ * 
+ * 
+ * <pre>
+ * Copyright (c) 2007, Craig Condit. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &quot;AS IS&quot;
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * </pre>
+ */
+public final class PeerMetrics implements PeerMetricsMXBean
+{
+	/**
+	 * Name under which metrics are registered with the platform MBean server.
+	 */
+	public static final String OBJECT_NAME = "org.randomcoder.systray:type=PeerMetrics";
+
+	private static final PeerMethod[] METHODS = PeerMethod.values();
+
+	private final LatencyHistogram[] histograms = new LatencyHistogram[METHODS.length];
+
+	PeerMetrics()
+	{
+		for (int i = 0; i < histograms.length; i++)
+			histograms[i] = new LatencyHistogram();
+	}
+
+	/**
+	 * Returns the shared metrics instance.
+	 * 
+	 * @return peer metrics
+	 */
+	public static PeerMetrics getInstance()
+	{
+		return Holder.INSTANCE;
+	}
+
+	/**
+	 * Records a completed call.
+	 * 
+	 * @param method
+	 *            method called
+	 * @param startNanos
+	 *            value of <code>System.nanoTime()</code> when the call began
+	 * @param failed
+	 *            <code>true</code> if the call threw an exception
+	 */
+	public void record(PeerMethod method, long startNanos, boolean failed)
+	{
+		histograms[method.ordinal()].record(System.nanoTime() - startNanos, failed);
+	}
+
+	/**
+	 * Returns the live histogram for a method.
+	 * 
+	 * @param method
+	 *            peer method
+	 * @return histogram
+	 */
+	public LatencyHistogram getHistogram(PeerMethod method)
+	{
+		return histograms[method.ordinal()];
+	}
+
+	public long getTotalCallCount()
+	{
+		long total = 0L;
+		for (LatencyHistogram histogram : histograms)
+			total += histogram.getCount();
+
+		return total;
+	}
+
+	public long getTotalErrorCount()
+	{
+		long total = 0L;
+		for (LatencyHistogram histogram : histograms)
+			total += histogram.getErrorCount();
+
+		return total;
+	}
+
+	public long getTotalNanos()
+	{
+		long total = 0L;
+		for (LatencyHistogram histogram : histograms)
+			total += histogram.getTotalNanos();
+
+		return total;
+	}
+
+	public PeerMethodStatistics[] getMethodStatistics()
+	{
+		PeerMethodStatistics[] statistics = new PeerMethodStatistics[METHODS.length];
+		for (int i = 0; i < METHODS.length; i++)
+			statistics[i] = PeerMethodStatistics.of(METHODS[i].name(), histograms[i]);
+
+		return statistics;
+	}
+
+	public void reset()
+	{
+		for (LatencyHistogram histogram : histograms)
+			histogram.reset();
+	}
+
+	private static PeerMetrics register(PeerMetrics metrics)
+	{
+		try
+		{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+
+			if (!server.isRegistered(name))
+				server.registerMBean(metrics, name);
+		}
+		catch (JMException e)
+		{
+			// metrics remain available through getInstance()
+		}
+		catch (SecurityException e)
+		{
+			// metrics remain available through getInstance()
+		}
+		catch (LinkageError e)
+		{
+			// java.management not available
+		}
+
+		return metrics;
+	}
+
+	private static final class Holder
+	{
+		static final PeerMetrics INSTANCE = register(new PeerMetrics());
+	}
+}